@@ -0,0 +1,62 @@
+package com.streamr.client.protocol;
+
+import com.streamr.client.protocol.common.MessageRef;
+import com.streamr.client.protocol.message_layer.MessageId;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.utils.Address;
+
+/** Realistic messages shared by the benchmarks. */
+public final class BenchmarkMessages {
+  public static final Address PUBLISHER_ID =
+      new Address("0xbce3217f2ac9c8a2d4f1c0c6e4b0d6a5b4a5c0e1");
+  public static final String STREAM_ID = "0xbce3217f2ac9c8a2d4f1c0c6e4b0d6a5b4a5c0e1/benchmark";
+  public static final String MSG_CHAIN_ID = "kxYyLiSUQO0SRvMx6gA1";
+  public static final String SIGNATURE =
+      "0x787cd72924153c88350e808de68b68c88030cbc34d053a5c696a5893d5e6fec1687c1b6205ec99aeb3375a81bf5cb8857ae39c1b55a41b32ed6399ae8da456a61b";
+
+  private BenchmarkMessages() {}
+
+  /**
+   * Returns a JSON object of roughly {@code size} bytes that looks like sensor data: a handful of
+   * numeric and string fields repeated in an array until the size is reached.
+   */
+  public static String jsonPayload(final int size) {
+    final StringBuilder sb = new StringBuilder("{\"readings\":[");
+    int i = 0;
+    while (sb.length() < size - 2) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append("{\"id\":")
+          .append(i)
+          .append(",\"ts\":\"2021-02-0")
+          .append(i % 10)
+          .append("T12:00:00Z\",\"lat\":60.19")
+          .append(i % 100)
+          .append(",\"long\":24.92")
+          .append(i % 100)
+          .append(",\"spd\":3.6,\"ok\":true}");
+      i++;
+    }
+    sb.append("]}");
+    return sb.toString();
+  }
+
+  public static StreamMessage streamMessage(final long timestamp, final String payload) {
+    return new StreamMessage.Builder()
+        .withMessageId(
+            new MessageId.Builder()
+                .withStreamId(STREAM_ID)
+                .withStreamPartition(0)
+                .withTimestamp(timestamp)
+                .withSequenceNumber(0)
+                .withPublisherId(PUBLISHER_ID)
+                .withMsgChainId(MSG_CHAIN_ID)
+                .createMessageId())
+        .withPreviousMessageRef(new MessageRef(timestamp - 1, 0))
+        .withContent(StreamMessage.Content.Factory.withJsonAsPayload(payload))
+        .withSignatureType(StreamMessage.SignatureType.ETH)
+        .withSignature(SIGNATURE)
+        .createStreamMessage();
+  }
+}
@@ -0,0 +1,105 @@
+package com.streamr.client.protocol.control_layer;
+
+import com.streamr.client.protocol.BenchmarkMessages;
+import com.streamr.client.protocol.common.MessageRef;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing and serialization of every control message type registered in {@link
+ * ControlMessageAdapter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ControlMessageBenchmark {
+  private static final ControlMessageAdapter adapter = new ControlMessageAdapter();
+
+  @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13"})
+  public int type;
+
+  private ControlMessage message;
+  private String json;
+
+  @Setup
+  public void setup() {
+    message = createMessage(type);
+    json = adapter.toJson(message);
+  }
+
+  @Benchmark
+  public ControlMessage fromJson() throws IOException {
+    return ControlMessage.fromJson(json);
+  }
+
+  /** Goes through the adapter directly, {@link ControlMessage#toJson()} caches its result. */
+  @Benchmark
+  public String toJson() {
+    return adapter.toJson(message);
+  }
+
+  private static ControlMessage createMessage(final int type) {
+    final String requestId = "requestId";
+    final String streamId = BenchmarkMessages.STREAM_ID;
+    final String sessionToken = "sessionToken";
+    final StreamMessage streamMessage =
+        BenchmarkMessages.streamMessage(1612345678901L, BenchmarkMessages.jsonPayload(1024));
+    final MessageRef from = new MessageRef(1612345678901L, 0);
+    final MessageRef to = new MessageRef(1612345679901L, 0);
+    switch (type) {
+      case BroadcastMessage.TYPE:
+        return new BroadcastMessage(requestId, streamMessage);
+      case UnicastMessage.TYPE:
+        return new UnicastMessage(requestId, streamMessage);
+      case SubscribeResponse.TYPE:
+        return new SubscribeResponse(requestId, streamId, 0);
+      case UnsubscribeResponse.TYPE:
+        return new UnsubscribeResponse(requestId, streamId, 0);
+      case ResendResponseResending.TYPE:
+        return new ResendResponseResending(requestId, streamId, 0);
+      case ResendResponseResent.TYPE:
+        return new ResendResponseResent(requestId, streamId, 0);
+      case ResendResponseNoResend.TYPE:
+        return new ResendResponseNoResend(requestId, streamId, 0);
+      case ErrorResponse.TYPE:
+        return new ErrorResponse(requestId, "Stream not found", "NOT_FOUND");
+      case PublishRequest.TYPE:
+        return new PublishRequest(requestId, streamMessage, sessionToken);
+      case SubscribeRequest.TYPE:
+        return new SubscribeRequest(requestId, streamId, 0, sessionToken);
+      case UnsubscribeRequest.TYPE:
+        return new UnsubscribeRequest(requestId, streamId, 0);
+      case ResendLastRequest.TYPE:
+        return new ResendLastRequest(requestId, streamId, 0, 100, sessionToken);
+      case ResendFromRequest.TYPE:
+        return new ResendFromRequest(
+            requestId,
+            streamId,
+            0,
+            from,
+            BenchmarkMessages.PUBLISHER_ID.toString(),
+            sessionToken);
+      case ResendRangeRequest.TYPE:
+        return new ResendRangeRequest(
+            requestId,
+            streamId,
+            0,
+            from,
+            to,
+            BenchmarkMessages.PUBLISHER_ID,
+            BenchmarkMessages.MSG_CHAIN_ID,
+            sessionToken);
+      default:
+        throw new IllegalArgumentException("Unknown control message type: " + type);
+    }
+  }
+}
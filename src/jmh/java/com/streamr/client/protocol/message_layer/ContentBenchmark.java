@@ -0,0 +1,38 @@
+package com.streamr.client.protocol.message_layer;
+
+import com.streamr.client.protocol.BenchmarkMessages;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of JSON content. A new {@link StreamMessage.Content} is created on every invocation as
+ * {@link StreamMessage.Content#toMap()} caches its result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ContentBenchmark {
+  @Param({"100", "1024", "65536"})
+  public int payloadSize;
+
+  private byte[] payload;
+
+  @Setup
+  public void setup() {
+    payload = BenchmarkMessages.jsonPayload(payloadSize).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public Map<String, Object> toMap() {
+    return StreamMessage.Content.Factory.withJsonAsPayload(payload).toMap();
+  }
+}
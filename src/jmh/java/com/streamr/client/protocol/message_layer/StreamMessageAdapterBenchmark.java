@@ -0,0 +1,95 @@
+package com.streamr.client.protocol.message_layer;
+
+import com.squareup.moshi.JsonWriter;
+import com.streamr.client.protocol.BenchmarkMessages;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serialization and deserialization of {@link StreamMessage}s through {@link
+ * StreamMessageAdapter}. Versions 30 and 31 can only be read, so serialization is measured for the
+ * latest version only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StreamMessageAdapterBenchmark {
+  @Param({"100", "1024", "65536"})
+  public int payloadSize;
+
+  private StreamMessage message;
+
+  @State(Scope.Benchmark)
+  public static class Serialized {
+    @Param({"30", "31", "32"})
+    public int version;
+
+    private String json;
+
+    @Setup
+    public void setup(final StreamMessageAdapterBenchmark benchmark) throws IOException {
+      json = serialize(benchmark.message, version);
+    }
+  }
+
+  @Setup
+  public void setup() {
+    message =
+        BenchmarkMessages.streamMessage(
+            1612345678901L, BenchmarkMessages.jsonPayload(payloadSize));
+  }
+
+  @Benchmark
+  public StreamMessage deserialize(final Serialized serialized) {
+    return StreamMessageAdapter.deserialize(serialized.json);
+  }
+
+  /** Goes through the adapter directly, {@link StreamMessage#serialize()} caches its result. */
+  @Benchmark
+  public String serialize() {
+    return StreamMessageAdapter.serialize(message, StreamMessage.LATEST_VERSION);
+  }
+
+  /** Writes the older versions by hand, as the adapters only support reading them. */
+  private static String serialize(final StreamMessage msg, final int version) throws IOException {
+    if (version == StreamMessage.LATEST_VERSION) {
+      return StreamMessageAdapter.serialize(msg, version);
+    }
+    try (final Buffer buffer = new Buffer();
+        final JsonWriter writer = JsonWriter.of(buffer)) {
+      writer.beginArray();
+      writer.value(version);
+      writer.beginArray();
+      writer.value(msg.getStreamId());
+      writer.value(msg.getStreamPartition());
+      writer.value(msg.getTimestamp());
+      writer.value(msg.getSequenceNumber());
+      writer.value(msg.getPublisherId().toString());
+      writer.value(msg.getMsgChainId());
+      writer.endArray();
+      writer.beginArray();
+      writer.value(msg.getPreviousMessageRef().getTimestamp());
+      writer.value(msg.getPreviousMessageRef().getSequenceNumber());
+      writer.endArray();
+      writer.value(msg.getMessageType().getId());
+      if (version == 31) {
+        writer.value(msg.getEncryptionType().getId());
+      }
+      writer.value(msg.getSerializedContent());
+      writer.value(msg.getSignatureType().getId());
+      writer.value(msg.getSignature());
+      writer.endArray();
+      writer.flush();
+      return buffer.readUtf8();
+    }
+  }
+}
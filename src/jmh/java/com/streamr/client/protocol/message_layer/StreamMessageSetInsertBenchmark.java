@@ -0,0 +1,89 @@
+package com.streamr.client.protocol.message_layer;
+
+import com.streamr.client.protocol.BenchmarkMessages;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Inserts every message twice into a {@link HashSet}, which is what a consumer deduplicating
+ * messages does. {@link #fieldEquality()} uses {@link StreamMessage#equals(Object)} and {@link
+ * StreamMessage#hashCode()} directly, {@link #serializedEquality()} reproduces the previous
+ * behaviour of serializing the message on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StreamMessageSetInsertBenchmark {
+  @Param({"100", "1024"})
+  public int payloadSize;
+
+  @Param({"1000"})
+  public int messageCount;
+
+  private StreamMessage[] messages;
+
+  @Setup
+  public void setup() {
+    final String payload = BenchmarkMessages.jsonPayload(payloadSize);
+    messages = new StreamMessage[messageCount];
+    for (int i = 0; i < messageCount; i++) {
+      messages[i] = BenchmarkMessages.streamMessage(1612345678901L + i, payload);
+    }
+  }
+
+  @Benchmark
+  public Set<StreamMessage> fieldEquality() {
+    final Set<StreamMessage> set = new HashSet<>();
+    for (final StreamMessage message : messages) {
+      set.add(message);
+    }
+    for (final StreamMessage message : messages) {
+      set.add(message);
+    }
+    return set;
+  }
+
+  @Benchmark
+  public Set<SerializedKey> serializedEquality() {
+    final Set<SerializedKey> set = new HashSet<>();
+    for (final StreamMessage message : messages) {
+      set.add(new SerializedKey(message));
+    }
+    for (final StreamMessage message : messages) {
+      set.add(new SerializedKey(message));
+    }
+    return set;
+  }
+
+  /** Equality based on serializing the message on every call, as StreamMessage used to do. */
+  public static final class SerializedKey {
+    private final StreamMessage message;
+
+    SerializedKey(final StreamMessage message) {
+      this.message = message;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) return true;
+      if (obj == null || getClass() != obj.getClass()) return false;
+      final SerializedKey that = (SerializedKey) obj;
+      return StreamMessageAdapter.serialize(message)
+          .equals(StreamMessageAdapter.serialize(that.message));
+    }
+
+    @Override
+    public int hashCode() {
+      return StreamMessageAdapter.serialize(message).hashCode();
+    }
+  }
+}
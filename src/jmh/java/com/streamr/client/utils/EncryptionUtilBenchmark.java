@@ -0,0 +1,94 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.exceptions.InvalidGroupKeyException;
+import com.streamr.client.exceptions.UnableToDecryptException;
+import com.streamr.client.protocol.BenchmarkMessages;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.xml.bind.DatatypeConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.web3j.utils.Numeric;
+
+/**
+ * AES encryptions and decryptions per second. {@code substringDecrypt} is the previous decryption,
+ * which split the hex with substrings, decoded both parts into new arrays and initialized the
+ * cipher from scratch for every message. {@code stringEncrypt} is the previous encryption, which
+ * built the IV and ciphertext hex as Strings and then encoded their concatenation back to bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EncryptionUtilBenchmark {
+  private static final int BATCH_SIZE = 100;
+
+  @Param({"1024", "65536"})
+  public int payloadSize;
+
+  private GroupKey groupKey;
+  private StreamMessage plaintextMessage;
+  private StreamMessage message;
+  private List<StreamMessage> batch;
+  private Cipher cipher;
+  private final SecureRandom random = new SecureRandom();
+
+  @Setup
+  public void setup() throws Exception {
+    groupKey = GroupKey.generate();
+    plaintextMessage =
+        BenchmarkMessages.streamMessage(1567003338767L, BenchmarkMessages.jsonPayload(payloadSize));
+    message = EncryptionUtil.encryptStreamMessage(plaintextMessage, groupKey);
+    batch = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      batch.add(message);
+    }
+    cipher = Cipher.getInstance("AES/CTR/NoPadding");
+  }
+
+  @Benchmark
+  public byte[] stringEncrypt() throws Exception {
+    final byte[] iv = new byte[16];
+    random.nextBytes(iv);
+    cipher.init(Cipher.ENCRYPT_MODE, groupKey.toSecretKey(), new IvParameterSpec(iv));
+    final byte[] ciphertext = cipher.doFinal(plaintextMessage.getSerializedContentAsBytes());
+    return (Numeric.toHexStringNoPrefix(iv) + Numeric.toHexStringNoPrefix(ciphertext))
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public StreamMessage encryptStreamMessage() throws InvalidGroupKeyException {
+    return EncryptionUtil.encryptStreamMessage(plaintextMessage, groupKey);
+  }
+
+  @Benchmark
+  public byte[] substringDecrypt() throws Exception {
+    final String ciphertext = message.getSerializedContent();
+    final byte[] iv = DatatypeConverter.parseHexBinary(ciphertext.substring(0, 32));
+    cipher.init(Cipher.DECRYPT_MODE, groupKey.toSecretKey(), new IvParameterSpec(iv));
+    return cipher.doFinal(DatatypeConverter.parseHexBinary(ciphertext.substring(32)));
+  }
+
+  @Benchmark
+  public StreamMessage decryptStreamMessage() throws UnableToDecryptException {
+    return EncryptionUtil.decryptStreamMessage(message, groupKey);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public List<StreamMessage> decryptStreamMessages() throws UnableToDecryptException {
+    return EncryptionUtil.decryptStreamMessages(batch, groupKey);
+  }
+}
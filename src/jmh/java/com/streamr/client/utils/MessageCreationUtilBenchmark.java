@@ -0,0 +1,59 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.protocol.BenchmarkMessages;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.rest.Stream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Messages created per second on the publish path, from the payload Map to the unsigned
+ * StreamMessage, with and without encrypting the content with a group key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MessageCreationUtilBenchmark {
+  @Param({"1024", "65536"})
+  public int payloadSize;
+
+  @Param({"plaintext", "encrypted"})
+  public String content;
+
+  private MessageCreationUtil messageCreationUtil;
+  private Stream stream;
+  private Map<String, Object> payload;
+  private GroupKey groupKey;
+  private Date timestamp;
+
+  @Setup
+  public void setup() {
+    messageCreationUtil = new MessageCreationUtil(BenchmarkMessages.PUBLISHER_ID, null);
+    stream =
+        new Stream.Builder()
+            .withId(BenchmarkMessages.STREAM_ID)
+            .withName("benchmark")
+            .withPartitions(1)
+            .createStream();
+    payload = new HashMap<>();
+    payload.put("data", BenchmarkMessages.jsonPayload(payloadSize));
+    groupKey = "encrypted".equals(content) ? GroupKey.generate() : null;
+    timestamp = new Date(1567003338767L);
+  }
+
+  @Benchmark
+  public StreamMessage createStreamMessage() {
+    return messageCreationUtil.createUnsignedStreamMessage(
+        stream, payload, timestamp, null, groupKey, null);
+  }
+}
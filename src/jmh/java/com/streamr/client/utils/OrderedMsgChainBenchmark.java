@@ -0,0 +1,100 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.protocol.BenchmarkMessages;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reorders a chain of {@link OrderedMsgChain#MAX_QUEUE_SIZE} messages that arrive shuffled, so
+ * that nearly all of them wait in the reorder queue before the gap closes. {@link #chain()} runs the
+ * whole OrderedMsgChain, {@link #messageRefHeap()} and {@link #priorityQueue()} compare the queue
+ * alone against the previous PriorityQueue whose comparator allocated two MessageRefs per
+ * comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OrderedMsgChainBenchmark {
+  // Long enough that no gap fill is requested while a benchmark invocation runs
+  private static final long PROPAGATION_TIMEOUT = 60_000;
+
+  @Param({"shuffled", "reversed"})
+  public String order;
+
+  // The first message of the chain, delivered first, followed by the others in arrival order
+  private StreamMessage[] messages;
+
+  @Setup
+  public void setup() {
+    final String payload = BenchmarkMessages.jsonPayload(100);
+    final List<StreamMessage> rest = new ArrayList<>();
+    final int count = OrderedMsgChain.MAX_QUEUE_SIZE;
+    for (int i = 1; i < count; i++) {
+      rest.add(BenchmarkMessages.streamMessage(1612345678901L + i, payload));
+    }
+    if (order.equals("shuffled")) {
+      Collections.shuffle(rest, new Random(42));
+    } else {
+      Collections.reverse(rest);
+    }
+    messages = new StreamMessage[count];
+    messages[0] = BenchmarkMessages.streamMessage(1612345678901L, payload);
+    for (int i = 1; i < count; i++) {
+      messages[i] = rest.get(i - 1);
+    }
+  }
+
+  @Benchmark
+  public void chain(final Blackhole blackhole) {
+    final OrderedMsgChain chain =
+        new OrderedMsgChain(
+            BenchmarkMessages.PUBLISHER_ID,
+            BenchmarkMessages.MSG_CHAIN_ID,
+            blackhole::consume,
+            null,
+            PROPAGATION_TIMEOUT,
+            PROPAGATION_TIMEOUT,
+            false);
+    for (final StreamMessage message : messages) {
+      chain.add(message);
+    }
+    chain.clearGap();
+  }
+
+  @Benchmark
+  public void messageRefHeap(final Blackhole blackhole) {
+    final MessageRefHeap<StreamMessage> queue = new MessageRefHeap<>();
+    for (final StreamMessage message : messages) {
+      queue.offer(message.getTimestamp(), message.getSequenceNumber(), message);
+    }
+    while (!queue.isEmpty()) {
+      blackhole.consume(queue.poll());
+    }
+  }
+
+  @Benchmark
+  public void priorityQueue(final Blackhole blackhole) {
+    final PriorityQueue<StreamMessage> queue =
+        new PriorityQueue<>((o1, o2) -> o1.getMessageRef().compareTo(o2.getMessageRef()));
+    for (final StreamMessage message : messages) {
+      queue.offer(message);
+    }
+    while (!queue.isEmpty()) {
+      blackhole.consume(queue.poll());
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.protocol.BenchmarkMessages;
+import com.streamr.client.protocol.common.MessageRef;
+import com.streamr.client.protocol.message_layer.MessageId;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.web3j.crypto.ECKeyPair;
+
+/**
+ * Signature verifications per second. {@code withRecoveryId} uses the v byte of the signature to
+ * recover the public key once, {@code withoutRecoveryId} drops the v byte so that every recovery
+ * id has to be tried.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SigningUtilBenchmark {
+  private static final BigInteger PRIVATE_KEY =
+      new BigInteger("23bead9b499af21c4c16e4511b3b6b08c3e22e76e0591f5ab5ba8d4c3a5b1820", 16);
+
+  @Param({"withRecoveryId", "withoutRecoveryId"})
+  public String signature;
+
+  private StreamMessage message;
+
+  @Setup
+  public void setup() {
+    final ECKeyPair account = ECKeyPair.create(PRIVATE_KEY);
+    final StreamMessage unsigned =
+        new StreamMessage.Builder()
+            .withMessageId(
+                new MessageId.Builder()
+                    .withStreamId(BenchmarkMessages.STREAM_ID)
+                    .withStreamPartition(0)
+                    .withTimestamp(1567003338767L)
+                    .withSequenceNumber(0)
+                    .withPublisherId(new Address(KeyUtil.toHex(account.getPublicKey())))
+                    .withMsgChainId(BenchmarkMessages.MSG_CHAIN_ID)
+                    .createMessageId())
+            .withPreviousMessageRef(new MessageRef(1567003338766L, 0))
+            .withContent(
+                StreamMessage.Content.Factory.withJsonAsPayload(
+                    BenchmarkMessages.jsonPayload(1024)))
+            .createStreamMessage();
+    final StreamMessage signed = new SigningUtil(account).signStreamMessage(unsigned);
+    if ("withRecoveryId".equals(signature)) {
+      message = signed;
+    } else {
+      final String hex = signed.getSignature();
+      message =
+          new StreamMessage.Builder(signed)
+              .withSignature(hex.substring(0, hex.length() - 2))
+              .createStreamMessage();
+    }
+    if (!SigningUtil.hasValidSignature(message)) {
+      throw new IllegalStateException("Benchmark message has an invalid signature");
+    }
+  }
+
+  @Benchmark
+  public boolean hasValidSignature() {
+    return SigningUtil.hasValidSignature(message);
+  }
+}
@@ -3,7 +3,9 @@ package com.streamr.client;
 import com.streamr.client.dataunion.DataUnionClient;
 import com.streamr.client.exceptions.ConnectionTimeoutException;
 import com.streamr.client.exceptions.PartitionNotSpecifiedException;
+import com.streamr.client.exceptions.PublishTimeoutException;
 import com.streamr.client.exceptions.SubscriptionNotFoundException;
+import com.streamr.client.options.BackpressurePolicy;
 import com.streamr.client.options.ResendOption;
 import com.streamr.client.options.StreamrClientOptions;
 import com.streamr.client.protocol.common.MessageRef;
@@ -34,38 +36,62 @@ import com.streamr.client.subs.CombinedSubscription;
 import com.streamr.client.subs.HistoricalSubscription;
 import com.streamr.client.subs.RealTimeSubscription;
 import com.streamr.client.subs.Subscription;
+import com.streamr.client.subs.SubscriptionMailbox;
 import com.streamr.client.utils.Address;
 import com.streamr.client.utils.AddressValidityUtil;
+import com.streamr.client.utils.BufferBudget;
 import com.streamr.client.utils.EncryptionUtil;
 import com.streamr.client.utils.GroupKey;
 import com.streamr.client.utils.GroupKeyStore;
+import com.streamr.client.utils.HashedWheelTimer;
 import com.streamr.client.utils.IdGenerator;
 import com.streamr.client.utils.KeyExchangeUtil;
 import com.streamr.client.utils.MessageCreationUtil;
 import com.streamr.client.utils.OneTimeResend;
+import com.streamr.client.utils.OrderPreservingExecutor;
+import com.streamr.client.utils.PublishQueue;
+import com.streamr.client.utils.SigningPipeline;
 import com.streamr.client.utils.SigningUtil;
+import com.streamr.client.utils.StreamPartition;
 import com.streamr.client.utils.Subscriptions;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
+import org.java_websocket.WebSocketImpl;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
 import org.java_websocket.enums.ReadyState;
+import org.java_websocket.exceptions.InvalidDataException;
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.util.Charsetfunctions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,9 +99,12 @@ import org.slf4j.LoggerFactory;
 public class StreamrClient extends StreamrRESTClient {
 
   private static final Logger log = LoggerFactory.getLogger(StreamrClient.class);
+  // Once this many received messages of a connection are being validated, its websocket thread
+  // blocks
+  private static final int MAX_MESSAGES_IN_VERIFICATION = 10000;
 
-  // Underlying websocket implementation
-  private WebSocketClient websocket = null;
+  // Underlying websocket implementations, one per connection. Guarded by websocketRwLock.
+  private final WebSocketClient[] websockets;
   private final ReadWriteLock websocketRwLock = new ReentrantReadWriteLock();
   private final Lock websocketRLock = this.websocketRwLock.readLock();
   private final Lock websocketWLock = this.websocketRwLock.writeLock();
@@ -88,11 +117,25 @@ public class StreamrClient extends StreamrRESTClient {
   private final StreamMessageValidator streamMessageValidator;
   private final GroupKeyStore keyStore;
   private final KeyExchangeUtil keyExchangeUtil;
+  // One per connection, so that each connection is sent to by its own thread
+  private final PublishQueue[] publishQueues;
+  // Null unless messages are signed on a separate thread pool
+  private final SigningPipeline signingPipeline;
+  // Null unless received messages are validated on a separate thread pool
+  // One lane per connection, so that messages are dispatched in the order of their connection
+  private final OrderPreservingExecutor.Lane[] verificationLanes;
+  // Null unless message handlers are called on a separate executor
+  private final Executor dispatchExecutor;
+  // Shared by the reorder and decryption buffers of all subscriptions
+  private final BufferBudget bufferBudget;
+  // Held while creating a message and queueing it, so that messages are queued in chain order
+  private final Object publishLock = new Object();
 
   private Stream keyExchangeStream;
   private Subscription keyExchangeSub;
 
-  private final Map<String, OneTimeResend> secondResends = new HashMap<>();
+  // Pending second resend requests by subscription id
+  private final Map<String, HashedWheelTimer.Timeout> secondResends = new ConcurrentHashMap<>();
 
   private ErrorMessageHandler errorMessageHandler;
   private boolean keepConnected = false;
@@ -101,7 +144,7 @@ public class StreamrClient extends StreamrRESTClient {
   private final Lock keepConnectedRLock = this.keepConnectedRwLock.readLock();
   private final ScheduledExecutorService executorService =
       Executors.newSingleThreadScheduledExecutor();
-  private int requestCounter = 0;
+  private final AtomicInteger requestCounter = new AtomicInteger();
 
   public StreamrClient(StreamrClientOptions options) {
     super(options);
@@ -194,6 +237,61 @@ public class StreamrClient extends StreamrRESTClient {
                 sub.onNewKeysAdded(publisherId, keys);
               }
             });
+    websockets = new WebSocketClient[options.getWebsocketConnections()];
+    publishQueues = new PublishQueue[options.getWebsocketConnections()];
+    for (int i = 0; i < publishQueues.length; i++) {
+      final int connection = i;
+      publishQueues[i] =
+          new PublishQueue(
+              options.getPublishQueueCapacity(),
+              options.getPublishBackpressurePolicy(),
+              () -> getState(connection) == ReadyState.OPEN,
+              this::sendQueued);
+    }
+    if (signingUtil != null && options.getPublishSigningThreads() > 0) {
+      signingPipeline =
+          new SigningPipeline(
+              signingUtil::signStreamMessage,
+              options.getPublishSigningThreads(),
+              options.getPublishQueueCapacity());
+    } else {
+      signingPipeline = null;
+    }
+    if (options.getVerificationThreads() > 0) {
+      final OrderPreservingExecutor verificationExecutor =
+          new OrderPreservingExecutor(
+              "streamr-verifier",
+              options.getVerificationThreads(),
+              MAX_MESSAGES_IN_VERIFICATION);
+      verificationLanes = new OrderPreservingExecutor.Lane[options.getWebsocketConnections()];
+      for (int i = 0; i < verificationLanes.length; i++) {
+        verificationLanes[i] = verificationExecutor.newLane();
+      }
+    } else {
+      verificationLanes = null;
+    }
+    if (options.getDispatchExecutor() != null) {
+      dispatchExecutor = options.getDispatchExecutor();
+    } else if (options.getDispatchThreads() > 0) {
+      final AtomicInteger threadCounter = new AtomicInteger();
+      dispatchExecutor =
+          Executors.newFixedThreadPool(
+              options.getDispatchThreads(),
+              runnable -> {
+                final Thread thread =
+                    new Thread(runnable, "streamr-dispatch-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              });
+    } else {
+      dispatchExecutor = null;
+    }
+    bufferBudget =
+        new BufferBudget(
+            options.getMaxBufferedBytes(),
+            options.getBufferOverflowPolicy(),
+            options.getSpillDirectory(),
+            options.getMaxSpilledBytes());
   }
 
   public StreamrClient(AuthenticationMethod authenticationMethod) {
@@ -204,7 +302,7 @@ public class StreamrClient extends StreamrRESTClient {
     this(new StreamrClientOptions());
   }
 
-  private void initWebsocket() {
+  private void initWebsocket(int connection) {
     final URI uri;
     try {
       final String websocketApiUrl = options.getWebsocketApiUrl();
@@ -212,14 +310,29 @@ public class StreamrClient extends StreamrRESTClient {
     } catch (URISyntaxException e) {
       throw new RuntimeException(e);
     }
-    this.setWebsocket(new StreamrWebSocketClient(this, uri));
+    this.setWebsocket(connection, new StreamrWebSocketClient(this, connection, uri));
+  }
+
+  /**
+   * Returns the connection that serves the stream-partition. All requests concerning a
+   * stream-partition are sent on the same connection, so its messages arrive on a single thread.
+   */
+  private int getConnection(String streamId, int partition) {
+    if (websockets.length == 1) {
+      return 0;
+    }
+    return Math.floorMod(StreamPartition.of(streamId, partition).hashCode(), websockets.length);
   }
 
   /*
    * Connecting and disconnecting
    */
 
-  public void onOpen() {}
+  public void onOpen() {
+    for (PublishQueue publishQueue : publishQueues) {
+      publishQueue.onConnected();
+    }
+  }
 
   public void onClose() {
     if (!isKeepConnected()) {
@@ -230,10 +343,15 @@ public class StreamrClient extends StreamrRESTClient {
 
   public void onError(Exception ex) {}
 
+  /** Returns the first connection. See {@link StreamrClientOptions#getWebsocketConnections()}. */
   public WebSocketClient getWebsocket() {
+    return getWebsocket(0);
+  }
+
+  private WebSocketClient getWebsocket(int connection) {
     websocketRLock.lock();
     try {
-      return this.websocket;
+      return this.websockets[connection];
     } finally {
       websocketRLock.unlock();
     }
@@ -251,20 +369,29 @@ public class StreamrClient extends StreamrRESTClient {
       executorService.scheduleAtFixedRate(
           () -> {
             if (isKeepConnected()) {
-              if (getState() != ReadyState.OPEN) {
-                final boolean isReconnect = !isWebsocketNull();
-                log.info("Not connected. Attempting to " + (isReconnect ? "reconnect" : "connect"));
-                if (isReconnect) {
-                  this.getWebsocket().closeConnection(0, "");
+              for (int i = 0; i < websockets.length; i++) {
+                if (getState(i) != ReadyState.OPEN) {
+                  final boolean isReconnect = !isWebsocketNull(i);
+                  log.info(
+                      "Connection {} not connected. Attempting to {}",
+                      i,
+                      isReconnect ? "reconnect" : "connect");
+                  if (isReconnect) {
+                    this.getWebsocket(i).closeConnection(0, "");
+                  }
+                  initWebsocket(i);
+                  this.getWebsocket(i).connect();
                 }
-                initWebsocket();
-                this.getWebsocket().connect();
               }
             } else {
               if (getState() != ReadyState.CLOSED) {
                 log.info("Closing connection");
-                getWebsocket().closeConnection(0, "");
-                this.setWebsocket(null);
+                for (int i = 0; i < websockets.length; i++) {
+                  if (!isWebsocketNull(i)) {
+                    getWebsocket(i).closeConnection(0, "");
+                    this.setWebsocket(i, null);
+                  }
+                }
                 executorService.shutdown();
               }
             }
@@ -326,18 +453,26 @@ public class StreamrClient extends StreamrRESTClient {
     log.info("Connected to " + options.getWebsocketApiUrl());
   }
 
-  /** Disconnects the websocket. Blocks until disconnected, or throws if the operation times out. */
+  /**
+   * Disconnects the websocket. Blocks until disconnected, or throws if the operation times out.
+   * Messages published with publishAsync that haven't been sent yet fail. Received messages still
+   * buffered by subscriptions are dropped, and the spill files are deleted.
+   */
   public void disconnect() throws ConnectionTimeoutException {
-    if (getState() == ReadyState.CLOSED) {
-      return;
+    for (PublishQueue publishQueue : publishQueues) {
+      publishQueue.close();
     }
-    setKeepConnected(false);
-    waitForState(ReadyState.CLOSED);
-    ReadyState state = getState();
-    if (state != ReadyState.CLOSED) {
-      throw new RuntimeException(
-          String.format("Failed to disconnect: never went from %s to CLOSED readyState", state));
+    if (getState() != ReadyState.CLOSED) {
+      setKeepConnected(false);
+      waitForState(ReadyState.CLOSED);
+      ReadyState state = getState();
+      if (state != ReadyState.CLOSED) {
+        throw new RuntimeException(
+            String.format("Failed to disconnect: never went from %s to CLOSED readyState", state));
+      }
     }
+    subs.forEach(Subscription::releaseBuffers);
+    bufferBudget.close();
   }
 
   public void setErrorMessageHandler(ErrorMessageHandler errorMessageHandler) {
@@ -358,30 +493,49 @@ public class StreamrClient extends StreamrRESTClient {
     }
   }
 
-  private void send(ControlMessage message) {
+  /** Returns false if the message was not sent because there is no websocket. */
+  private boolean send(String streamId, int partition, ControlMessage message) {
     log.trace(
         "[{}] >> {}", publisherId != null ? publisherId.toString().substring(0, 6) : null, message);
-    if (!isWebsocketNull()) {
-      this.getWebsocket().send(message.toJson());
+    final WebSocketClient websocket = getWebsocket(getConnection(streamId, partition));
+    if (websocket != null) {
+      websocket.send(message.toJson());
+      return true;
     } else {
       log.warn("send: websocket is null, not sending message {}", message);
+      return false;
     }
   }
 
-  private boolean isWebsocketNull() {
-    websocketRLock.lock();
-    try {
-      return (this.getWebsocket() == null);
-    } finally {
-      websocketRLock.unlock();
-    }
+  private boolean isWebsocketNull(int connection) {
+    return this.getWebsocket(connection) == null;
   }
 
+  /**
+   * Returns OPEN once all connections are open and CLOSED once all of them are closed. In between,
+   * returns CLOSING if any connection is closing and NOT_YET_CONNECTED otherwise.
+   */
   public ReadyState getState() {
-    if (isWebsocketNull()) {
+    final ReadyState first = getState(0);
+    boolean closing = first == ReadyState.CLOSING;
+    boolean mixed = false;
+    for (int i = 1; i < websockets.length; i++) {
+      final ReadyState state = getState(i);
+      closing |= state == ReadyState.CLOSING;
+      mixed |= state != first;
+    }
+    if (!mixed) {
+      return first;
+    }
+    return closing ? ReadyState.CLOSING : ReadyState.NOT_YET_CONNECTED;
+  }
+
+  private ReadyState getState(int connection) {
+    final WebSocketClient websocket = getWebsocket(connection);
+    if (websocket == null) {
       return ReadyState.CLOSED;
     }
-    return this.getWebsocket().getReadyState();
+    return websocket.getReadyState();
   }
 
   public Address getPublisherId() {
@@ -406,45 +560,11 @@ public class StreamrClient extends StreamrRESTClient {
    * Message handling
    */
 
-  protected void handleMessage(String rawMessageAsString) {
+  protected void handleMessage(int connection, String rawMessageAsString) {
     try {
-      // Handle different message types
       ControlMessage message = ControlMessage.fromJson(rawMessageAsString);
-
-      log.trace(
-          "[{}] << {}",
-          publisherId != null ? publisherId.toString().substring(0, 6) : null,
-          message);
-
       if (message != null) {
-        try {
-          if (message.getType() == BroadcastMessage.TYPE) {
-            BroadcastMessage msg = (BroadcastMessage) message;
-            handleMessage(msg.getStreamMessage(), Subscription::handleRealTimeMessage);
-          } else if (message.getType() == UnicastMessage.TYPE) {
-            UnicastMessage msg = (UnicastMessage) message;
-            handleMessage(msg.getStreamMessage(), Subscription::handleResentMessage);
-          } else if (message.getType() == SubscribeResponse.TYPE) {
-            handleSubscribeResponse((SubscribeResponse) message);
-          } else if (message.getType() == UnsubscribeResponse.TYPE) {
-            handleUnsubscribeResponse((UnsubscribeResponse) message);
-          } else if (message.getType() == ResendResponseResending.TYPE) {
-            handleResendResponseResending((ResendResponseResending) message);
-          } else if (message.getType() == ResendResponseNoResend.TYPE) {
-            handleResendResponseNoResend((ResendResponseNoResend) message);
-          } else if (message.getType() == ResendResponseResent.TYPE) {
-            handleResendResponseResent((ResendResponseResent) message);
-          } else if (message.getType() == ErrorResponse.TYPE) {
-            ErrorResponse error = (ErrorResponse) message;
-            if (this.errorMessageHandler != null) {
-              this.errorMessageHandler.onErrorMessage(error);
-            } else {
-              log.error("Protocol error message: '{}'", error.getErrorMessage());
-            }
-          }
-        } catch (Exception e) {
-          log.error("Error handling message: " + message, e);
-        }
+        handleMessage(connection, message);
       } else {
         log.error("Parsed message was null! Raw message: " + rawMessageAsString);
       }
@@ -453,21 +573,109 @@ public class StreamrClient extends StreamrRESTClient {
     }
   }
 
+  /**
+   * Handles a UTF-8 encoded frame straight from the network buffer. The frame is only decoded into
+   * a String for logging when it fails to parse. Both binary and unfragmented text frames come
+   * here, see {@link TextFramesAsBytesDraft}.
+   */
+  protected void handleMessage(int connection, ByteBuffer rawMessage) {
+    try {
+      ControlMessage message = ControlMessage.fromBytes(rawMessage);
+      if (message != null) {
+        handleMessage(connection, message);
+      } else {
+        log.error(
+            "Parsed message was null! Raw message: "
+                + StandardCharsets.UTF_8.decode(rawMessage.duplicate()));
+      }
+    } catch (Exception e) {
+      log.error(
+          "Error while handling message: " + StandardCharsets.UTF_8.decode(rawMessage.duplicate()),
+          e);
+    }
+  }
+
+  private void handleMessage(int connection, ControlMessage message) {
+    log.trace(
+        "[{}] << {}", publisherId != null ? publisherId.toString().substring(0, 6) : null, message);
+
+    if (verificationLanes == null) {
+      dispatch(message, false);
+      return;
+    }
+    // Validate stream messages on the verification threads. All control messages of a connection,
+    // including those without a stream message, are dispatched in the order they were received.
+    StreamMessage streamMessage = null;
+    if (message.getType() == BroadcastMessage.TYPE) {
+      streamMessage = ((BroadcastMessage) message).getStreamMessage();
+    } else if (message.getType() == UnicastMessage.TYPE) {
+      streamMessage = ((UnicastMessage) message).getStreamMessage();
+    }
+    verificationLanes[connection].execute(
+        streamMessage != null ? validation(streamMessage) : null,
+        (validated, error) -> {
+          if (error != null) {
+            log.error("Error handling message: " + message, error);
+          } else {
+            dispatch(message, true);
+          }
+        });
+  }
+
+  private Supplier<StreamMessage> validation(StreamMessage streamMessage) {
+    return () -> {
+      streamMessageValidator.validate(streamMessage);
+      return streamMessage;
+    };
+  }
+
+  private void dispatch(ControlMessage message, boolean validated) {
+    try {
+      // Handle different message types
+      if (message.getType() == BroadcastMessage.TYPE) {
+        BroadcastMessage msg = (BroadcastMessage) message;
+        handleMessage(msg.getStreamMessage(), Subscription::handleRealTimeMessage, validated);
+      } else if (message.getType() == UnicastMessage.TYPE) {
+        UnicastMessage msg = (UnicastMessage) message;
+        handleMessage(msg.getStreamMessage(), Subscription::handleResentMessage, validated);
+      } else if (message.getType() == SubscribeResponse.TYPE) {
+        handleSubscribeResponse((SubscribeResponse) message);
+      } else if (message.getType() == UnsubscribeResponse.TYPE) {
+        handleUnsubscribeResponse((UnsubscribeResponse) message);
+      } else if (message.getType() == ResendResponseResending.TYPE) {
+        handleResendResponseResending((ResendResponseResending) message);
+      } else if (message.getType() == ResendResponseNoResend.TYPE) {
+        handleResendResponseNoResend((ResendResponseNoResend) message);
+      } else if (message.getType() == ResendResponseResent.TYPE) {
+        handleResendResponseResent((ResendResponseResent) message);
+      } else if (message.getType() == ErrorResponse.TYPE) {
+        ErrorResponse error = (ErrorResponse) message;
+        if (this.errorMessageHandler != null) {
+          this.errorMessageHandler.onErrorMessage(error);
+        } else {
+          log.error("Protocol error message: '{}'", error.getErrorMessage());
+        }
+      }
+    } catch (Exception e) {
+      log.error("Error handling message: " + message, e);
+    }
+  }
+
   private void handleMessage(
-      StreamMessage message, BiConsumer<Subscription, StreamMessage> subMsgHandler)
+      StreamMessage message,
+      BiConsumer<Subscription, StreamMessage> subMsgHandler,
+      boolean validated)
       throws SubscriptionNotFoundException {
-    streamMessageValidator.validate(message);
+    if (!validated) {
+      streamMessageValidator.validate(message);
+    }
     Subscription sub = subs.get(message.getStreamId(), message.getStreamPartition());
 
     // Only call the handler if we are in subscribed state (and not for example UNSUBSCRIBING)
     if (sub.isSubscribed()) {
       // we can clear the second resend upon reception of a message because gap filling will
       // take care of sending other resend requests if needed.
-      OneTimeResend resend = secondResends.get(sub.getId());
-      if (resend != null) {
-        resend.interrupt();
-        secondResends.remove(sub.getId());
-      }
+      cancelSecondResend(sub);
       subMsgHandler.accept(sub, message);
     }
   }
@@ -498,6 +706,13 @@ public class StreamrClient extends StreamrRESTClient {
     publish(stream, payload, timestamp, partitionKey, null);
   }
 
+  /**
+   * Publishes a message and blocks until it has been sent. Messages published while the connection
+   * is down are sent after reconnecting.
+   *
+   * @throws PublishTimeoutException if the message hasn't been sent within {@link
+   *     StreamrClientOptions#getPublishTimeoutMillis()}. It may still be sent later.
+   */
   public void publish(
       Stream stream,
       Map<String, Object> payload,
@@ -507,46 +722,150 @@ public class StreamrClient extends StreamrRESTClient {
     // Convenience feature: allow user to call publish() without having had called connect()
     // beforehand.
     connect();
+    final CompletableFuture<StreamMessage> future =
+        publishAsync(stream, payload, timestamp, partitionKey, newGroupKey);
+    try {
+      future.get(options.getPublishTimeoutMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new CompletionException(e.getCause());
+    } catch (TimeoutException e) {
+      throw new PublishTimeoutException(options.getPublishTimeoutMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    }
+  }
 
-    GroupKey currentKey = keyStore.getCurrentKey(stream.getId());
+  public CompletableFuture<StreamMessage> publishAsync(Stream stream, Map<String, Object> payload) {
+    return publishAsync(stream, payload, new Date(), null, null);
+  }
 
-    // Use the new key if there wasn't one before
-    if (currentKey == null && newGroupKey != null) {
-      currentKey = newGroupKey;
-      keyStore.add(stream.getId(), newGroupKey);
-    }
+  public CompletableFuture<StreamMessage> publishAsync(
+      Stream stream, Map<String, Object> payload, Date timestamp) {
+    return publishAsync(stream, payload, timestamp, null, null);
+  }
 
-    // Ignore newGroupKey if it's the same as the current one
-    if (currentKey != null && newGroupKey != null && currentKey.equals(newGroupKey)) {
-      newGroupKey = null;
-    }
+  public CompletableFuture<StreamMessage> publishAsync(
+      Stream stream, Map<String, Object> payload, Date timestamp, String partitionKey) {
+    return publishAsync(stream, payload, timestamp, partitionKey, null);
+  }
 
-    // Add the new key to the keyStore unless it's already there
-    if (newGroupKey != null && keyStore.get(stream.getId(), newGroupKey.getGroupKeyId()) == null) {
-      keyStore.add(stream.getId(), newGroupKey);
+  /**
+   * Creates the message and queues it for sending without waiting for it to be sent. While the
+   * connection is down, messages are buffered up to {@link
+   * StreamrClientOptions#getPublishQueueCapacity()}, after which {@link
+   * StreamrClientOptions#getPublishBackpressurePolicy()} applies.
+   *
+   * <p>Connects first if the client has not been connected yet. Under {@link
+   * BackpressurePolicy#BLOCK}, waits for room in the queue before the message is created, so that
+   * other threads can publish to connections that have room meanwhile.
+   *
+   * @return a future that completes with the published message once it has been sent
+   */
+  public CompletableFuture<StreamMessage> publishAsync(
+      Stream stream,
+      Map<String, Object> payload,
+      Date timestamp,
+      @Nullable String partitionKey,
+      @Nullable GroupKey newGroupKey) {
+    if (!isKeepConnected()) {
+      connect();
     }
 
-    // Check if an automatic rekey is needed
-    if (options.getEncryptionOptions().autoRevoke()
-        && keyExchangeUtil.keyRevocationNeeded(stream.getId())) {
-      keyExchangeUtil.rekey(stream.getId(), true);
+    final int partition = msgCreationUtil.getStreamPartition(stream, partitionKey);
+    final PublishQueue.Reservation reservation;
+    try {
+      reservation = publishQueues[getConnection(stream.getId(), partition)].reserve();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return failedFuture(e);
+    } catch (IllegalStateException e) {
+      return failedFuture(e);
     }
-
-    StreamMessage streamMessage =
-        msgCreationUtil.createStreamMessage(
-            stream, payload, timestamp, partitionKey, currentKey, newGroupKey);
+    final CompletableFuture<StreamMessage> result;
     try {
-      publish(streamMessage);
-    } catch (WebsocketNotConnectedException e) {
-      // TODO: re-try sending once. Need to implement proper message enqueuing while not connected
-      // later.
-      connect();
-      publish(streamMessage);
+      result = createAndAdd(stream, partition, payload, timestamp, newGroupKey, reservation);
+    } catch (RuntimeException | Error e) {
+      reservation.cancel();
+      throw e;
     }
+    // Releases the place if signing failed before the message was added
+    result.whenComplete((message, e) -> reservation.cancel());
+    return result;
+  }
+
+  private CompletableFuture<StreamMessage> createAndAdd(
+      Stream stream,
+      int partition,
+      Map<String, Object> payload,
+      Date timestamp,
+      @Nullable GroupKey newGroupKey,
+      PublishQueue.Reservation reservation) {
+    synchronized (publishLock) {
+      GroupKey currentKey = keyStore.getCurrentKey(stream.getId());
+
+      // Use the new key if there wasn't one before
+      if (currentKey == null && newGroupKey != null) {
+        currentKey = newGroupKey;
+        keyStore.add(stream.getId(), newGroupKey);
+      }
+
+      // Ignore newGroupKey if it's the same as the current one
+      if (currentKey != null && newGroupKey != null && currentKey.equals(newGroupKey)) {
+        newGroupKey = null;
+      }
+
+      // Add the new key to the keyStore unless it's already there
+      if (newGroupKey != null
+          && keyStore.get(stream.getId(), newGroupKey.getGroupKeyId()) == null) {
+        keyStore.add(stream.getId(), newGroupKey);
+      }
+
+      // Check if an automatic rekey is needed
+      if (options.getEncryptionOptions().autoRevoke()
+          && keyExchangeUtil.keyRevocationNeeded(stream.getId())) {
+        keyExchangeUtil.rekey(stream.getId(), true);
+      }
+
+      if (signingPipeline != null) {
+        final StreamMessage unsigned =
+            msgCreationUtil.createUnsignedStreamMessage(
+                stream, partition, payload, timestamp, currentKey, newGroupKey);
+        return signingPipeline.submit(unsigned, reservation::add);
+      }
+      StreamMessage streamMessage =
+          msgCreationUtil.createStreamMessage(
+              stream, partition, payload, timestamp, currentKey, newGroupKey);
+      return reservation.add(streamMessage);
+    }
+  }
+
+  private static CompletableFuture<StreamMessage> failedFuture(Throwable e) {
+    final CompletableFuture<StreamMessage> future = new CompletableFuture<>();
+    future.completeExceptionally(e);
+    return future;
   }
 
   private void publish(StreamMessage streamMessage) {
-    send(new PublishRequest(newRequestId("pub"), streamMessage, getSessionToken()));
+    send(
+        streamMessage.getStreamId(),
+        streamMessage.getStreamPartition(),
+        new PublishRequest(newRequestId("pub"), streamMessage, getSessionToken()));
+  }
+
+  /** Sender of the publish queues, which must not complete a message that wasn't sent. */
+  private void sendQueued(StreamMessage streamMessage) {
+    final boolean sent =
+        send(
+            streamMessage.getStreamId(),
+            streamMessage.getStreamPartition(),
+            new PublishRequest(newRequestId("pub"), streamMessage, getSessionToken()));
+    if (!sent) {
+      throw new WebsocketNotConnectedException();
+    }
   }
 
   public GroupKey rekey(Stream stream) {
@@ -582,6 +901,15 @@ public class StreamrClient extends StreamrRESTClient {
     SubscribeRequest subscribeRequest =
         new SubscribeRequest(newRequestId("sub"), stream.getId(), partition, getSessionToken());
 
+    final MessageHandler subHandler =
+        dispatchExecutor == null
+            ? handler
+            : new SubscriptionMailbox(
+                handler,
+                dispatchExecutor,
+                options.getDispatchQueueCapacity(),
+                options.getDispatchBackpressurePolicy());
+
     Subscription sub;
     BasicSubscription.GroupKeyRequestFunction requestFunction =
         (publisherId, groupKeyIds) -> sendGroupKeyRequest(stream.getId(), publisherId, groupKeyIds);
@@ -590,7 +918,7 @@ public class StreamrClient extends StreamrRESTClient {
           new RealTimeSubscription(
               stream.getId(),
               partition,
-              handler,
+              subHandler,
               keyStore,
               keyExchangeUtil,
               requestFunction,
@@ -602,7 +930,7 @@ public class StreamrClient extends StreamrRESTClient {
           new HistoricalSubscription(
               stream.getId(),
               partition,
-              handler,
+              subHandler,
               keyStore,
               keyExchangeUtil,
               resendOption,
@@ -615,7 +943,7 @@ public class StreamrClient extends StreamrRESTClient {
           new CombinedSubscription(
               stream.getId(),
               partition,
-              handler,
+              subHandler,
               keyStore,
               keyExchangeUtil,
               resendOption,
@@ -637,11 +965,12 @@ public class StreamrClient extends StreamrRESTClient {
                   msgChainId,
                   getSessionToken());
           sub.setResending(true);
-          send(req);
+          send(stream.getId(), partition, req);
         });
+    sub.setBufferBudget(bufferBudget);
     subs.add(sub);
     sub.setState(Subscription.State.SUBSCRIBING);
-    send(subscribeRequest);
+    send(stream.getId(), partition, subscribeRequest);
     return sub;
   }
 
@@ -650,7 +979,7 @@ public class StreamrClient extends StreamrRESTClient {
         new SubscribeRequest(
             newRequestId("resub"), sub.getStreamId(), sub.getPartition(), getSessionToken());
     sub.setState(Subscription.State.SUBSCRIBING);
-    send(subscribeRequest);
+    send(sub.getStreamId(), sub.getPartition(), subscribeRequest);
   }
 
   /*
@@ -684,7 +1013,7 @@ public class StreamrClient extends StreamrRESTClient {
         new UnsubscribeRequest(newRequestId("unsub"), sub.getStreamId(), sub.getPartition());
     sub.setState(Subscription.State.UNSUBSCRIBING);
     sub.setResending(false);
-    send(unsubscribeRequest);
+    send(sub.getStreamId(), sub.getPartition(), unsubscribeRequest);
   }
 
   private void handleSubscribeResponse(SubscribeResponse res) throws SubscriptionNotFoundException {
@@ -698,11 +1027,25 @@ public class StreamrClient extends StreamrRESTClient {
               res.getStreamId(),
               res.getStreamPartition(),
               this.getSessionToken());
-      send(req);
-      OneTimeResend resend =
-          new OneTimeResend(getWebsocket(), req, options.getResendTimeout(), sub);
-      secondResends.put(sub.getId(), resend);
-      resend.start();
+      send(res.getStreamId(), res.getStreamPartition(), req);
+      HashedWheelTimer.Timeout previous =
+          secondResends.put(
+              sub.getId(),
+              OneTimeResend.schedule(
+                  getWebsocket(getConnection(res.getStreamId(), res.getStreamPartition())),
+                  req,
+                  options.getResendTimeout(),
+                  sub));
+      if (previous != null) {
+        previous.cancel();
+      }
+    }
+  }
+
+  private void cancelSecondResend(Subscription sub) {
+    HashedWheelTimer.Timeout resend = secondResends.remove(sub.getId());
+    if (resend != null) {
+      resend.cancel();
     }
   }
 
@@ -710,7 +1053,9 @@ public class StreamrClient extends StreamrRESTClient {
       throws SubscriptionNotFoundException {
     Subscription sub = subs.get(res.getStreamId(), res.getStreamPartition());
     sub.setState(Subscription.State.UNSUBSCRIBED);
+    cancelSecondResend(sub);
     subs.remove(sub);
+    sub.releaseBuffers();
   }
 
   private void handleResendResponseResending(ResendResponseResending res)
@@ -743,7 +1088,7 @@ public class StreamrClient extends StreamrRESTClient {
   }
 
   private String newRequestId(String prefix) {
-    return String.format("%s.%s.%d", prefix, IdGenerator.get(), requestCounter++);
+    return String.format("%s.%s.%d", prefix, IdGenerator.get(), requestCounter.getAndIncrement());
   }
 
   public boolean isKeepConnected() {
@@ -766,30 +1111,84 @@ public class StreamrClient extends StreamrRESTClient {
     }
   }
 
+  /** Sets the first connection. See {@link StreamrClientOptions#getWebsocketConnections()}. */
   public void setWebsocket(WebSocketClient websocket) {
+    setWebsocket(0, websocket);
+  }
+
+  private void setWebsocket(int connection, WebSocketClient websocket) {
     websocketWLock.lock();
     try {
-      this.websocket = websocket;
+      this.websockets[connection] = websocket;
     } finally {
       websocketWLock.unlock();
     }
   }
 
+  /**
+   * Passes unfragmented text frames to {@link WebSocketClient#onMessage(ByteBuffer)} like binary
+   * frames, instead of decoding them into a String for {@link WebSocketClient#onMessage(String)}.
+   * The server sends all its messages as text frames. Fragmented text frames still arrive as
+   * Strings.
+   *
+   * <p>Text frames passed on as bytes are still checked like the websocket library does: invalid
+   * UTF-8 closes the connection with {@link CloseFrame#NO_UTF8}, and a text frame arriving in the
+   * middle of a fragmented message is left to the library, which closes the connection with a
+   * protocol error. The only deviation from the library is that the payload isn't decoded here.
+   */
+  private static class TextFramesAsBytesDraft extends Draft_6455 {
+    private boolean fragmented = false;
+
+    @Override
+    public void processFrame(WebSocketImpl webSocket, Framedata frame)
+        throws InvalidDataException {
+      Opcode opcode = frame.getOpcode();
+      if (opcode == Opcode.TEXT && frame.isFin() && !fragmented) {
+        ByteBuffer payload = frame.getPayloadData();
+        if (!Charsetfunctions.isValidUTF8(payload)) {
+          throw new InvalidDataException(CloseFrame.NO_UTF8, "Invalid UTF-8 in text frame");
+        }
+        webSocket.getWebSocketListener().onWebsocketMessage(webSocket, payload);
+        return;
+      }
+      super.processFrame(webSocket, frame);
+      if ((opcode == Opcode.TEXT || opcode == Opcode.BINARY) && !frame.isFin()) {
+        fragmented = true;
+      } else if (opcode == Opcode.CONTINUOUS && frame.isFin()) {
+        fragmented = false;
+      }
+    }
+
+    @Override
+    public Draft copyInstance() {
+      return new TextFramesAsBytesDraft();
+    }
+  }
+
   private static class StreamrWebSocketClient extends WebSocketClient {
     private final Logger log = LoggerFactory.getLogger(StreamrWebSocketClient.class);
     private final StreamrClient streamrClient;
+    private final int connection;
 
-    public StreamrWebSocketClient(final StreamrClient streamrClient, final URI websocketApiUrl) {
-      super(websocketApiUrl);
+    public StreamrWebSocketClient(
+        final StreamrClient streamrClient, final int connection, final URI websocketApiUrl) {
+      super(websocketApiUrl, new TextFramesAsBytesDraft());
       this.streamrClient = streamrClient;
+      this.connection = connection;
     }
 
     @Override
     public void onOpen(ServerHandshake handshakedata) {
-      log.info("Connection established");
+      log.info("Connection {} established", connection);
       streamrClient.onOpen();
       try {
-        streamrClient.subs.forEach(streamrClient::resubscribe);
+        streamrClient.subs.forEach(
+            sub -> {
+              if (streamrClient.getConnection(sub.getStreamId(), sub.getPartition())
+                  == connection) {
+                streamrClient.resubscribe(sub);
+              }
+            });
       } catch (WebsocketNotConnectedException e) {
         log.error("Failed to resubscribe", e);
       }
@@ -797,12 +1196,17 @@ public class StreamrClient extends StreamrRESTClient {
 
     @Override
     public void onMessage(String message) {
-      this.streamrClient.handleMessage(message);
+      this.streamrClient.handleMessage(connection, message);
+    }
+
+    @Override
+    public void onMessage(ByteBuffer message) {
+      this.streamrClient.handleMessage(connection, message);
     }
 
     @Override
     public void onClose(int code, String reason, boolean remote) {
-      log.info("Connection closed! Code: " + code + ", Reason: " + reason);
+      log.info("Connection " + connection + " closed! Code: " + code + ", Reason: " + reason);
       this.streamrClient.onClose();
     }
 
@@ -0,0 +1,13 @@
+package com.streamr.client.exceptions;
+
+import com.streamr.client.options.BackpressurePolicy;
+
+public class PublishQueueFullException extends RuntimeException {
+  public PublishQueueFullException(int capacity, BackpressurePolicy policy) {
+    super(
+        "Publish queue is full (capacity "
+            + capacity
+            + "), message was dropped by backpressure policy "
+            + policy);
+  }
+}
@@ -0,0 +1,7 @@
+package com.streamr.client.exceptions;
+
+public class PublishTimeoutException extends RuntimeException {
+  public PublishTimeoutException(long timeoutMillis) {
+    super("Message was not sent within " + timeoutMillis + " ms");
+  }
+}
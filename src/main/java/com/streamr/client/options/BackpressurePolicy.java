@@ -0,0 +1,20 @@
+package com.streamr.client.options;
+
+/**
+ * What happens when a bounded message queue is full: the outbound publish queue of {@code
+ * StreamrClient.publishAsync()}, or the mailbox of a subscription whose messages are dispatched on
+ * an executor.
+ */
+public enum BackpressurePolicy {
+  /** Block the publishing or receiving thread until there is room in the queue. */
+  BLOCK,
+  /**
+   * Drop the oldest queued message to make room. The future of a dropped published message
+   * completes exceptionally.
+   */
+  DROP_OLDEST,
+  /**
+   * Reject the new message. The future of a rejected published message completes exceptionally.
+   */
+  FAIL
+}
@@ -0,0 +1,26 @@
+package com.streamr.client.options;
+
+/**
+ * What a subscription does with a received message when the messages it and the other
+ * subscriptions of the client hold in memory, waiting for a gap to be filled or for a group key,
+ * would exceed {@link StreamrClientOptions#getMaxBufferedBytes()}.
+ */
+public enum BufferOverflowPolicy {
+  /**
+   * Drop the new message. A message dropped from a reorder buffer is requested again by a later
+   * gap fill. A message dropped while waiting for its group key is reported to {@code
+   * MessageHandler.onUnableToDecrypt}.
+   */
+  DROP,
+  /**
+   * Give up on the gap: empty the reorder buffer of the chain and continue from the new message.
+   * Messages waiting for a group key are dropped as with {@link #DROP}.
+   */
+  SKIP_GAP,
+  /**
+   * Write the new message to a temporary file in {@link StreamrClientOptions#getSpillDirectory()}.
+   * Spilled messages are read back in order once the gap is filled or the group key arrives. Only
+   * a small index entry per spilled message stays in memory.
+   */
+  SPILL_TO_DISK
+}
@@ -1,8 +1,8 @@
 package com.streamr.client.options;
 
+import com.streamr.client.utils.ConcurrentGroupKeyStore;
 import com.streamr.client.utils.EncryptionUtil;
 import com.streamr.client.utils.GroupKeyStore;
-import com.streamr.client.utils.InMemoryGroupKeyStore;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 
@@ -36,11 +36,11 @@ public class EncryptionOptions {
   }
 
   private EncryptionOptions() {
-    this(new InMemoryGroupKeyStore(), null, null);
+    this(new ConcurrentGroupKeyStore(), null, null);
   }
 
   private EncryptionOptions(boolean autoRevoke) {
-    this(new InMemoryGroupKeyStore(), null, null, autoRevoke);
+    this(new ConcurrentGroupKeyStore(), null, null, autoRevoke);
   }
 
   public GroupKeyStore getKeyStore() {
@@ -4,6 +4,8 @@ import com.streamr.client.exceptions.InvalidOptionsException;
 import com.streamr.client.rest.AuthenticationMethod;
 import com.streamr.client.rest.EthereumAuthenticationMethod;
 import com.streamr.client.ws.WebsocketUrl;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 public class StreamrClientOptions {
 
@@ -24,6 +26,20 @@ public class StreamrClientOptions {
   private int propagationTimeout = 5000;
   private int resendTimeout = 5000;
   private boolean skipGapsOnFullQueue = true;
+  private int publishQueueCapacity = 10000;
+  private BackpressurePolicy publishBackpressurePolicy = BackpressurePolicy.BLOCK;
+  private long publishTimeoutMillis = 30 * 1000;
+  private int publishSigningThreads = 0;
+  private int verificationThreads = 0;
+  private int websocketConnections = 1;
+  private int dispatchThreads = 0;
+  private Executor dispatchExecutor = null;
+  private int dispatchQueueCapacity = 10000;
+  private BackpressurePolicy dispatchBackpressurePolicy = BackpressurePolicy.BLOCK;
+  private long maxBufferedBytes = 256L * 1024 * 1024;
+  private BufferOverflowPolicy bufferOverflowPolicy = BufferOverflowPolicy.SKIP_GAP;
+  private Path spillDirectory = null;
+  private long maxSpilledBytes = 1024L * 1024 * 1024;
 
   public StreamrClientOptions() {}
 
@@ -154,6 +170,175 @@ public class StreamrClientOptions {
     this.skipGapsOnFullQueue = skipGapsOnFullQueue;
   }
 
+  /** Maximum number of messages buffered for sending, see {@link BackpressurePolicy}. */
+  public int getPublishQueueCapacity() {
+    return publishQueueCapacity;
+  }
+
+  public void setPublishQueueCapacity(int publishQueueCapacity) {
+    this.publishQueueCapacity = publishQueueCapacity;
+  }
+
+  public BackpressurePolicy getPublishBackpressurePolicy() {
+    return publishBackpressurePolicy;
+  }
+
+  public void setPublishBackpressurePolicy(BackpressurePolicy publishBackpressurePolicy) {
+    this.publishBackpressurePolicy = publishBackpressurePolicy;
+  }
+
+  /** How long {@code StreamrClient.publish()} waits for the message to be sent. */
+  public long getPublishTimeoutMillis() {
+    return publishTimeoutMillis;
+  }
+
+  public void setPublishTimeoutMillis(long publishTimeoutMillis) {
+    if (publishTimeoutMillis < 1) {
+      throw new InvalidOptionsException(
+          "publishTimeoutMillis must be positive: " + publishTimeoutMillis);
+    }
+    this.publishTimeoutMillis = publishTimeoutMillis;
+  }
+
+  /**
+   * Number of threads signing published messages. With 0, messages are signed on the publishing
+   * thread.
+   */
+  public int getPublishSigningThreads() {
+    return publishSigningThreads;
+  }
+
+  public void setPublishSigningThreads(int publishSigningThreads) {
+    this.publishSigningThreads = publishSigningThreads;
+  }
+
+  /**
+   * Number of threads validating received messages, including their signatures. With 0, messages
+   * are validated on the websocket thread. Messages are delivered in the order they were received
+   * on their connection either way, and the connections share the threads.
+   */
+  public int getVerificationThreads() {
+    return verificationThreads;
+  }
+
+  public void setVerificationThreads(int verificationThreads) {
+    this.verificationThreads = verificationThreads;
+  }
+
+  /**
+   * Number of websocket connections the client opens. Each stream-partition is always served by
+   * the same connection, chosen by hashing its stream id and partition, so that the traffic of
+   * many partitions is read, validated and sent on several threads.
+   */
+  public int getWebsocketConnections() {
+    return websocketConnections;
+  }
+
+  public void setWebsocketConnections(int websocketConnections) {
+    if (websocketConnections < 1) {
+      throw new InvalidOptionsException(
+          "websocketConnections must be positive: " + websocketConnections);
+    }
+    this.websocketConnections = websocketConnections;
+  }
+
+  /**
+   * Number of threads calling the message handlers of subscriptions. With 0, and no {@link
+   * #getDispatchExecutor()}, handlers are called on the websocket thread, so a slow handler holds
+   * up every subscription on the connection. Otherwise each subscription has its own mailbox, and
+   * its handler is called on the dispatch threads, in order and one message at a time.
+   */
+  public int getDispatchThreads() {
+    return dispatchThreads;
+  }
+
+  public void setDispatchThreads(int dispatchThreads) {
+    this.dispatchThreads = dispatchThreads;
+  }
+
+  /**
+   * Executor calling the message handlers of subscriptions, overrides {@link
+   * #getDispatchThreads()}. On Java 21 and later, {@code
+   * Executors.newVirtualThreadPerTaskExecutor()} runs each handler on a virtual thread.
+   */
+  public Executor getDispatchExecutor() {
+    return dispatchExecutor;
+  }
+
+  public void setDispatchExecutor(Executor dispatchExecutor) {
+    this.dispatchExecutor = dispatchExecutor;
+  }
+
+  /**
+   * Maximum number of messages waiting in the mailbox of a subscription, see {@link
+   * BackpressurePolicy}.
+   */
+  public int getDispatchQueueCapacity() {
+    return dispatchQueueCapacity;
+  }
+
+  public void setDispatchQueueCapacity(int dispatchQueueCapacity) {
+    this.dispatchQueueCapacity = dispatchQueueCapacity;
+  }
+
+  public BackpressurePolicy getDispatchBackpressurePolicy() {
+    return dispatchBackpressurePolicy;
+  }
+
+  public void setDispatchBackpressurePolicy(BackpressurePolicy dispatchBackpressurePolicy) {
+    this.dispatchBackpressurePolicy = dispatchBackpressurePolicy;
+  }
+
+  /**
+   * Maximum estimated size of the received messages held in memory by all subscriptions together,
+   * while waiting for gaps to be filled or for group keys. See {@link BufferOverflowPolicy}.
+   */
+  public long getMaxBufferedBytes() {
+    return maxBufferedBytes;
+  }
+
+  public void setMaxBufferedBytes(long maxBufferedBytes) {
+    if (maxBufferedBytes < 1) {
+      throw new InvalidOptionsException("maxBufferedBytes must be positive: " + maxBufferedBytes);
+    }
+    this.maxBufferedBytes = maxBufferedBytes;
+  }
+
+  public BufferOverflowPolicy getBufferOverflowPolicy() {
+    return bufferOverflowPolicy;
+  }
+
+  public void setBufferOverflowPolicy(BufferOverflowPolicy bufferOverflowPolicy) {
+    this.bufferOverflowPolicy = bufferOverflowPolicy;
+  }
+
+  /**
+   * Directory of the temporary files written with {@link BufferOverflowPolicy#SPILL_TO_DISK}. If
+   * null, a {@code streamr-spill} directory in {@code java.io.tmpdir} is used.
+   */
+  public Path getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  public void setSpillDirectory(Path spillDirectory) {
+    this.spillDirectory = spillDirectory;
+  }
+
+  /**
+   * Maximum size of the temporary files written with {@link BufferOverflowPolicy#SPILL_TO_DISK}.
+   * Messages that don't fit are dropped like with {@link BufferOverflowPolicy#DROP}.
+   */
+  public long getMaxSpilledBytes() {
+    return maxSpilledBytes;
+  }
+
+  public void setMaxSpilledBytes(long maxSpilledBytes) {
+    if (maxSpilledBytes < 1) {
+      throw new InvalidOptionsException("maxSpilledBytes must be positive: " + maxSpilledBytes);
+    }
+    this.maxSpilledBytes = maxSpilledBytes;
+  }
+
   public String getDataUnionSidechainFactoryAddress() {
     return dataUnionSidechainFactoryAddress;
   }
@@ -45,7 +45,7 @@ public final class MessageRef implements Comparable<MessageRef> {
     } else if (timestamp > o.getTimestamp()) {
       return 1;
     }
-    return (int) (sequenceNumber - o.sequenceNumber);
+    return Long.compare(sequenceNumber, o.sequenceNumber);
   }
 
   @Override
@@ -3,8 +3,8 @@ package com.streamr.client.protocol.control_layer;
 import com.squareup.moshi.JsonReader;
 import com.squareup.moshi.JsonWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Objects;
 import okio.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +17,8 @@ public abstract class ControlMessage {
   private final int type;
   private final String requestId;
 
+  private volatile String json;
+
   public ControlMessage(final int type, final String requestId) {
     this.type = type;
     this.requestId = requestId;
@@ -30,11 +32,18 @@ public abstract class ControlMessage {
     return requestId;
   }
 
+  /** Returns the JSON form of this message. It is computed once and then cached. */
   public String toJson() {
+    final String cached = json;
+    if (cached != null) {
+      return cached;
+    }
     try (final Buffer buffer = new Buffer()) {
       try (final JsonWriter writer = JsonWriter.of(buffer)) {
         adapter.toJson(writer, this);
-        return buffer.readUtf8();
+        final String result = buffer.readUtf8();
+        json = result;
+        return result;
       } catch (IOException e) {
         log.error("Failed to serialize ControlMessage to JSON", e);
         return null;
@@ -43,27 +52,34 @@ public abstract class ControlMessage {
   }
 
   public static ControlMessage fromJson(String json) throws IOException {
+    return fromBytes(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Parses a UTF-8 encoded control message between the buffer's position and limit, without
+   * modifying the buffer's position. Broadcast and unicast frames carrying the latest StreamMessage
+   * version are decoded in a single pass by {@link StreamMessageFrameDecoder}, other frames go
+   * through the Moshi adapters.
+   */
+  public static ControlMessage fromBytes(ByteBuffer frame) throws IOException {
+    final ControlMessage decoded = StreamMessageFrameDecoder.decode(frame);
+    if (decoded != null) {
+      return decoded;
+    }
     final JsonReader reader;
     try (final Buffer buffer = new Buffer()) {
-      try (final Buffer source = buffer.writeString(json, StandardCharsets.UTF_8)) {
-        reader = JsonReader.of(source);
-      }
+      buffer.write(frame.duplicate());
+      reader = JsonReader.of(buffer);
     }
     return adapter.fromJson(reader);
   }
 
+  /** Subclasses compare their fields directly instead of going through {@link #toJson()}. */
   @Override
-  public boolean equals(final Object obj) {
-    if (this == obj) return true;
-    if (obj == null || getClass() != obj.getClass()) return false;
-    final ControlMessage that = (ControlMessage) obj;
-    return Objects.equals(toJson(), that.toJson());
-  }
+  public abstract boolean equals(Object obj);
 
   @Override
-  public int hashCode() {
-    return Objects.hash(toJson());
-  }
+  public abstract int hashCode();
 
   @Override
   public String toString() {
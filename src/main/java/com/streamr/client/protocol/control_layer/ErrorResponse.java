@@ -1,27 +1,46 @@
 package com.streamr.client.protocol.control_layer;
 
+import java.util.Objects;
+
 public class ErrorResponse extends ControlMessage {
-    public static final int TYPE = 7;
-    private final String errorMessage;
-    private final String errorCode;
-
-    public ErrorResponse(String requestId, String errorMessage, String errorCode) {
-        super(TYPE, requestId);
-        this.errorMessage = errorMessage;
-        this.errorCode = errorCode;
-    }
-
-    public String getErrorMessage() {
-        return errorMessage;
-    }
-
-    public String getErrorCode() {
-        return errorCode;
-    }
-
-    @Override
-    public String toString() {
-        return String.format("ErrorResponse{requestId=%s, errorCode=%s, errorMessage=%s",
-                getRequestId(), errorCode, errorMessage);
-    }
+  public static final int TYPE = 7;
+  private final String errorMessage;
+  private final String errorCode;
+
+  public ErrorResponse(String requestId, String errorMessage, String errorCode) {
+    super(TYPE, requestId);
+    this.errorMessage = errorMessage;
+    this.errorCode = errorCode;
+  }
+
+  public String getErrorMessage() {
+    return errorMessage;
+  }
+
+  public String getErrorCode() {
+    return errorCode;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) return true;
+    if (obj == null || getClass() != obj.getClass()) return false;
+    final ErrorResponse that = (ErrorResponse) obj;
+    return getType() == that.getType()
+        && Objects.equals(getRequestId(), that.getRequestId())
+        && Objects.equals(errorMessage, that.errorMessage)
+        && Objects.equals(errorCode, that.errorCode);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getType(), getRequestId(), errorMessage, errorCode);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "ErrorResponse{requestId=%s, errorCode=%s, errorMessage=%s",
+        getRequestId(), errorCode, errorMessage);
+  }
 }
@@ -1,31 +1,49 @@
 package com.streamr.client.protocol.control_layer;
 
 import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.util.Objects;
 
 public class PublishRequest extends ControlMessage {
 
-    public static final int TYPE = 8;
-
-    private final StreamMessage streamMessage;
-    private final String sessionToken;
-
-    public PublishRequest(String requestId, StreamMessage streamMessage, String sessionToken) {
-        super(TYPE, requestId);
-        this.streamMessage = streamMessage;
-        this.sessionToken = sessionToken;
-    }
-
-    public StreamMessage getStreamMessage() {
-        return streamMessage;
-    }
-
-    public String getSessionToken() {
-        return sessionToken;
-    }
-
-    @Override
-    public String toString() {
-        return String.format("PublishRequest{requestId=%s, streamMessage=%s, sessionToken=%s",
-                getRequestId(), streamMessage, sessionToken);
-    }
+  public static final int TYPE = 8;
+
+  private final StreamMessage streamMessage;
+  private final String sessionToken;
+
+  public PublishRequest(String requestId, StreamMessage streamMessage, String sessionToken) {
+    super(TYPE, requestId);
+    this.streamMessage = streamMessage;
+    this.sessionToken = sessionToken;
+  }
+
+  public StreamMessage getStreamMessage() {
+    return streamMessage;
+  }
+
+  public String getSessionToken() {
+    return sessionToken;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) return true;
+    if (obj == null || getClass() != obj.getClass()) return false;
+    final PublishRequest that = (PublishRequest) obj;
+    return getType() == that.getType()
+        && Objects.equals(getRequestId(), that.getRequestId())
+        && Objects.equals(streamMessage, that.streamMessage)
+        && Objects.equals(sessionToken, that.sessionToken);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getType(), getRequestId(), streamMessage, sessionToken);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "PublishRequest{requestId=%s, streamMessage=%s, sessionToken=%s",
+        getRequestId(), streamMessage, sessionToken);
+  }
 }
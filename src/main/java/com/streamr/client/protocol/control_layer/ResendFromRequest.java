@@ -1,6 +1,7 @@
 package com.streamr.client.protocol.control_layer;
 
 import com.streamr.client.protocol.common.MessageRef;
+import java.util.Objects;
 
 public class ResendFromRequest extends ControlMessage {
   public static final int TYPE = 12;
@@ -55,6 +56,32 @@ public class ResendFromRequest extends ControlMessage {
     return sessionToken;
   }
 
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) return true;
+    if (obj == null || getClass() != obj.getClass()) return false;
+    final ResendFromRequest that = (ResendFromRequest) obj;
+    return getType() == that.getType()
+        && streamPartition == that.streamPartition
+        && Objects.equals(getRequestId(), that.getRequestId())
+        && Objects.equals(streamId, that.streamId)
+        && Objects.equals(fromMsgRef, that.fromMsgRef)
+        && Objects.equals(publisherId, that.publisherId)
+        && Objects.equals(sessionToken, that.sessionToken);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        getType(),
+        getRequestId(),
+        streamId,
+        streamPartition,
+        fromMsgRef,
+        publisherId,
+        sessionToken);
+  }
+
   @Override
   public String toString() {
     return String.format(
@@ -1,40 +1,67 @@
 package com.streamr.client.protocol.control_layer;
 
+import java.util.Objects;
+
 public class ResendLastRequest extends ControlMessage {
-    public static final int TYPE = 11;
-
-    private final String streamId;
-    private final int streamPartition;
-    private final int numberLast;
-    private final String sessionToken;
-
-    public ResendLastRequest(String requestId, String streamId, int streamPartition, int numberLast, String sessionToken) {
-        super(TYPE, requestId);
-        this.streamId = streamId;
-        this.streamPartition = streamPartition;
-        this.numberLast = numberLast;
-        this.sessionToken = sessionToken;
-    }
-
-    public String getStreamId() {
-        return streamId;
-    }
-
-    public int getStreamPartition() {
-        return streamPartition;
-    }
-
-    public int getNumberLast() {
-        return numberLast;
-    }
-
-    public String getSessionToken() {
-        return sessionToken;
-    }
-
-    @Override
-    public String toString() {
-        return String.format("ResendLastRequest{requestId=%s, streamId=%s, streamPartition=%s, numberLast=%s, sessionToken=%s",
-                getRequestId(), streamId, streamPartition, numberLast, sessionToken);
-    }
+  public static final int TYPE = 11;
+
+  private final String streamId;
+  private final int streamPartition;
+  private final int numberLast;
+  private final String sessionToken;
+
+  public ResendLastRequest(
+      String requestId,
+      String streamId,
+      int streamPartition,
+      int numberLast,
+      String sessionToken) {
+    super(TYPE, requestId);
+    this.streamId = streamId;
+    this.streamPartition = streamPartition;
+    this.numberLast = numberLast;
+    this.sessionToken = sessionToken;
+  }
+
+  public String getStreamId() {
+    return streamId;
+  }
+
+  public int getStreamPartition() {
+    return streamPartition;
+  }
+
+  public int getNumberLast() {
+    return numberLast;
+  }
+
+  public String getSessionToken() {
+    return sessionToken;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) return true;
+    if (obj == null || getClass() != obj.getClass()) return false;
+    final ResendLastRequest that = (ResendLastRequest) obj;
+    return getType() == that.getType()
+        && streamPartition == that.streamPartition
+        && numberLast == that.numberLast
+        && Objects.equals(getRequestId(), that.getRequestId())
+        && Objects.equals(streamId, that.streamId)
+        && Objects.equals(sessionToken, that.sessionToken);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        getType(), getRequestId(), streamId, streamPartition, numberLast, sessionToken);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "ResendLastRequest{requestId=%s, streamId=%s, streamPartition=%s, numberLast=%s, sessionToken=%s",
+        getRequestId(), streamId, streamPartition, numberLast, sessionToken);
+  }
 }
@@ -2,6 +2,7 @@ package com.streamr.client.protocol.control_layer;
 
 import com.streamr.client.protocol.common.MessageRef;
 import com.streamr.client.utils.Address;
+import java.util.Objects;
 
 public class ResendRangeRequest extends ControlMessage {
   public static final int TYPE = 13;
@@ -78,6 +79,36 @@ public class ResendRangeRequest extends ControlMessage {
     return sessionToken;
   }
 
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) return true;
+    if (obj == null || getClass() != obj.getClass()) return false;
+    final ResendRangeRequest that = (ResendRangeRequest) obj;
+    return getType() == that.getType()
+        && streamPartition == that.streamPartition
+        && Objects.equals(getRequestId(), that.getRequestId())
+        && Objects.equals(streamId, that.streamId)
+        && Objects.equals(fromMsgRef, that.fromMsgRef)
+        && Objects.equals(toMsgRef, that.toMsgRef)
+        && Objects.equals(publisherId, that.publisherId)
+        && Objects.equals(msgChainId, that.msgChainId)
+        && Objects.equals(sessionToken, that.sessionToken);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        getType(),
+        getRequestId(),
+        streamId,
+        streamPartition,
+        fromMsgRef,
+        toMsgRef,
+        publisherId,
+        msgChainId,
+        sessionToken);
+  }
+
   @Override
   public String toString() {
     return String.format(
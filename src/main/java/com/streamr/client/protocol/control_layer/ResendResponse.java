@@ -1,28 +1,46 @@
 package com.streamr.client.protocol.control_layer;
 
+import java.util.Objects;
+
 public abstract class ResendResponse extends ControlMessage {
 
-    private String streamId;
-    private int streamPartition;
+  private final String streamId;
+  private final int streamPartition;
+
+  public ResendResponse(int type, String requestId, String streamId, int streamPartition) {
+    super(type, requestId);
+    this.streamId = streamId;
+    this.streamPartition = streamPartition;
+  }
 
-    public ResendResponse(int type, String requestId, String streamId, int streamPartition) {
-        super(type, requestId);
-        this.streamId = streamId;
-        this.streamPartition = streamPartition;
-    }
+  public String getStreamId() {
+    return streamId;
+  }
 
-    public String getStreamId() {
-        return streamId;
-    }
+  public int getStreamPartition() {
+    return streamPartition;
+  }
 
-    public int getStreamPartition() {
-        return streamPartition;
-    }
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) return true;
+    if (obj == null || getClass() != obj.getClass()) return false;
+    final ResendResponse that = (ResendResponse) obj;
+    return getType() == that.getType()
+        && streamPartition == that.streamPartition
+        && Objects.equals(getRequestId(), that.getRequestId())
+        && Objects.equals(streamId, that.streamId);
+  }
 
-    @Override
-    public String toString() {
-        return String.format("%s{requestId=%s, streamId=%s, streamPartition=%s",
-                getClass().getSimpleName(), getRequestId(), streamId, streamPartition);
-    }
+  @Override
+  public int hashCode() {
+    return Objects.hash(getType(), getRequestId(), streamId, streamPartition);
+  }
 
+  @Override
+  public String toString() {
+    return String.format(
+        "%s{requestId=%s, streamId=%s, streamPartition=%s",
+        getClass().getSimpleName(), getRequestId(), streamId, streamPartition);
+  }
 }
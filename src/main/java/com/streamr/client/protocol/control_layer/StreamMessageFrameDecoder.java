@@ -0,0 +1,403 @@
+package com.streamr.client.protocol.control_layer;
+
+import com.streamr.client.protocol.common.MessageRef;
+import com.streamr.client.protocol.message_layer.MalformedMessageException;
+import com.streamr.client.protocol.message_layer.MessageId;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.protocol.message_layer.StreamMessage.EncryptionType;
+import com.streamr.client.protocol.message_layer.StreamMessage.SignatureType;
+import com.streamr.client.utils.Address;
+import com.streamr.client.utils.EncryptedGroupKey;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single-pass decoder for {@link BroadcastMessage} and {@link UnicastMessage} frames carrying
+ * version 32 {@link StreamMessage}s. Reads the UTF-8 frame directly into the final message fields
+ * without an intermediate JSON token stream. Content without escape sequences is kept as a view
+ * onto the frame, so the frame buffer must not be modified after decoding.
+ *
+ * <p>{@link #decode(ByteBuffer)} returns null for any frame it does not recognize, in which case the
+ * caller must fall back to {@link ControlMessageAdapter}. Frames that have the right shape but
+ * invalid values are rejected with a {@link MalformedMessageException}, like the adapters do.
+ */
+final class StreamMessageFrameDecoder {
+  private static final int STREAM_MESSAGE_VERSION = 32;
+
+  /** Thrown internally when the frame doesn't have the expected shape. Carries no stack trace. */
+  private static final class FrameMismatch extends RuntimeException {
+    private static final FrameMismatch INSTANCE = new FrameMismatch();
+
+    private FrameMismatch() {
+      super("frame mismatch", null, false, false);
+    }
+  }
+
+  private final ByteBuffer buf;
+  private final int limit;
+  private int pos;
+
+  private StreamMessageFrameDecoder(final ByteBuffer buf) {
+    this.buf = buf;
+    this.pos = buf.position();
+    this.limit = buf.limit();
+  }
+
+  /**
+   * Decodes the frame between the buffer's position and limit. The buffer's position is not
+   * modified.
+   *
+   * @return the decoded message, or null if the frame is not a supported broadcast or unicast
+   *     frame
+   * @throws MalformedMessageException if the frame is a broadcast or unicast frame with invalid
+   *     values
+   */
+  static ControlMessage decode(final ByteBuffer frame) {
+    try {
+      return new StreamMessageFrameDecoder(frame).readControlMessage();
+    } catch (FrameMismatch | IndexOutOfBoundsException e) {
+      return null;
+    } catch (MalformedMessageException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new MalformedMessageException("Malformed message: " + e.getMessage(), e);
+    }
+  }
+
+  private ControlMessage readControlMessage() throws IOException {
+    expect('[');
+    if (readLong() != ControlMessage.LATEST_VERSION) {
+      throw FrameMismatch.INSTANCE;
+    }
+    expect(',');
+    final long type = readLong();
+    if (type != BroadcastMessage.TYPE && type != UnicastMessage.TYPE) {
+      throw FrameMismatch.INSTANCE;
+    }
+    expect(',');
+    final String requestId = readString();
+    expect(',');
+    final StreamMessage streamMessage = readStreamMessage();
+    expect(']');
+    skipWhitespace();
+    if (pos != limit) {
+      throw FrameMismatch.INSTANCE;
+    }
+    if (type == BroadcastMessage.TYPE) {
+      return new BroadcastMessage(requestId, streamMessage);
+    }
+    return new UnicastMessage(requestId, streamMessage);
+  }
+
+  private StreamMessage readStreamMessage() throws IOException {
+    expect('[');
+    if (readLong() != STREAM_MESSAGE_VERSION) {
+      throw FrameMismatch.INSTANCE;
+    }
+    expect(',');
+    final MessageId messageId = readMessageId();
+    expect(',');
+    final MessageRef previousMessageRef = tryReadNull() ? null : readMessageRef();
+    expect(',');
+    final byte messageType = readByte("messageType");
+    expect(',');
+    final byte contentType = readByte("contentType");
+    expect(',');
+    final byte encryptionType = readByte("encryptionType");
+    expect(',');
+    final String groupKeyId = readNullableString();
+    expect(',');
+    final ByteBuffer content = readStringBytes();
+    expect(',');
+    final String serializedNewGroupKey = readNullableString();
+    expect(',');
+    final byte signatureType = readByte("signatureType");
+    expect(',');
+    final String signature = readNullableString();
+    expect(']');
+
+    return new StreamMessage.Builder()
+        .withMessageId(messageId)
+        .withPreviousMessageRef(previousMessageRef)
+        .withMessageType(StreamMessage.MessageType.fromId(messageType))
+        .withContent(
+            new StreamMessage.Content.Builder()
+                .withContentType(StreamMessage.Content.Type.fromId(contentType))
+                .withPayload(content)
+                .createContent())
+        .withEncryptionType(EncryptionType.fromId(encryptionType))
+        .withGroupKeyId(groupKeyId)
+        .withNewGroupKey(
+            serializedNewGroupKey != null
+                ? EncryptedGroupKey.deserialize(serializedNewGroupKey)
+                : null)
+        .withSignatureType(SignatureType.fromId(signatureType))
+        .withSignature(signature)
+        .createStreamMessage();
+  }
+
+  private MessageId readMessageId() {
+    expect('[');
+    final String streamId = readString();
+    expect(',');
+    final int streamPartition = readInt("streamPartition");
+    expect(',');
+    final long timestamp = readLong();
+    expect(',');
+    final long sequenceNumber = readLong();
+    expect(',');
+    final String publisherId = readString();
+    expect(',');
+    final String msgChainId = readString();
+    expect(']');
+    return new MessageId.Builder()
+        .withStreamId(streamId)
+        .withStreamPartition(streamPartition)
+        .withTimestamp(timestamp)
+        .withSequenceNumber(sequenceNumber)
+        .withPublisherId(new Address(publisherId))
+        .withMsgChainId(msgChainId)
+        .createMessageId();
+  }
+
+  private MessageRef readMessageRef() {
+    expect('[');
+    final long timestamp = readLong();
+    expect(',');
+    final long sequenceNumber = readLong();
+    expect(']');
+    return new MessageRef(timestamp, sequenceNumber);
+  }
+
+  private void skipWhitespace() {
+    while (pos < limit) {
+      final byte b = buf.get(pos);
+      if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+        return;
+      }
+      pos++;
+    }
+  }
+
+  private void expect(final char c) {
+    skipWhitespace();
+    if (buf.get(pos) != c) {
+      throw FrameMismatch.INSTANCE;
+    }
+    pos++;
+  }
+
+  private boolean tryReadNull() {
+    skipWhitespace();
+    if (buf.get(pos) == 'n') {
+      if (buf.get(pos + 1) != 'u' || buf.get(pos + 2) != 'l' || buf.get(pos + 3) != 'l') {
+        throw FrameMismatch.INSTANCE;
+      }
+      pos += 4;
+      return true;
+    }
+    return false;
+  }
+
+  /** Reads an integral JSON number. Fractions and exponents are left to the fallback path. */
+  private long readLong() {
+    skipWhitespace();
+    boolean negative = false;
+    if (buf.get(pos) == '-') {
+      negative = true;
+      pos++;
+    }
+    final int start = pos;
+    long value = 0;
+    while (pos < limit) {
+      final byte b = buf.get(pos);
+      if (b < '0' || b > '9') {
+        break;
+      }
+      if (value > (Long.MAX_VALUE - (b - '0')) / 10) {
+        throw FrameMismatch.INSTANCE;
+      }
+      value = value * 10 + (b - '0');
+      pos++;
+    }
+    if (pos == start) {
+      throw FrameMismatch.INSTANCE;
+    }
+    if (pos < limit) {
+      final byte b = buf.get(pos);
+      if (b == '.' || b == 'e' || b == 'E') {
+        throw FrameMismatch.INSTANCE;
+      }
+    }
+    return negative ? -value : value;
+  }
+
+  private int readInt(final String field) {
+    final long value = readLong();
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw new MalformedMessageException(field + " out of range: " + value);
+    }
+    return (int) value;
+  }
+
+  private byte readByte(final String field) {
+    final long value = readLong();
+    if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+      throw new MalformedMessageException(field + " out of range: " + value);
+    }
+    return (byte) value;
+  }
+
+  private String readNullableString() {
+    return tryReadNull() ? null : readString();
+  }
+
+  private String readString() {
+    skipWhitespace();
+    final int end = findUnescapedStringEnd();
+    if (end >= 0) {
+      final int start = pos + 1;
+      pos = end + 1;
+      if (buf.hasArray()) {
+        return new String(
+            buf.array(), buf.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+      }
+      return new String(copy(start, end), StandardCharsets.UTF_8);
+    }
+    return new String(readEscapedStringBytes(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads a JSON string and returns its unescaped UTF-8 bytes. If the string has no escape
+   * sequences, the result is a view onto the frame.
+   */
+  private ByteBuffer readStringBytes() {
+    skipWhitespace();
+    final int end = findUnescapedStringEnd();
+    if (end >= 0) {
+      final ByteBuffer view = buf.duplicate();
+      view.position(pos + 1);
+      view.limit(end);
+      pos = end + 1;
+      return view.slice();
+    }
+    return ByteBuffer.wrap(readEscapedStringBytes());
+  }
+
+  /**
+   * Scans the string starting at {@code pos}. Returns the index of the closing quote if the string
+   * contains no escape sequences, or -1 if it does.
+   */
+  private int findUnescapedStringEnd() {
+    if (buf.get(pos) != '"') {
+      throw FrameMismatch.INSTANCE;
+    }
+    int i = pos + 1;
+    while (true) {
+      final byte b = buf.get(i);
+      if (b == '"') {
+        return i;
+      } else if (b == '\\') {
+        return -1;
+      }
+      i++;
+    }
+  }
+
+  private byte[] copy(final int start, final int end) {
+    final byte[] bytes = new byte[end - start];
+    for (int i = start; i < end; i++) {
+      bytes[i - start] = buf.get(i);
+    }
+    return bytes;
+  }
+
+  private byte[] readEscapedStringBytes() {
+    pos++; // opening quote
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    while (true) {
+      final byte b = buf.get(pos++);
+      if (b == '"') {
+        return out.toByteArray();
+      } else if (b != '\\') {
+        out.write(b);
+        continue;
+      }
+      final byte escaped = buf.get(pos++);
+      switch (escaped) {
+        case '"':
+        case '\\':
+        case '/':
+          out.write(escaped);
+          break;
+        case 'b':
+          out.write('\b');
+          break;
+        case 'f':
+          out.write('\f');
+          break;
+        case 'n':
+          out.write('\n');
+          break;
+        case 'r':
+          out.write('\r');
+          break;
+        case 't':
+          out.write('\t');
+          break;
+        case 'u':
+          int codePoint = readHexChar();
+          if (Character.isHighSurrogate((char) codePoint)
+              && buf.get(pos) == '\\'
+              && buf.get(pos + 1) == 'u') {
+            pos += 2;
+            final int low = readHexChar();
+            if (!Character.isLowSurrogate((char) low)) {
+              throw FrameMismatch.INSTANCE;
+            }
+            codePoint = Character.toCodePoint((char) codePoint, (char) low);
+          }
+          writeUtf8(out, codePoint);
+          break;
+        default:
+          throw FrameMismatch.INSTANCE;
+      }
+    }
+  }
+
+  private int readHexChar() {
+    int value = 0;
+    for (int i = 0; i < 4; i++) {
+      final int digit = Character.digit(buf.get(pos++), 16);
+      if (digit < 0) {
+        throw FrameMismatch.INSTANCE;
+      }
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+
+  private static void writeUtf8(final ByteArrayOutputStream out, final int codePoint) {
+    if (codePoint < 0x80) {
+      out.write(codePoint);
+    } else if (codePoint < 0x800) {
+      out.write(0xC0 | (codePoint >> 6));
+      out.write(0x80 | (codePoint & 0x3F));
+    } else if (codePoint < 0x10000) {
+      if (Character.isSurrogate((char) codePoint)) {
+        // Unpaired surrogate, let the fallback path deal with it
+        throw FrameMismatch.INSTANCE;
+      }
+      out.write(0xE0 | (codePoint >> 12));
+      out.write(0x80 | ((codePoint >> 6) & 0x3F));
+      out.write(0x80 | (codePoint & 0x3F));
+    } else {
+      out.write(0xF0 | (codePoint >> 18));
+      out.write(0x80 | ((codePoint >> 12) & 0x3F));
+      out.write(0x80 | ((codePoint >> 6) & 0x3F));
+      out.write(0x80 | (codePoint & 0x3F));
+    }
+  }
+}
@@ -1,34 +1,55 @@
 package com.streamr.client.protocol.control_layer;
 
+import java.util.Objects;
+
 public class SubscribeRequest extends ControlMessage {
-    public static final int TYPE = 9;
-
-    private final String streamId;
-    private final int streamPartition;
-    private final String sessionToken;
-
-    public SubscribeRequest(String requestId, String streamId, int streamPartition, String sessionToken) {
-        super(TYPE, requestId);
-        this.streamId = streamId;
-        this.streamPartition = streamPartition;
-        this.sessionToken = sessionToken;
-    }
-
-    public String getStreamId() {
-        return streamId;
-    }
-
-    public int getStreamPartition() {
-        return streamPartition;
-    }
-
-    public String getSessionToken() {
-        return sessionToken;
-    }
-
-    @Override
-    public String toString() {
-        return String.format("SubscribeRequest{requestId=%s, streamId=%s, streamPartition=%s, sessionToken=%s",
-                getRequestId(), streamId, streamPartition, sessionToken);
-    }
+  public static final int TYPE = 9;
+
+  private final String streamId;
+  private final int streamPartition;
+  private final String sessionToken;
+
+  public SubscribeRequest(
+      String requestId, String streamId, int streamPartition, String sessionToken) {
+    super(TYPE, requestId);
+    this.streamId = streamId;
+    this.streamPartition = streamPartition;
+    this.sessionToken = sessionToken;
+  }
+
+  public String getStreamId() {
+    return streamId;
+  }
+
+  public int getStreamPartition() {
+    return streamPartition;
+  }
+
+  public String getSessionToken() {
+    return sessionToken;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) return true;
+    if (obj == null || getClass() != obj.getClass()) return false;
+    final SubscribeRequest that = (SubscribeRequest) obj;
+    return getType() == that.getType()
+        && streamPartition == that.streamPartition
+        && Objects.equals(getRequestId(), that.getRequestId())
+        && Objects.equals(streamId, that.streamId)
+        && Objects.equals(sessionToken, that.sessionToken);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getType(), getRequestId(), streamId, streamPartition, sessionToken);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "SubscribeRequest{requestId=%s, streamId=%s, streamPartition=%s, sessionToken=%s",
+        getRequestId(), streamId, streamPartition, sessionToken);
+  }
 }
@@ -1,29 +1,47 @@
 package com.streamr.client.protocol.control_layer;
 
+import java.util.Objects;
+
 public class SubscribeResponse extends ControlMessage {
-    public static final int TYPE = 2;
+  public static final int TYPE = 2;
+
+  private final String streamId;
+  private final int streamPartition;
 
-    private final String streamId;
-    private final int streamPartition;
+  public SubscribeResponse(String requestId, String streamId, int streamPartition) {
+    super(TYPE, requestId);
+    this.streamId = streamId;
+    this.streamPartition = streamPartition;
+  }
 
-    public SubscribeResponse(String requestId, String streamId, int streamPartition) {
-        super(TYPE, requestId);
-        this.streamId = streamId;
-        this.streamPartition = streamPartition;
-    }
+  public String getStreamId() {
+    return streamId;
+  }
 
-    public String getStreamId() {
-        return streamId;
-    }
+  public int getStreamPartition() {
+    return streamPartition;
+  }
 
-    public int getStreamPartition() {
-        return streamPartition;
-    }
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) return true;
+    if (obj == null || getClass() != obj.getClass()) return false;
+    final SubscribeResponse that = (SubscribeResponse) obj;
+    return getType() == that.getType()
+        && streamPartition == that.streamPartition
+        && Objects.equals(getRequestId(), that.getRequestId())
+        && Objects.equals(streamId, that.streamId);
+  }
 
-    @Override
-    public String toString() {
-        return String.format("SubscribeResponse{requestId=%s, streamId=%s, streamPartition=%s",
-                getRequestId(), streamId, streamPartition);
-    }
+  @Override
+  public int hashCode() {
+    return Objects.hash(getType(), getRequestId(), streamId, streamPartition);
+  }
 
+  @Override
+  public String toString() {
+    return String.format(
+        "SubscribeResponse{requestId=%s, streamId=%s, streamPartition=%s",
+        getRequestId(), streamId, streamPartition);
+  }
 }
@@ -1,24 +1,39 @@
 package com.streamr.client.protocol.control_layer;
 
 import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.util.Objects;
 
 public class UnicastMessage extends ControlMessage {
-    public static final int TYPE = 1;
+  public static final int TYPE = 1;
 
-    private final StreamMessage msg;
+  private final StreamMessage msg;
 
-    public UnicastMessage(String requestId, StreamMessage msg) {
-        super(TYPE, requestId);
-        this.msg = msg;
-    }
+  public UnicastMessage(String requestId, StreamMessage msg) {
+    super(TYPE, requestId);
+    this.msg = msg;
+  }
 
-    public StreamMessage getStreamMessage() {
-        return msg;
-    }
+  public StreamMessage getStreamMessage() {
+    return msg;
+  }
 
-    @Override
-    public String toString() {
-        return String.format("UnicastMessage{requestId=%s, streamMessage=%s",
-                getRequestId(), msg);
-    }
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) return true;
+    if (obj == null || getClass() != obj.getClass()) return false;
+    final UnicastMessage that = (UnicastMessage) obj;
+    return getType() == that.getType()
+        && Objects.equals(getRequestId(), that.getRequestId())
+        && Objects.equals(msg, that.msg);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(msg, getType(), getRequestId());
+  }
+
+  @Override
+  public String toString() {
+    return String.format("UnicastMessage{requestId=%s, streamMessage=%s", getRequestId(), msg);
+  }
 }
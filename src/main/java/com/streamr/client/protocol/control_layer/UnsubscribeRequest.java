@@ -1,28 +1,47 @@
 package com.streamr.client.protocol.control_layer;
 
+import java.util.Objects;
+
 public class UnsubscribeRequest extends ControlMessage {
-    public static final int TYPE = 10;
-
-    private final String streamId;
-    private final int streamPartition;
-
-    public UnsubscribeRequest(String requestId, String streamId, int streamPartition) {
-        super(TYPE, requestId);
-        this.streamId = streamId;
-        this.streamPartition = streamPartition;
-    }
-
-    public String getStreamId() {
-        return streamId;
-    }
-
-    public Integer getStreamPartition() {
-        return streamPartition;
-    }
-
-    @Override
-    public String toString() {
-        return String.format("UnsubscribeRequest{requestId=%s, streamId=%s, streamPartition=%s",
-                getRequestId(), streamId, streamPartition);
-    }
+  public static final int TYPE = 10;
+
+  private final String streamId;
+  private final int streamPartition;
+
+  public UnsubscribeRequest(String requestId, String streamId, int streamPartition) {
+    super(TYPE, requestId);
+    this.streamId = streamId;
+    this.streamPartition = streamPartition;
+  }
+
+  public String getStreamId() {
+    return streamId;
+  }
+
+  public Integer getStreamPartition() {
+    return streamPartition;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) return true;
+    if (obj == null || getClass() != obj.getClass()) return false;
+    final UnsubscribeRequest that = (UnsubscribeRequest) obj;
+    return getType() == that.getType()
+        && streamPartition == that.streamPartition
+        && Objects.equals(getRequestId(), that.getRequestId())
+        && Objects.equals(streamId, that.streamId);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getType(), getRequestId(), streamId, streamPartition);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "UnsubscribeRequest{requestId=%s, streamId=%s, streamPartition=%s",
+        getRequestId(), streamId, streamPartition);
+  }
 }
@@ -5,11 +5,10 @@ import com.streamr.client.protocol.common.UnsupportedMessageException;
 import com.streamr.client.utils.Address;
 import com.streamr.client.utils.EncryptedGroupKey;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import okio.Buffer;
@@ -104,42 +103,88 @@ public final class StreamMessage implements ITimestamped {
     }
   }
 
+  /**
+   * Serialized message content. The content is kept as a read-only view onto the bytes it was
+   * created from (for example a slice of the received frame), and the String, byte[] and parsed Map
+   * forms are only materialized, once each, when they're first asked for. Messages that are
+   * filtered or dropped before their content is looked at never pay for decoding it.
+   */
   public static final class Content {
+    private static final ContentAdapter adapter = new ContentAdapter();
+
     private final Type type;
-    private final byte[] payload;
+    private final ByteBuffer payload;
 
-    private final ContentAdapter adapter = new ContentAdapter();
-    private Map<String, Object> cache = Collections.unmodifiableMap(new HashMap<>());
+    private volatile byte[] bytes;
+    private volatile String serialized;
+    private volatile Map<String, Object> cache;
 
-    private Content(final Type type, final byte[] payload) {
+    private Content(final Type type, final ByteBuffer payload, final byte[] bytes) {
       Objects.requireNonNull(type);
       this.type = type;
       Objects.requireNonNull(payload);
-      this.payload = payload;
+      this.payload = payload.asReadOnlyBuffer();
+      this.bytes = bytes;
     }
 
+    /**
+     * Returns the parsed JSON content. The map is parsed once and shared by all callers, so it is
+     * unmodifiable. Copy it to make changes.
+     */
     public Map<String, Object> toMap() {
       if (type != Type.JSON) {
         throw new RuntimeException("Unknown contentType encountered: " + type);
       }
-      try {
-        parseContentCache();
-      } catch (final IOException e) {
-        throw new RuntimeException("Failed to parse message content: " + toString());
+      Map<String, Object> result = cache;
+      if (result == null) {
+        try {
+          parseContentCache();
+        } catch (final IOException e) {
+          throw new RuntimeException("Failed to parse message content: " + toString());
+        }
+        result = cache;
       }
-      return cache;
+      return result;
     }
 
     public void parseContentCache() throws IOException {
       try (final Buffer buffer = new Buffer()) {
-        buffer.write(payload);
-        cache = adapter.fromJson(buffer);
+        buffer.write(payload.duplicate());
+        final Map<String, Object> parsed = adapter.fromJson(buffer);
+        cache = parsed == null ? null : Collections.unmodifiableMap(parsed);
       }
     }
 
+    /** Returns the size of the content in bytes without materializing it. */
+    int size() {
+      return payload.remaining();
+    }
+
+    /** Returns a read-only view of the content bytes without copying them. */
+    ByteBuffer asByteBuffer() {
+      return payload.duplicate();
+    }
+
+    /** Returns the content as UTF-8 bytes. The returned array must not be modified. */
+    byte[] toBytes() {
+      byte[] result = bytes;
+      if (result == null) {
+        final ByteBuffer view = payload.duplicate();
+        result = new byte[view.remaining()];
+        view.get(result);
+        bytes = result;
+      }
+      return result;
+    }
+
     @Override
     public String toString() {
-      return new String(payload, StandardCharsets.UTF_8);
+      String result = serialized;
+      if (result == null) {
+        result = StandardCharsets.UTF_8.decode(payload.duplicate()).toString();
+        serialized = result;
+      }
+      return result;
     }
 
     @Override
@@ -147,14 +192,12 @@ public final class StreamMessage implements ITimestamped {
       if (this == obj) return true;
       if (obj == null || getClass() != obj.getClass()) return false;
       final Content content = (Content) obj;
-      return type == content.type && Arrays.equals(payload, content.payload);
+      return type == content.type && Objects.equals(payload, content.payload);
     }
 
     @Override
     public int hashCode() {
-      int result = Objects.hash(type);
-      result = 31 * result + Arrays.hashCode(payload);
-      return result;
+      return Objects.hash(type, payload);
     }
 
     public enum Type {
@@ -180,13 +223,15 @@ public final class StreamMessage implements ITimestamped {
 
     public static class Builder {
       private Type type = Type.JSON;
-      private byte[] payload = new byte[0];
+      private ByteBuffer payload = ByteBuffer.allocate(0);
+      private byte[] bytes = new byte[0];
 
       public Builder() {}
 
       public Builder(final Content content) {
         Objects.requireNonNull(content);
         this.payload = content.payload;
+        this.bytes = content.bytes;
         this.type = content.type;
       }
 
@@ -197,12 +242,24 @@ public final class StreamMessage implements ITimestamped {
 
       public StreamMessage.Content.Builder withPayload(final byte[] payload) {
         Objects.requireNonNull(payload);
-        this.payload = payload;
+        this.payload = ByteBuffer.wrap(payload);
+        this.bytes = payload;
+        return this;
+      }
+
+      /**
+       * Uses the bytes between the buffer's position and limit as the payload without copying them.
+       * The buffer's contents must not be modified afterwards.
+       */
+      public StreamMessage.Content.Builder withPayload(final ByteBuffer payload) {
+        Objects.requireNonNull(payload);
+        this.payload = payload.slice();
+        this.bytes = null;
         return this;
       }
 
       public Content createContent() {
-        return new Content(type, payload);
+        return new Content(type, payload, bytes);
       }
     }
 
@@ -217,6 +274,13 @@ public final class StreamMessage implements ITimestamped {
             .withPayload(payload)
             .createContent();
       }
+
+      public static StreamMessage.Content withJsonAsPayload(final ByteBuffer payload) {
+        return new Content.Builder()
+            .withContentType(Type.JSON)
+            .withPayload(payload)
+            .createContent();
+      }
     }
   }
 
@@ -230,6 +294,8 @@ public final class StreamMessage implements ITimestamped {
   private final SignatureType signatureType;
   private final String signature;
 
+  private volatile String serialized;
+
   /**
    * Full constructor, creates a StreamMessage with all fields directly set to the provided values.
    */
@@ -316,7 +382,7 @@ public final class StreamMessage implements ITimestamped {
     return encryptionType;
   }
 
-  // Soon @Deprecated almost exclusively used by tests
+  // Soon @Deprecated almost exclusively used by tests. The returned map is unmodifiable
   public Map<String, Object> getParsedContent() {
     if (encryptionType != EncryptionType.NONE) {
       throw new EncryptedContentNotParsableException(encryptionType);
@@ -329,7 +395,16 @@ public final class StreamMessage implements ITimestamped {
   }
 
   public byte[] getSerializedContentAsBytes() {
-    return content.payload;
+    return content.toBytes();
+  }
+
+  /** Returns a read-only view of the serialized content without copying or decoding it. */
+  public ByteBuffer getSerializedContentAsByteBuffer() {
+    return content.asByteBuffer();
+  }
+
+  public int getSerializedContentSize() {
+    return content.size();
   }
 
   public String getGroupKeyId() {
@@ -340,8 +415,14 @@ public final class StreamMessage implements ITimestamped {
     return newGroupKey;
   }
 
+  /** Returns the serialized form of this message. It is computed once and then cached. */
   public String serialize() {
-    return StreamMessageAdapter.serialize(this);
+    String result = serialized;
+    if (result == null) {
+      result = StreamMessageAdapter.serialize(this);
+      serialized = result;
+    }
+    return result;
   }
 
   public static StreamMessage deserialize(String json) {
@@ -380,12 +461,31 @@ public final class StreamMessage implements ITimestamped {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
     final StreamMessage that = (StreamMessage) o;
-    return Objects.equals(serialize(), that.serialize());
+    return Objects.equals(messageId, that.messageId)
+        && Objects.equals(previousMessageRef, that.previousMessageRef)
+        && messageType == that.messageType
+        && encryptionType == that.encryptionType
+        && signatureType == that.signatureType
+        && Objects.equals(groupKeyId, that.groupKeyId)
+        && Objects.equals(signature, that.signature)
+        && Objects.equals(newGroupKey, that.newGroupKey)
+        && Objects.equals(content, that.content);
   }
 
+  /**
+   * Content and new group key are left out of the hash code: they are the only fields that can be
+   * large, and the message id alone is nearly always unique.
+   */
   @Override
   public int hashCode() {
-    return Objects.hash(serialize());
+    return Objects.hash(
+        messageId,
+        previousMessageRef,
+        messageType,
+        encryptionType,
+        signatureType,
+        groupKeyId,
+        signature);
   }
 
   public static final class Builder {
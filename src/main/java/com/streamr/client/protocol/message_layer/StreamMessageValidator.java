@@ -7,6 +7,7 @@ import com.streamr.client.utils.Address;
 import com.streamr.client.utils.AddressValidityUtil;
 import com.streamr.client.utils.KeyExchangeUtil;
 import com.streamr.client.utils.SigningUtil;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import org.cache2k.Cache;
@@ -14,9 +15,20 @@ import org.cache2k.Cache2kBuilder;
 
 public class StreamMessageValidator {
   private static final int STREAM_EXPIRATION = 15;
+  private static final int VERIFIED_SIGNATURES_CACHE_SIZE = 10000;
   private Cache<String, Stream> streamsPerStreamId =
       new Cache2kBuilder<String, Stream>() {}.expireAfterWrite(STREAM_EXPIRATION, TimeUnit.MINUTES)
           .build();
+  /**
+   * Signatures that have already been verified. Keyed by the hash of the signed fields rather than
+   * the message reference, so that a known signature attached to different content is still
+   * checked. Entries stay valid after {@link #clearAndClose()}.
+   */
+  private final Cache<VerifiedSignature, Boolean> verifiedSignatures =
+      new Cache2kBuilder<VerifiedSignature, Boolean>() {}.entryCapacity(
+              VERIFIED_SIGNATURES_CACHE_SIZE)
+          .build();
+
   private final Function<String, Stream> getStreamFunction;
   private final AddressValidityUtil addressValidityUtil;
   private final SignatureVerificationPolicy signatureVerificationPolicy;
@@ -30,7 +42,8 @@ public class StreamMessageValidator {
     this.signatureVerificationPolicy = signatureVerificationPolicy;
   }
 
-  private Cache<String, Stream> safeGetStreamCache() {
+  // Synchronized as messages can be validated on several threads, see StreamrClientOptions
+  private synchronized Cache<String, Stream> safeGetStreamCache() {
     if (streamsPerStreamId.isClosed()) {
       streamsPerStreamId =
           new Cache2kBuilder<String, Stream>() {}.expireAfterWrite(
@@ -110,16 +123,25 @@ public class StreamMessageValidator {
   }
 
   private void assertValidSignature(StreamMessage msg) throws ValidationException {
+    VerifiedSignature verified;
     boolean valid;
     try {
-      valid = SigningUtil.hasValidSignature(msg);
-      if (!valid) {
-        throw new ValidationException(msg, ValidationException.Reason.INVALID_SIGNATURE);
+      verified =
+          new VerifiedSignature(
+              msg.getPublisherId(), msg.getSignature(), SigningUtil.getMessageHash(msg));
+      // Duplicates arrive via resends and overlapping subscriptions, skip the EC recovery for those
+      if (verifiedSignatures.containsKey(verified)) {
+        return;
       }
+      valid = SigningUtil.hasValidSignature(msg, verified.messageHash);
     } catch (Exception e) {
       throw new ValidationException(
           msg, ValidationException.Reason.INVALID_SIGNATURE, e.getMessage());
     }
+    if (!valid) {
+      throw new ValidationException(msg, ValidationException.Reason.INVALID_SIGNATURE);
+    }
+    verifiedSignatures.put(verified, Boolean.TRUE);
   }
 
   private void assertValidSignatureAccordingToPolicy(StreamMessage msg) throws ValidationException {
@@ -251,4 +273,39 @@ public class StreamMessageValidator {
     safeGetStreamCache().clearAndClose();
     addressValidityUtil.clearAndClose();
   }
+
+  /** Cache key of a verified signature. Doesn't keep the message itself alive. */
+  private static final class VerifiedSignature {
+    private final Address publisherId;
+    private final String signature;
+    private final byte[] messageHash;
+    private final int hash;
+
+    private VerifiedSignature(Address publisherId, String signature, byte[] messageHash) {
+      this.publisherId = publisherId;
+      this.signature = signature;
+      this.messageHash = messageHash;
+      this.hash = Arrays.hashCode(messageHash);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof VerifiedSignature)) {
+        return false;
+      }
+      VerifiedSignature other = (VerifiedSignature) obj;
+      return hash == other.hash
+          && Arrays.equals(messageHash, other.messageHash)
+          && signature.equals(other.signature)
+          && publisherId.equals(other.publisherId);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
 }
@@ -7,10 +7,12 @@ import com.streamr.client.protocol.common.MessageRef;
 import com.streamr.client.protocol.common.UnsupportedMessageException;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 import com.streamr.client.utils.Address;
+import com.streamr.client.utils.BufferBudget;
 import com.streamr.client.utils.DecryptionQueues;
 import com.streamr.client.utils.EncryptionUtil;
 import com.streamr.client.utils.GroupKey;
 import com.streamr.client.utils.GroupKeyStore;
+import com.streamr.client.utils.HashedWheelTimer;
 import com.streamr.client.utils.KeyExchangeUtil;
 import com.streamr.client.utils.OrderedMsgChain;
 import com.streamr.client.utils.OrderingUtil;
@@ -20,22 +22,39 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 
 public abstract class BasicSubscription extends Subscription {
   public static final int MAX_NB_GROUP_KEY_REQUESTS = 10;
+  // Unlocked messages taken from the decryption queues at a time, so that a backlog spilled to disk
+  // isn't read back into memory all at once
+  private static final int MAX_UNLOCKED_BATCH_SIZE = 1000;
+  // Unlocked messages decrypted by one fork/join task. Smaller batches are decrypted on the calling
+  // thread
+  private static final int DECRYPT_CHUNK_SIZE = 64;
 
   protected OrderingUtil orderingUtil;
-  private final ConcurrentMap<String, Timer> pendingGroupKeyRequests = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, HashedWheelTimer.Timeout> pendingGroupKeyRequests =
+      new ConcurrentHashMap<>();
   private final ConcurrentMap<String, Integer> nbGroupKeyRequestsCalls = new ConcurrentHashMap<>();
+  // Held while handing messages to the handler. The messages of the subscription are handled on
+  // several threads (connection reader threads, gap fill workers), so this keeps messages unlocked
+  // by new keys from interleaving with newly received ones
+  private final Object deliveryLock = new Object();
+  // Guarded by deliveryLock
   private final HashSet<String> alreadyFailedToDecrypt = new HashSet<>();
+  // Messages carrying a new group key, whose keys are added once deliveryLock is released. Adding a
+  // key calls onNewKeysAdded of every subscription of the stream, and their delivery locks must not
+  // be taken while holding this one. Guarded by deliveryLock
+  private final List<StreamMessage> newKeyMessages = new ArrayList<>();
 
   protected final DecryptionQueues decryptionQueues;
+  private BufferBudget bufferBudget = BufferBudget.UNLIMITED;
   private final GroupKeyRequestFunction groupKeyRequestFunction;
 
   public BasicSubscription(
@@ -107,24 +126,39 @@ public abstract class BasicSubscription extends Subscription {
             propagationTimeout,
             resendTimeout,
             skipGapsOnFullQueue);
+    orderingUtil.setBufferBudget(bufferBudget);
+  }
+
+  @Override
+  public void setBufferBudget(BufferBudget bufferBudget) {
+    this.bufferBudget = bufferBudget;
+    orderingUtil.setBufferBudget(bufferBudget);
+    decryptionQueues.setBufferBudget(bufferBudget);
+  }
+
+  public BufferBudget getBufferBudget() {
+    return bufferBudget;
+  }
+
+  @Override
+  public void releaseBuffers() {
+    // Not holding the lock of this while clearing, since a chain calls back here with its own lock
+    orderingUtil.clearQueues();
+    synchronized (this) {
+      decryptionQueues.clear();
+    }
   }
 
   public OrderedMsgChain.GapHandlerFunction getGapHandler() {
     return orderingUtil.getGapHandler();
   }
 
-  protected void requestGroupKeyAndQueueMessage(StreamMessage msgToQueue) {
-    Timer t =
-        new Timer(
-            String.format(
-                "GroupKeyTimer-%s-%s",
-                msgToQueue.getStreamId(), msgToQueue.getMessageRef().toString()),
-            true);
+  protected synchronized void requestGroupKeyAndQueueMessage(StreamMessage msgToQueue) {
     String groupKeyId = msgToQueue.getGroupKeyId();
     nbGroupKeyRequestsCalls.put(groupKeyId, 0);
 
-    TimerTask request =
-        new TimerTask() {
+    Runnable request =
+        new Runnable() {
           @Override
           public void run() {
             synchronized (BasicSubscription.this) {
@@ -155,18 +189,37 @@ public abstract class BasicSubscription extends Subscription {
           }
         };
 
-    pendingGroupKeyRequests.put(groupKeyId, t);
-    decryptionQueues.add(msgToQueue);
-    t.schedule(request, 0, propagationTimeout);
+    // The requests run on a timer worker thread, since sending one may have to connect first. The
+    // first one runs once this method has returned and released the lock, so the request is
+    // already pending by then
+    HashedWheelTimer.Timeout previous =
+        pendingGroupKeyRequests.put(
+            groupKeyId,
+            HashedWheelTimer.getDefault()
+                .schedule(request, 0, propagationTimeout, HashedWheelTimer.getDefaultWorkers()));
+    if (previous != null) {
+      previous.cancel();
+    }
+    queueForDecryption(msgToQueue);
+  }
+
+  private synchronized void queueForDecryption(StreamMessage msg) {
+    if (!decryptionQueues.add(msg)) {
+      getLogger()
+          .warn(
+              "Buffer budget of {} bytes is used up. Dropping message {} of stream {} waiting for group key {}.",
+              bufferBudget.getMaxBytes(),
+              msg.getMessageRef(),
+              msg.getStreamId(),
+              msg.getGroupKeyId());
+      handler.onUnableToDecrypt(UnableToDecryptException.create(msg.getSerializedContent()));
+    }
   }
 
   private synchronized void cancelGroupKeyRequest(String groupKeyId) {
     if (pendingGroupKeyRequests.containsKey(groupKeyId)) {
       getLogger().trace("Pending group key request canceled for group key {}", groupKeyId);
-      Timer timer = pendingGroupKeyRequests.get(groupKeyId);
-      timer.cancel();
-      timer.purge();
-      pendingGroupKeyRequests.remove(groupKeyId);
+      pendingGroupKeyRequests.remove(groupKeyId).cancel();
     }
   }
 
@@ -174,84 +227,75 @@ public abstract class BasicSubscription extends Subscription {
     return orderingUtil.getChains();
   }
 
-  private static final class DecryptResult {
-    private final boolean status;
-    private final StreamMessage message;
-
-    DecryptResult(final boolean status, final StreamMessage message) {
-      this.status = status;
-      this.message = message;
+  /**
+   * Returns the decrypted message, {@code msg} itself if it doesn't need decrypting, or null if the
+   * key isn't in the key store or decryption fails.
+   */
+  private StreamMessage decrypt(StreamMessage msg) {
+    if (!needsDecryption(msg)) {
+      return msg;
     }
+    return decrypt(msg, keyStore.get(msg.getStreamId(), msg.getGroupKeyId()));
   }
 
-  private DecryptResult tryDecrypt(StreamMessage msg) throws UnableToDecryptException {
-    // Key exchange messages are handled in a special way in KeyExchangeUtil
-    if (msg.getMessageType() != StreamMessage.MessageType.STREAM_MESSAGE) {
-      return new DecryptResult(true, msg);
+  private static StreamMessage decrypt(StreamMessage msg, GroupKey groupKey) {
+    if (groupKey == null) {
+      return null;
     }
-
-    // Nothing needs to be done here if the message is not encrypted
-    if (msg.getEncryptionType() == StreamMessage.EncryptionType.NONE) {
-      return new DecryptResult(true, msg);
-    }
-
     try {
-      GroupKey groupKey = keyStore.get(msg.getStreamId(), msg.getGroupKeyId());
-      if (groupKey == null) {
-        throw UnableToDecryptException.create(msg.getSerializedContent());
-      }
-
-      msg = EncryptionUtil.decryptStreamMessage(msg, groupKey);
-      alreadyFailedToDecrypt.remove(msg.getGroupKeyId());
-      return new DecryptResult(true, msg);
+      return EncryptionUtil.decryptStreamMessage(msg, groupKey);
     } catch (UnableToDecryptException e) {
-      if (alreadyFailedToDecrypt.contains(msg.getGroupKeyId())) {
-        // even after receiving the latest group key, we still cannot decrypt
-        throw e;
-      } else {
-        // Fail next time we come here
-        alreadyFailedToDecrypt.add(msg.getGroupKeyId());
-      }
-      return new DecryptResult(false, msg);
+      return null;
     }
   }
 
+  private static boolean needsDecryption(StreamMessage msg) {
+    // Key exchange messages are handled in a special way in KeyExchangeUtil
+    return msg.getMessageType() == StreamMessage.MessageType.STREAM_MESSAGE
+        && msg.getEncryptionType() != StreamMessage.EncryptionType.NONE;
+  }
+
   private void handleInOrder(StreamMessage msg) {
-    // Is there already a pending request for the key this message was encrypted with?
-    if (msg.getGroupKeyId() != null && pendingGroupKeyRequests.containsKey(msg.getGroupKeyId())) {
-      decryptionQueues.add(msg);
-    } else {
-      // If not, handle normally
-      decryptAndHandle(msg);
+    synchronized (deliveryLock) {
+      // Is there already a pending request for the key this message was encrypted with?
+      if (msg.getGroupKeyId() != null && pendingGroupKeyRequests.containsKey(msg.getGroupKeyId())) {
+        queueForDecryption(msg);
+      } else {
+        // If not, handle normally
+        decryptAndHandle(msg);
+      }
     }
+    addNewKeys();
   }
 
   private void decryptAndHandle(final StreamMessage msg) {
-    try {
-      DecryptResult result = tryDecrypt(msg);
-      if (result.status) {
-        handler.onMessage(this, result.message);
-
-        // Handle new key if the message contains one
-        if (msg.getNewGroupKey() != null) {
-          keyExchangeUtil.handleNewAESEncryptedKeys(
-              Collections.singletonList(msg.getNewGroupKey()),
+    handleDecrypted(msg, decrypt(msg));
+  }
+
+  /** @param decrypted the result of {@link #decrypt(StreamMessage)} for {@code msg} */
+  private void handleDecrypted(final StreamMessage msg, final StreamMessage decrypted) {
+    if (decrypted != null) {
+      if (decrypted != msg) {
+        alreadyFailedToDecrypt.remove(msg.getGroupKeyId());
+      }
+      handler.onMessage(this, decrypted);
+
+      // Handle new key if the message contains one
+      if (msg.getNewGroupKey() != null) {
+        newKeyMessages.add(msg);
+      }
+    } else if (alreadyFailedToDecrypt.add(msg.getGroupKeyId())) {
+      // If not successfully decrypted, request group key and queue the message. Fail next time
+      // we come here
+      getLogger()
+          .debug(
+              "Failed to decrypt stream {} publisher {} ref {}, requesting group key {} and queuing message",
               msg.getStreamId(),
               msg.getPublisherId(),
+              msg.getMessageRef(),
               msg.getGroupKeyId());
-        }
-      } else {
-        // If not successfully decrypted, request group key and queue the message
-        getLogger()
-            .debug(
-                "Failed to decrypt stream {} publisher {} ref {}, requesting group key {} and queuing message",
-                msg.getStreamId(),
-                msg.getPublisherId(),
-                msg.getMessageRef(),
-                msg.getGroupKeyId());
-        requestGroupKeyAndQueueMessage(msg);
-      }
-    } catch (final UnableToDecryptException e) {
+      requestGroupKeyAndQueueMessage(msg);
+    } else {
       // failed to decrypt for the second time (after receiving the decryption key(s))
       getLogger()
           .error(
@@ -259,28 +303,157 @@ public abstract class BasicSubscription extends Subscription {
               msg.getMessageRef(),
               msg.getPublisherId(),
               msg.getStreamId());
-      handler.onUnableToDecrypt(e);
+      handler.onUnableToDecrypt(UnableToDecryptException.create(msg.getSerializedContent()));
     }
   }
 
+  /**
+   * Handles the messages that were waiting for the keys. Can be called from any thread, for example
+   * the reader thread of the connection that received the keys.
+   */
   @Override
   public void onNewKeysAdded(Address publisherId, Collection<GroupKey> groupKeys) {
-    // Cancel any pending request timers for all the received keys
-    groupKeys.forEach(key -> cancelGroupKeyRequest(key.getGroupKeyId()));
-
     Set<String> groupKeyIds =
         groupKeys.stream().map(GroupKey::getGroupKeyId).collect(Collectors.toSet());
-    Collection<StreamMessage> unlocked =
-        decryptionQueues.drainUnlockedMessages(publisherId, groupKeyIds);
+    int unlockedCount = 0;
+    // Messages received meanwhile are handled after the unlocked ones, since they are no longer
+    // queued once the requests are cancelled
+    synchronized (deliveryLock) {
+      // Cancel any pending request timers for all the received keys
+      groupKeys.forEach(key -> cancelGroupKeyRequest(key.getGroupKeyId()));
+
+      List<StreamMessage> unlocked;
+      while (!(unlocked = drainUnlockedMessages(publisherId, groupKeyIds)).isEmpty()) {
+        unlockedCount += unlocked.size();
+        handleUnlocked(unlocked);
+      }
+    }
+    addNewKeys();
 
     getLogger()
         .trace(
             "Received keys from publisher {}: {}. Unlocked {} queued messages.",
             publisherId,
             groupKeys,
-            unlocked.size());
+            unlockedCount);
+  }
+
+  /**
+   * Decrypts the unlocked messages in parallel and then hands them to the handler on this thread in
+   * the order they were drained, which keeps each msgChain in order. The keys are looked up on this
+   * thread, only the decryption itself is spread over the common fork/join pool.
+   */
+  private void handleUnlocked(List<StreamMessage> unlocked) {
+    StreamMessage[] decrypted = new StreamMessage[unlocked.size()];
+    GroupKey[] groupKeys = new GroupKey[unlocked.size()];
+    for (int i = 0; i < groupKeys.length; i++) {
+      StreamMessage msg = unlocked.get(i);
+      if (needsDecryption(msg)) {
+        groupKeys[i] = keyStore.get(msg.getStreamId(), msg.getGroupKeyId());
+      } else {
+        decrypted[i] = msg;
+      }
+    }
+
+    DecryptTask task = new DecryptTask(unlocked, groupKeys, decrypted, 0, unlocked.size());
+    if (unlocked.size() > DECRYPT_CHUNK_SIZE) {
+      ForkJoinPool.commonPool().invoke(task);
+    } else {
+      task.compute();
+    }
+
+    for (int i = 0; i < decrypted.length; i++) {
+      handleDecrypted(unlocked.get(i), decrypted[i]);
+    }
+  }
+
+  /**
+   * Decrypts {@code messages[from, to)} with the key at the same index into {@code results},
+   * splitting the range into chunks of {@link #DECRYPT_CHUNK_SIZE}. Messages without a key are
+   * skipped. Runs of messages with the same key are decrypted as one batch.
+   */
+  private static final class DecryptTask extends RecursiveAction {
+    private final List<StreamMessage> messages;
+    private final GroupKey[] groupKeys;
+    private final StreamMessage[] results;
+    private final int from;
+    private final int to;
+
+    private DecryptTask(
+        List<StreamMessage> messages,
+        GroupKey[] groupKeys,
+        StreamMessage[] results,
+        int from,
+        int to) {
+      this.messages = messages;
+      this.groupKeys = groupKeys;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > DECRYPT_CHUNK_SIZE) {
+        int middle = (from + to) >>> 1;
+        invokeAll(
+            new DecryptTask(messages, groupKeys, results, from, middle),
+            new DecryptTask(messages, groupKeys, results, middle, to));
+        return;
+      }
+      int start = from;
+      while (start < to) {
+        if (groupKeys[start] == null) {
+          start++;
+          continue;
+        }
+        int end = start + 1;
+        while (end < to && groupKeys[start].equals(groupKeys[end])) {
+          end++;
+        }
+        decryptBatch(start, end);
+        start = end;
+      }
+    }
+
+    private void decryptBatch(int start, int end) {
+      try {
+        List<StreamMessage> batch =
+            EncryptionUtil.decryptStreamMessages(messages.subList(start, end), groupKeys[start]);
+        for (int i = start; i < end; i++) {
+          results[i] = batch.get(i - start);
+        }
+      } catch (UnableToDecryptException e) {
+        // Find out which of the messages fail
+        for (int i = start; i < end; i++) {
+          results[i] = decrypt(messages.get(i), groupKeys[i]);
+        }
+      }
+    }
+  }
+
+  private void addNewKeys() {
+    List<StreamMessage> msgs;
+    synchronized (deliveryLock) {
+      if (newKeyMessages.isEmpty()) {
+        return;
+      }
+      msgs = new ArrayList<>(newKeyMessages);
+      newKeyMessages.clear();
+    }
+    for (StreamMessage msg : msgs) {
+      keyExchangeUtil.handleNewAESEncryptedKeys(
+          Collections.singletonList(msg.getNewGroupKey()),
+          msg.getStreamId(),
+          msg.getPublisherId(),
+          msg.getGroupKeyId());
+    }
+  }
 
-    unlocked.forEach(this::decryptAndHandle);
+  private synchronized List<StreamMessage> drainUnlockedMessages(
+      Address publisherId, Set<String> groupKeyIds) {
+    return decryptionQueues.drainUnlockedMessages(
+        publisherId, groupKeyIds, MAX_UNLOCKED_BATCH_SIZE);
   }
 
   public abstract Logger getLogger();
@@ -65,6 +65,7 @@ public class CombinedSubscription extends Subscription {
                     skipGapsOnFullQueue);
 
             realTime.setGapHandler(currentSub.getGapHandler());
+            realTime.setBufferBudget(currentSub.getBufferBudget());
             // set the last received references to the last references of the resent messages
             realTime.setLastMessageRefs(currentSub.getChains());
             // handle the real time messages received during the initial resend
@@ -72,6 +73,7 @@ public class CombinedSubscription extends Subscription {
               StreamMessage msg = queuedRealtimeMessages.poll();
               realTime.handleRealTimeMessage(msg);
             }
+            currentSub.releaseBuffers();
             currentSub = realTime;
           }
 
@@ -101,6 +103,16 @@ public class CombinedSubscription extends Subscription {
     currentSub.setGapHandler(gapHandler);
   }
 
+  @Override
+  public void setBufferBudget(BufferBudget bufferBudget) {
+    currentSub.setBufferBudget(bufferBudget);
+  }
+
+  @Override
+  public void releaseBuffers() {
+    currentSub.releaseBuffers();
+  }
+
   @Override
   public void onNewKeysAdded(Address publisherId, Collection<GroupKey> groupKeys) {
     currentSub.onNewKeysAdded(publisherId, groupKeys);
@@ -77,6 +77,23 @@ public abstract class Subscription {
     return state.equals(State.SUBSCRIBED);
   }
 
+  /**
+   * Number of messages waiting to be passed to the handler. Always 0 unless messages are
+   * dispatched through a {@link SubscriptionMailbox}.
+   */
+  public int getQueuedMessages() {
+    return handler instanceof SubscriptionMailbox
+        ? ((SubscriptionMailbox) handler).getQueuedMessages()
+        : 0;
+  }
+
+  /** Number of messages dropped because the {@link SubscriptionMailbox} was full. */
+  public long getDroppedMessages() {
+    return handler instanceof SubscriptionMailbox
+        ? ((SubscriptionMailbox) handler).getDroppedMessages()
+        : 0;
+  }
+
   public abstract boolean isResending();
 
   public abstract void setResending(boolean resending);
@@ -97,6 +114,15 @@ public abstract class Subscription {
 
   public abstract void setGapHandler(OrderedMsgChain.GapHandlerFunction gapHandler);
 
+  /**
+   * Sets the byte budget shared with the other subscriptions of the client for messages waiting
+   * for a gap to be filled or for a group key. Must be called after {@link #setGapHandler}.
+   */
+  public abstract void setBufferBudget(BufferBudget bufferBudget);
+
+  /** Drops the buffered messages, returning their bytes to the budget. */
+  public abstract void releaseBuffers();
+
   /**
    * Method to be called whenever the client has new encryption keys available in the GroupKeyStore.
    * The Subscriptions should check the messages in its encryption queue and attempt to decrypt
@@ -0,0 +1,203 @@
+package com.streamr.client.subs;
+
+import com.streamr.client.MessageHandler;
+import com.streamr.client.exceptions.UnableToDecryptException;
+import com.streamr.client.options.BackpressurePolicy;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passes the calls to a {@link MessageHandler} on to an executor, so that a slow handler doesn't
+ * hold up the thread that received the messages. Calls are queued and made one at a time in the
+ * order they were queued, so the handler sees the same sequence of calls as without a mailbox.
+ *
+ * <p>At most {@code capacity} messages are queued, after which the {@link BackpressurePolicy}
+ * applies. {@link MessageHandler#done} and {@link MessageHandler#onUnableToDecrypt} calls are
+ * never dropped.
+ */
+public class SubscriptionMailbox implements MessageHandler {
+  private static final Logger log = LoggerFactory.getLogger(SubscriptionMailbox.class);
+  // Calls made per executor task, after which the task is resubmitted to let other mailboxes run
+  static final int MAX_BATCH_SIZE = 64;
+
+  private final MessageHandler handler;
+  private final Executor executor;
+  private final int capacity;
+  private final BackpressurePolicy policy;
+  // Guarded by this
+  private final ArrayDeque<Call> calls = new ArrayDeque<>();
+  private int queuedMessages = 0;
+  private int maxQueuedMessages = 0;
+  private long droppedMessages = 0;
+  private boolean scheduled = false;
+
+  private static final class Call {
+    private final Subscription sub;
+    private final StreamMessage message;
+    private final UnableToDecryptException unableToDecrypt;
+
+    private Call(
+        final Subscription sub,
+        final StreamMessage message,
+        final UnableToDecryptException unableToDecrypt) {
+      this.sub = sub;
+      this.message = message;
+      this.unableToDecrypt = unableToDecrypt;
+    }
+
+    private boolean isMessage() {
+      return message != null;
+    }
+
+    private void run(final MessageHandler handler) {
+      if (message != null) {
+        handler.onMessage(sub, message);
+      } else if (unableToDecrypt != null) {
+        handler.onUnableToDecrypt(unableToDecrypt);
+      } else {
+        handler.done(sub);
+      }
+    }
+  }
+
+  public SubscriptionMailbox(
+      final MessageHandler handler,
+      final Executor executor,
+      final int capacity,
+      final BackpressurePolicy policy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.handler = handler;
+    this.executor = executor;
+    this.capacity = capacity;
+    this.policy = policy;
+  }
+
+  @Override
+  public void onMessage(final Subscription sub, final StreamMessage message) {
+    final Call call = new Call(sub, message, null);
+    synchronized (this) {
+      while (queuedMessages >= capacity) {
+        if (policy == BackpressurePolicy.FAIL) {
+          droppedMessages++;
+          return;
+        } else if (policy == BackpressurePolicy.DROP_OLDEST) {
+          dropOldestMessage();
+        } else {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedMessages++;
+            return;
+          }
+        }
+      }
+      queuedMessages++;
+      maxQueuedMessages = Math.max(maxQueuedMessages, queuedMessages);
+      enqueue(call);
+    }
+  }
+
+  @Override
+  public void done(final Subscription sub) {
+    synchronized (this) {
+      enqueue(new Call(sub, null, null));
+    }
+  }
+
+  @Override
+  public void onUnableToDecrypt(final UnableToDecryptException e) {
+    synchronized (this) {
+      enqueue(new Call(null, null, e));
+    }
+  }
+
+  /** Number of messages waiting to be passed to the handler. */
+  public synchronized int getQueuedMessages() {
+    return queuedMessages;
+  }
+
+  /** Highest number of messages that have been waiting at the same time. */
+  public synchronized int getMaxQueuedMessages() {
+    return maxQueuedMessages;
+  }
+
+  /** Number of messages dropped because the mailbox was full. */
+  public synchronized long getDroppedMessages() {
+    return droppedMessages;
+  }
+
+  private void enqueue(final Call call) {
+    calls.add(call);
+    if (!scheduled) {
+      scheduled = true;
+      schedule();
+    }
+  }
+
+  // Called while holding this
+  private void schedule() {
+    try {
+      executor.execute(this::drain);
+    } catch (RejectedExecutionException e) {
+      // Nothing would ever drain the queued calls, so drop them and wake up blocked producers
+      log.error("Dispatch executor rejected the mailbox, dropping {} queued calls", calls.size());
+      droppedMessages += queuedMessages;
+      queuedMessages = 0;
+      calls.clear();
+      scheduled = false;
+      notifyAll();
+    }
+  }
+
+  private void dropOldestMessage() {
+    final Iterator<Call> it = calls.iterator();
+    while (it.hasNext()) {
+      if (it.next().isMessage()) {
+        it.remove();
+        queuedMessages--;
+        droppedMessages++;
+        return;
+      }
+    }
+  }
+
+  private void drain() {
+    try {
+      for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+        final Call call;
+        synchronized (this) {
+          call = calls.poll();
+          if (call == null) {
+            return;
+          }
+          if (call.isMessage()) {
+            queuedMessages--;
+            notifyAll();
+          }
+        }
+        try {
+          call.run(handler);
+        } catch (RuntimeException e) {
+          log.error("Message handler failed", e);
+        }
+      }
+    } finally {
+      // Also when the handler throws an Error, so that the calls after it are still made
+      synchronized (this) {
+        if (calls.isEmpty()) {
+          scheduled = false;
+        } else {
+          schedule();
+        }
+      }
+    }
+  }
+}
@@ -30,7 +30,8 @@ public class Address {
 
   @Override
   public final int hashCode() {
-    return Objects.hash(value);
+    // Same as Objects.hash(value), without the varargs array
+    return 31 + Objects.hashCode(value);
   }
 
   @Override
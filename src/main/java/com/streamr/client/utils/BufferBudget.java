@@ -0,0 +1,133 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.options.BufferOverflowPolicy;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte budget shared by the reorder buffers ({@link OrderedMsgChain}) and {@link
+ * DecryptionQueues} of all subscriptions of a client. Buffers reserve the estimated size of each
+ * message they hold and release it when the message leaves the buffer.
+ *
+ * <p>With {@link BufferOverflowPolicy#SPILL_TO_DISK}, messages that don't fit are written to a
+ * {@link SpillFile} shared by the buffers, up to maxSpilledBytes.
+ */
+public class BufferBudget {
+  // Rough heap footprint of a StreamMessage besides its content and signature
+  static final int MESSAGE_OVERHEAD_BYTES = 512;
+
+  public static final long DEFAULT_MAX_SPILLED_BYTES = 1024L * 1024 * 1024;
+
+  /** A budget that never runs out. */
+  public static final BufferBudget UNLIMITED =
+      new BufferBudget(Long.MAX_VALUE, BufferOverflowPolicy.SKIP_GAP);
+
+  private final long maxBytes;
+  private final BufferOverflowPolicy policy;
+  private final Path spillDirectory;
+  private final long maxSpilledBytes;
+  private final AtomicLong usedBytes = new AtomicLong();
+  private SpillFile spillFile = null;
+
+  /**
+   * @param spillDirectory where spilled messages are written, or null for the temp directory
+   * @param maxSpilledBytes size of the spill file at most, messages that don't fit are not spilled
+   */
+  public BufferBudget(
+      final long maxBytes,
+      final BufferOverflowPolicy policy,
+      final Path spillDirectory,
+      final long maxSpilledBytes) {
+    if (maxBytes < 1) {
+      throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+    }
+    if (maxSpilledBytes < 1) {
+      throw new IllegalArgumentException("maxSpilledBytes must be positive: " + maxSpilledBytes);
+    }
+    this.maxBytes = maxBytes;
+    this.policy = policy;
+    this.spillDirectory =
+        spillDirectory != null
+            ? spillDirectory
+            : Paths.get(System.getProperty("java.io.tmpdir"), "streamr-spill");
+    this.maxSpilledBytes = maxSpilledBytes;
+  }
+
+  public BufferBudget(
+      final long maxBytes, final BufferOverflowPolicy policy, final Path spillDirectory) {
+    this(maxBytes, policy, spillDirectory, DEFAULT_MAX_SPILLED_BYTES);
+  }
+
+  public BufferBudget(final long maxBytes, final BufferOverflowPolicy policy) {
+    this(maxBytes, policy, null);
+  }
+
+  /** Estimated heap size of a message. Always the same for the same message. */
+  public static long sizeOf(final StreamMessage msg) {
+    long size = MESSAGE_OVERHEAD_BYTES + msg.getSerializedContentSize();
+    if (msg.getSignature() != null) {
+      size += msg.getSignature().length();
+    }
+    return size;
+  }
+
+  /**
+   * Reserves room for the message.
+   *
+   * @return the number of bytes reserved, or -1 if the budget doesn't have room for the message
+   */
+  public long tryReserve(final StreamMessage msg) {
+    final long size = sizeOf(msg);
+    if (maxBytes == Long.MAX_VALUE) {
+      return size;
+    }
+    while (true) {
+      final long used = usedBytes.get();
+      if (used + size > maxBytes) {
+        return -1;
+      }
+      if (usedBytes.compareAndSet(used, used + size)) {
+        return size;
+      }
+    }
+  }
+
+  /** Releases bytes reserved with {@link #tryReserve}. */
+  public void release(final long bytes) {
+    if (maxBytes != Long.MAX_VALUE) {
+      usedBytes.addAndGet(-bytes);
+    }
+  }
+
+  public long getUsedBytes() {
+    return usedBytes.get();
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public BufferOverflowPolicy getPolicy() {
+    return policy;
+  }
+
+  /** Returns the spill file, creating it the first time. Its segments are created on demand. */
+  synchronized SpillFile getSpillFile() {
+    if (spillFile == null) {
+      spillFile = new SpillFile(spillDirectory, SpillFile.DEFAULT_SEGMENT_SIZE, maxSpilledBytes);
+    }
+    return spillFile;
+  }
+
+  /**
+   * Deletes the segments of the spill file. Messages spilled before can no longer be read, so the
+   * buffers should be cleared first. Spilling again afterwards creates new segments.
+   */
+  public synchronized void close() {
+    if (spillFile != null) {
+      spillFile.close();
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.exceptions.KeyAlreadyExistsException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A GroupKeyStore that can be read and written from several threads. Reads don't take locks, and
+ * writes only lock the stream they add a key to.
+ *
+ * <p>By default all keys are kept. To keep publishers that rekey often from growing the store
+ * forever, the keys of a stream can be bounded: when a key is added, keys that haven't been looked
+ * up for longer than the TTL are removed, and then the least recently looked up keys until at most
+ * maxKeysPerStream remain. The current key of a stream is never removed. Removed keys can no longer
+ * be used to decrypt old messages or to answer key requests for them.
+ */
+public class ConcurrentGroupKeyStore extends GroupKeyStore {
+  private static final Logger log = LoggerFactory.getLogger(ConcurrentGroupKeyStore.class);
+
+  // No limit unless one is asked for
+  public static final int DEFAULT_MAX_KEYS_PER_STREAM = Integer.MAX_VALUE;
+  // Look-up times closer than this to the recorded one are not written, to keep reads cheap
+  private static final long ACCESS_TIME_GRANULARITY_MILLIS = 1000;
+
+  private final ConcurrentMap<String, StreamKeys> keysByStreamId = new ConcurrentHashMap<>();
+  private final Set<String> containedGroupKeyIds = ConcurrentHashMap.newKeySet();
+  private final AtomicLong nextSequence = new AtomicLong();
+  private final int maxKeysPerStream;
+  private final long keyTtlMillis;
+  private final Clock clock;
+
+  private static final class Entry {
+    private final GroupKey key;
+    // Order of adding, breaks ties between keys looked up at the same time
+    private final long sequence;
+    private volatile long lastAccess;
+
+    private Entry(GroupKey key, long sequence, long lastAccess) {
+      this.key = key;
+      this.sequence = sequence;
+      this.lastAccess = lastAccess;
+    }
+
+    private boolean isLessRecentThan(Entry other) {
+      return lastAccess < other.lastAccess
+          || (lastAccess == other.lastAccess && sequence < other.sequence);
+    }
+  }
+
+  /** Keys of one stream. Written while holding its lock, read without it. */
+  private static final class StreamKeys {
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public String toString() {
+      return entries.keySet().toString();
+    }
+  }
+
+  /**
+   * @param maxKeysPerStream keys kept per stream, at least 1
+   * @param keyTtl how long a key that isn't the current key is kept after it was last looked up, or
+   *     null to keep keys until maxKeysPerStream is reached
+   */
+  public ConcurrentGroupKeyStore(int maxKeysPerStream, Duration keyTtl, Clock clock) {
+    if (maxKeysPerStream < 1) {
+      throw new IllegalArgumentException(
+          "maxKeysPerStream must be at least 1, was " + maxKeysPerStream);
+    }
+    if (keyTtl != null && keyTtl.isNegative()) {
+      throw new IllegalArgumentException("keyTtl must not be negative, was " + keyTtl);
+    }
+    this.maxKeysPerStream = maxKeysPerStream;
+    this.keyTtlMillis = keyTtl == null ? Long.MAX_VALUE : keyTtl.toMillis();
+    this.clock = clock;
+  }
+
+  public ConcurrentGroupKeyStore(int maxKeysPerStream, Duration keyTtl) {
+    this(maxKeysPerStream, keyTtl, Clock.systemUTC());
+  }
+
+  /** A store that keeps all keys. */
+  public ConcurrentGroupKeyStore() {
+    this(DEFAULT_MAX_KEYS_PER_STREAM, null);
+  }
+
+  @Override
+  public GroupKey get(String streamId, String groupKeyId) {
+    StreamKeys keys = keysByStreamId.get(streamId);
+    if (keys == null) {
+      return null;
+    }
+    Entry entry = keys.entries.get(groupKeyId);
+    if (entry == null) {
+      return null;
+    }
+    long now = clock.millis();
+    if (now - entry.lastAccess > ACCESS_TIME_GRANULARITY_MILLIS) {
+      entry.lastAccess = now;
+    }
+    return entry.key;
+  }
+
+  @Override
+  public boolean contains(String groupKeyId) {
+    return containedGroupKeyIds.contains(groupKeyId);
+  }
+
+  /**
+   * Stores the key and makes it the current key of the stream while holding the lock of the
+   * stream, so that concurrent adds leave the last stored key as the current key.
+   */
+  @Override
+  public void add(String streamId, GroupKey key) throws KeyAlreadyExistsException {
+    log.trace("Adding keyId {} to stream {}", key.getGroupKeyId(), streamId);
+    storeKey(streamId, key);
+  }
+
+  @Override
+  protected void storeKey(String streamId, GroupKey key) throws KeyAlreadyExistsException {
+    // Claims the id atomically, so the same key can't be added twice from different threads
+    if (!containedGroupKeyIds.add(key.getGroupKeyId())) {
+      throw new KeyAlreadyExistsException(key);
+    }
+    StreamKeys keys = keysByStreamId.computeIfAbsent(streamId, id -> new StreamKeys());
+    synchronized (keys) {
+      long now = clock.millis();
+      keys.entries.put(key.getGroupKeyId(), new Entry(key, nextSequence.getAndIncrement(), now));
+      evict(streamId, keys, key, now);
+      setCurrentKey(streamId, key);
+      keyAdded(streamId, key);
+    }
+  }
+
+  /**
+   * Called after key has been stored and made the current key, while still holding the lock of the
+   * stream.
+   */
+  protected void keyAdded(String streamId, GroupKey key) {}
+
+  /** Number of keys kept for the stream. */
+  public int size(String streamId) {
+    StreamKeys keys = keysByStreamId.get(streamId);
+    return keys == null ? 0 : keys.entries.size();
+  }
+
+  // Called while holding the lock of keys. newKey becomes the current key right after
+  private void evict(String streamId, StreamKeys keys, GroupKey newKey, long now) {
+    GroupKey currentKey = getCurrentKey(streamId);
+    if (keyTtlMillis != Long.MAX_VALUE) {
+      Iterator<Entry> it = keys.entries.values().iterator();
+      while (it.hasNext()) {
+        Entry entry = it.next();
+        if (entry.key != newKey
+            && entry.key != currentKey
+            && now - entry.lastAccess > keyTtlMillis) {
+          it.remove();
+          removed(streamId, entry);
+        }
+      }
+    }
+    while (keys.entries.size() > maxKeysPerStream) {
+      Entry leastRecent = null;
+      for (Entry entry : keys.entries.values()) {
+        if (entry.key != newKey && (leastRecent == null || entry.isLessRecentThan(leastRecent))) {
+          leastRecent = entry;
+        }
+      }
+      if (leastRecent == null) {
+        break;
+      }
+      keys.entries.remove(leastRecent.key.getGroupKeyId());
+      removed(streamId, leastRecent);
+    }
+  }
+
+  private void removed(String streamId, Entry entry) {
+    containedGroupKeyIds.remove(entry.key.getGroupKeyId());
+    log.trace(
+        "Removed keyId {} of stream {} from the key store", entry.key.getGroupKeyId(), streamId);
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentGroupKeyStore: " + keysByStreamId;
+  }
+}
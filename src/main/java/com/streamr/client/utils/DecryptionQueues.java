@@ -1,88 +1,227 @@
 package com.streamr.client.utils;
 
+import com.streamr.client.options.BufferOverflowPolicy;
 import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.io.UncheckedIOException;
+import java.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.*;
-
 /**
- * Utility class for queuing encrypted messages while waiting for their
- * decryption keys to be received. The messages are queued by [publisherId, msgChainId] tuples.
+ * Utility class for queuing encrypted messages while waiting for their decryption keys to be
+ * received. The messages are queued by [publisherId, msgChainId] tuples.
  */
 public class DecryptionQueues {
-    private static final Logger log = LoggerFactory.getLogger(DecryptionQueues.class);
+  private static final Logger log = LoggerFactory.getLogger(DecryptionQueues.class);
+
+  private final Map<Address, Map<String, ChainQueue>> msgChainsByPublisher = new HashMap<>();
+  private final String streamId;
+  private final int partition;
+  private BufferBudget bufferBudget = BufferBudget.UNLIMITED;
+
+  /**
+   * Queue of one message chain. Messages that don't fit in the buffer budget are spilled to disk,
+   * after which later messages are spilled too until the spilled ones have been drained, so the
+   * queue stays in order.
+   */
+  private final class ChainQueue {
+    private final ArrayDeque<StreamMessage> inMemory = new ArrayDeque<>();
+    // Positions in the spill file
+    private final ArrayDeque<Long> spilled = new ArrayDeque<>();
+    // The head of spilled once it has been read from disk
+    private StreamMessage spilledHead = null;
+
+    private boolean offer(StreamMessage msg) {
+      if (spilled.isEmpty() && bufferBudget.tryReserve(msg) >= 0) {
+        inMemory.offer(msg);
+        return true;
+      }
+      if (bufferBudget.getPolicy() != BufferOverflowPolicy.SPILL_TO_DISK) {
+        return false;
+      }
+      try {
+        spilled.offer(bufferBudget.getSpillFile().append(msg));
+        return true;
+      } catch (UncheckedIOException e) {
+        log.error("Failed to spill message {} to disk", msg.getMessageRef(), e);
+        return false;
+      }
+    }
 
-    private final Map<Address, Map<String, ArrayDeque<StreamMessage>>> msgChainsByPublisher = new HashMap<>();
-    private final String streamId;
-    private final int partition;
+    private StreamMessage peek() {
+      if (!inMemory.isEmpty()) {
+        return inMemory.peek();
+      }
+      if (spilledHead == null && !spilled.isEmpty()) {
+        spilledHead = bufferBudget.getSpillFile().read(spilled.peek());
+      }
+      return spilledHead;
+    }
 
-    public DecryptionQueues(String streamId, int partition) {
-        this.streamId = streamId;
-        this.partition = partition;
+    private StreamMessage poll() {
+      StreamMessage msg = peek();
+      if (!inMemory.isEmpty()) {
+        inMemory.poll();
+        bufferBudget.release(BufferBudget.sizeOf(msg));
+      } else if (!spilled.isEmpty()) {
+        bufferBudget.getSpillFile().free(spilled.poll());
+        spilledHead = null;
+      }
+      return msg;
     }
 
-    private Map<String, ArrayDeque<StreamMessage>> getQueuesByMsgChain(Address publisherId) {
-        if (!msgChainsByPublisher.containsKey(publisherId)) {
-            msgChainsByPublisher.put(publisherId, new LinkedHashMap<>());
-        }
-        return msgChainsByPublisher.get(publisherId);
+    private boolean isEmpty() {
+      return inMemory.isEmpty() && spilled.isEmpty();
     }
 
-    public ArrayDeque<StreamMessage> getQueue(Address publisherId, String msgChainId) {
-        Map<String, ArrayDeque<StreamMessage>> queuesByMsgChain = getQueuesByMsgChain(publisherId);
-        if (!queuesByMsgChain.containsKey(msgChainId)) {
-            queuesByMsgChain.put(msgChainId, new ArrayDeque<>());
-        }
-        return queuesByMsgChain.get(msgChainId);
+    private int size() {
+      return inMemory.size() + spilled.size();
     }
 
-    public void add(StreamMessage msg) {
-        getQueue(msg.getPublisherId(), msg.getMsgChainId()).offer(msg);
-        log.trace("Message added to encryption queue: stream {}, partition {}, publisher {}, msgChain {}, ref {}",
-                msg.getStreamId(), msg.getStreamPartition(), msg.getPublisherId(), msg.getMsgChainId(), msg.getMessageRef());
+    private void clear() {
+      for (StreamMessage msg : inMemory) {
+        bufferBudget.release(BufferBudget.sizeOf(msg));
+      }
+      inMemory.clear();
+      for (Long position : spilled) {
+        bufferBudget.getSpillFile().free(position);
+      }
+      spilled.clear();
+      spilledHead = null;
     }
+  }
 
-    /**
-     * Returns a list of messages that can now be processed thanks to the provided groupKeyIds.
-     * Returned messages are removed from the queue.
-     */
-    public Collection<StreamMessage> drainUnlockedMessages(Address publisherId, Set<String> groupKeyIds) {
-        Map<String, ArrayDeque<StreamMessage>> queuesByMsgChainId = getQueuesByMsgChain(publisherId);
-        List<StreamMessage> unlockedMessages = new ArrayList<>();
-        Set<String> msgChainsWithEmptyLists = new HashSet<>();
-
-        // Find queues where the next messages can be processed with one of the provided groupKeys
-        for (Map.Entry<String, ArrayDeque<StreamMessage>> entry : queuesByMsgChainId.entrySet()) {
-            String msgChainId = entry.getKey();
-            ArrayDeque<StreamMessage> queue = entry.getValue();
-
-            log.trace("Checking encryption queue for stream {}, partition {}, publisher {}, msgChain {}. Queue size: {}",
-                    streamId, partition, publisherId, msgChainId, queue.size());
-
-            // Move processable messages from the queue to the result list
-            while (!queue.isEmpty() && groupKeyIds.contains(queue.peek().getGroupKeyId())) {
-                unlockedMessages.add(queue.poll());
-            }
-
-            // Clean up if the queue became empty to prevent memory leak
-            if (queue.isEmpty()) {
-                msgChainsWithEmptyLists.add(msgChainId);
-            }
-        }
-
-        // Clean up empty branches of the structure
-        for (String msgChainId : msgChainsWithEmptyLists) {
-            queuesByMsgChainId.remove(msgChainId);
-        }
-        if (queuesByMsgChainId.isEmpty()) {
-            msgChainsByPublisher.remove(publisherId);
-        }
-
-        return unlockedMessages;
+  public DecryptionQueues(String streamId, int partition) {
+    this.streamId = streamId;
+    this.partition = partition;
+  }
+
+  private Map<String, ChainQueue> getQueuesByMsgChain(Address publisherId) {
+    if (!msgChainsByPublisher.containsKey(publisherId)) {
+      msgChainsByPublisher.put(publisherId, new LinkedHashMap<>());
     }
+    return msgChainsByPublisher.get(publisherId);
+  }
 
-    public boolean isEmpty() {
-        return msgChainsByPublisher.isEmpty();
+  private ChainQueue getQueue(Address publisherId, String msgChainId) {
+    Map<String, ChainQueue> queuesByMsgChain = getQueuesByMsgChain(publisherId);
+    if (!queuesByMsgChain.containsKey(msgChainId)) {
+      queuesByMsgChain.put(msgChainId, new ChainQueue());
+    }
+    return queuesByMsgChain.get(msgChainId);
+  }
+
+  /**
+   * Sets the budget shared with the other buffers of the client. Must be called before any messages
+   * are queued.
+   */
+  public void setBufferBudget(BufferBudget bufferBudget) {
+    this.bufferBudget = bufferBudget;
+  }
+
+  /**
+   * Queues the message, unless the buffer budget has no room for it and it can't be spilled to
+   * disk.
+   *
+   * @return false if the message was not queued
+   */
+  public boolean add(StreamMessage msg) {
+    ChainQueue queue = getQueue(msg.getPublisherId(), msg.getMsgChainId());
+    if (!queue.offer(msg)) {
+      if (queue.isEmpty()) {
+        removeQueue(msg.getPublisherId(), msg.getMsgChainId());
+      }
+      return false;
+    }
+    log.trace(
+        "Message added to encryption queue: stream {}, partition {}, publisher {}, msgChain {}, ref {}",
+        msg.getStreamId(),
+        msg.getStreamPartition(),
+        msg.getPublisherId(),
+        msg.getMsgChainId(),
+        msg.getMessageRef());
+    return true;
+  }
+
+  /**
+   * Returns a list of messages that can now be processed thanks to the provided groupKeyIds.
+   * Returned messages are removed from the queue.
+   */
+  public Collection<StreamMessage> drainUnlockedMessages(
+      Address publisherId, Set<String> groupKeyIds) {
+    return drainUnlockedMessages(publisherId, groupKeyIds, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Like {@link #drainUnlockedMessages(Address, Set)}, but returns at most {@code maxMessages}
+   * messages, so that a backlog spilled to disk can be processed a batch at a time. The messages of
+   * each msgChain are returned in order.
+   */
+  public List<StreamMessage> drainUnlockedMessages(
+      Address publisherId, Set<String> groupKeyIds, int maxMessages) {
+    Map<String, ChainQueue> queuesByMsgChainId = msgChainsByPublisher.get(publisherId);
+    if (queuesByMsgChainId == null) {
+      return Collections.emptyList();
+    }
+    List<StreamMessage> unlockedMessages = new ArrayList<>();
+    Set<String> msgChainsWithEmptyLists = new HashSet<>();
+
+    // Find queues where the next messages can be processed with one of the provided groupKeys
+    for (Map.Entry<String, ChainQueue> entry : queuesByMsgChainId.entrySet()) {
+      String msgChainId = entry.getKey();
+      ChainQueue queue = entry.getValue();
+
+      log.trace(
+          "Checking encryption queue for stream {}, partition {}, publisher {}, msgChain {}. Queue size: {}",
+          streamId,
+          partition,
+          publisherId,
+          msgChainId,
+          queue.size());
+
+      // Move processable messages from the queue to the result list
+      while (unlockedMessages.size() < maxMessages
+          && !queue.isEmpty()
+          && groupKeyIds.contains(queue.peek().getGroupKeyId())) {
+        unlockedMessages.add(queue.poll());
+      }
+
+      // Clean up if the queue became empty to prevent memory leak
+      if (queue.isEmpty()) {
+        msgChainsWithEmptyLists.add(msgChainId);
+      }
+    }
+
+    // Clean up empty branches of the structure
+    for (String msgChainId : msgChainsWithEmptyLists) {
+      queuesByMsgChainId.remove(msgChainId);
+    }
+    if (queuesByMsgChainId.isEmpty()) {
+      msgChainsByPublisher.remove(publisherId);
+    }
+
+    return unlockedMessages;
+  }
+
+  public boolean isEmpty() {
+    return msgChainsByPublisher.isEmpty();
+  }
+
+  /** Drops all queued messages, returning their bytes to the buffer budget. */
+  public void clear() {
+    for (Map<String, ChainQueue> queuesByMsgChain : msgChainsByPublisher.values()) {
+      for (ChainQueue queue : queuesByMsgChain.values()) {
+        queue.clear();
+      }
+    }
+    msgChainsByPublisher.clear();
+  }
+
+  private void removeQueue(Address publisherId, String msgChainId) {
+    Map<String, ChainQueue> queuesByMsgChain = msgChainsByPublisher.get(publisherId);
+    queuesByMsgChain.remove(msgChainId);
+    if (queuesByMsgChain.isEmpty()) {
+      msgChainsByPublisher.remove(publisherId);
     }
+  }
 }
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.security.KeyFactory;
@@ -19,8 +20,10 @@ import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
@@ -35,10 +38,75 @@ import org.web3j.utils.Numeric;
 public final class EncryptionUtil {
   private static final Logger log = LoggerFactory.getLogger(EncryptionUtil.class);
   private static final SecureRandom SRAND = new SecureRandom();
-  private static final ThreadLocal<Cipher> aesCipher =
-      ThreadLocal.withInitial(() -> getAESCipher());
   private static final ThreadLocal<Cipher> rsaCipher =
       ThreadLocal.withInitial(() -> getRSACipher());
+  private static final ThreadLocal<AesContext> aesContext =
+      ThreadLocal.withInitial(AesContext::new);
+
+  private static final int IV_LENGTH = 16;
+  // Values of hex digits indexed by their ASCII code, -1 for other characters
+  private static final byte[] HEX_VALUES = new byte[128];
+  private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  static {
+    Arrays.fill(HEX_VALUES, (byte) -1);
+    for (int i = 0; i < 10; i++) {
+      HEX_VALUES['0' + i] = (byte) i;
+    }
+    for (int i = 0; i < 6; i++) {
+      HEX_VALUES['a' + i] = (byte) (10 + i);
+      HEX_VALUES['A' + i] = (byte) (10 + i);
+    }
+  }
+
+  /**
+   * Per-thread state for AES encryption and decryption: a cipher for each of the most recently used
+   * group keys and a buffer for the binary ciphertext. Initializing a cipher with the key it already
+   * holds only resets the IV, so the key schedule is computed once per key instead of once per
+   * message. Keys are matched by id and key bytes, so that equal GroupKey instances share a cipher.
+   */
+  private static final class AesContext {
+    private static final int MAX_KEYS = 8;
+    // Buffers up to this size are kept for the next message, larger ones are allocated per message
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    private final String[] keyIds = new String[MAX_KEYS];
+    private final SecretKey[] secretKeys = new SecretKey[MAX_KEYS];
+    private final Cipher[] ciphers = new Cipher[MAX_KEYS];
+    private int nextSlot = 0;
+    private final byte[] iv = new byte[IV_LENGTH];
+    private byte[] buffer = new byte[4096];
+
+    private Cipher cipherFor(final GroupKey groupKey) {
+      final SecretKey secretKey = groupKey.toSecretKey();
+      for (int i = 0; i < MAX_KEYS; i++) {
+        if (secretKeys[i] != null
+            && groupKey.getGroupKeyId().equals(keyIds[i])
+            && (secretKeys[i] == secretKey || secretKeys[i].equals(secretKey))) {
+          return ciphers[i];
+        }
+      }
+      final int slot = nextSlot;
+      nextSlot = (nextSlot + 1) % MAX_KEYS;
+      if (ciphers[slot] == null) {
+        ciphers[slot] = getAESCipher();
+      }
+      keyIds[slot] = groupKey.getGroupKeyId();
+      secretKeys[slot] = secretKey;
+      return ciphers[slot];
+    }
+
+    private byte[] buffer(final int size) {
+      if (size <= buffer.length) {
+        return buffer;
+      }
+      if (size > MAX_POOLED_BUFFER_SIZE) {
+        return new byte[size];
+      }
+      buffer = new byte[Math.max(size, Math.min(2 * buffer.length, MAX_POOLED_BUFFER_SIZE))];
+      return buffer;
+    }
+  }
 
   private final RSAPublicKey publicKey;
   private final RSAPrivateKey privateKey;
@@ -126,25 +194,88 @@ public final class EncryptionUtil {
   }
 
   static String encrypt(byte[] plaintext, GroupKey groupKey) {
+    final byte[] hex = encryptToHex(plaintext, groupKey);
+    return hex == null ? null : new String(hex, StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Encrypts 'plaintext' with a random IV and returns the IV and the ciphertext as lower case hex
+   * ASCII. The ciphertext is written to the thread's buffer and hex encoded from there straight
+   * into the returned array, without going through Strings.
+   */
+  static byte[] encryptToHex(byte[] plaintext, GroupKey groupKey) {
     try {
-      byte[] iv = new byte[16];
-      SRAND.nextBytes(iv);
-      IvParameterSpec ivspec = new IvParameterSpec(iv);
-      aesCipher.get().init(Cipher.ENCRYPT_MODE, groupKey.toSecretKey(), ivspec);
-      byte[] ciphertext = aesCipher.get().doFinal(plaintext);
-      return Numeric.toHexStringNoPrefix(iv) + Numeric.toHexStringNoPrefix(ciphertext);
+      final AesContext context = aesContext.get();
+      SRAND.nextBytes(context.iv);
+      final Cipher cipher = context.cipherFor(groupKey);
+      cipher.init(Cipher.ENCRYPT_MODE, groupKey.toSecretKey(), new IvParameterSpec(context.iv));
+      final byte[] ciphertext = context.buffer(plaintext.length);
+      final int length = cipher.doFinal(plaintext, 0, plaintext.length, ciphertext, 0);
+
+      final byte[] hex = new byte[2 * (IV_LENGTH + length)];
+      encodeHex(context.iv, IV_LENGTH, hex, 0);
+      encodeHex(ciphertext, length, hex, 2 * IV_LENGTH);
+      return hex;
     } catch (Exception e) {
       log.error("Failed to encrypt with groupKey", e);
     }
     return null;
   }
 
+  private static void encodeHex(
+      final byte[] bytes, final int length, final byte[] out, final int offset) {
+    for (int i = 0, j = offset; i < length; i++, j += 2) {
+      out[j] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      out[j + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+  }
+
   static byte[] decrypt(String ciphertext, GroupKey groupKey) throws Exception {
+    return decrypt(
+        ByteBuffer.wrap(ciphertext.getBytes(StandardCharsets.US_ASCII)),
+        groupKey,
+        aesContext.get());
+  }
+
+  /**
+   * Decrypts the hex encoded IV and ciphertext in {@code hex}, between its position and limit. The
+   * hex is decoded straight into the context's buffer and decrypted from there.
+   */
+  private static byte[] decrypt(
+      final ByteBuffer hex, final GroupKey groupKey, final AesContext context) throws Exception {
     if (groupKey == null) throw new InvalidGroupKeyException(0);
-    byte[] iv = DatatypeConverter.parseHexBinary(ciphertext.substring(0, 32));
-    IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-    aesCipher.get().init(Cipher.DECRYPT_MODE, groupKey.toSecretKey(), ivParameterSpec);
-    return aesCipher.get().doFinal(DatatypeConverter.parseHexBinary(ciphertext.substring(32)));
+    final int hexLength = hex.remaining();
+    if (hexLength < 2 * IV_LENGTH || hexLength % 2 != 0) {
+      throw new IllegalArgumentException("Invalid ciphertext length: " + hexLength);
+    }
+    final int start = hex.position();
+    decodeHex(hex, start, context.iv, IV_LENGTH);
+    final int length = hexLength / 2 - IV_LENGTH;
+    final byte[] ciphertext = context.buffer(length);
+    decodeHex(hex, start + 2 * IV_LENGTH, ciphertext, length);
+
+    final Cipher cipher = context.cipherFor(groupKey);
+    cipher.init(Cipher.DECRYPT_MODE, groupKey.toSecretKey(), new IvParameterSpec(context.iv));
+    final byte[] plaintext = new byte[length];
+    cipher.doFinal(ciphertext, 0, length, plaintext, 0);
+    return plaintext;
+  }
+
+  /** Decodes {@code length} bytes from the hex digits starting at {@code offset} in {@code hex}. */
+  private static void decodeHex(
+      final ByteBuffer hex, final int offset, final byte[] out, final int length) {
+    for (int i = 0, j = offset; i < length; i++, j += 2) {
+      final int high = hexValue(hex.get(j));
+      final int low = hexValue(hex.get(j + 1));
+      if ((high | low) < 0) {
+        throw new IllegalArgumentException("Invalid hex digit at index " + j);
+      }
+      out[i] = (byte) ((high << 4) | low);
+    }
+  }
+
+  private static int hexValue(final byte digit) {
+    return digit < 0 ? -1 : HEX_VALUES[digit];
   }
 
   static EncryptedGroupKey encryptGroupKey(GroupKey keyToEncrypt, GroupKey keyToEncryptWith) {
@@ -181,7 +312,7 @@ public final class EncryptionUtil {
    */
   static StreamMessage encryptStreamMessage(
       final StreamMessage streamMessage, final GroupKey groupKey) throws InvalidGroupKeyException {
-    final String message = encrypt(streamMessage.getSerializedContentAsBytes(), groupKey);
+    final byte[] message = encryptToHex(streamMessage.getSerializedContentAsBytes(), groupKey);
     final StreamMessage.Content content = StreamMessage.Content.Factory.withJsonAsPayload(message);
     return new StreamMessage.Builder(streamMessage)
         .withContent(content)
@@ -193,12 +324,37 @@ public final class EncryptionUtil {
   /** Decrypts the serialized content of 'streamMessage' with 'groupKey'. */
   public static StreamMessage decryptStreamMessage(
       final StreamMessage streamMessage, final GroupKey groupKey) throws UnableToDecryptException {
+    return decryptStreamMessage(streamMessage, groupKey, aesContext.get());
+  }
+
+  /**
+   * Decrypts messages that were all encrypted with 'groupKey'. The key schedule and the decoding
+   * buffer are set up once for the whole batch. The decrypted messages are returned in the same
+   * order.
+   *
+   * @throws UnableToDecryptException for the first message that can't be decrypted
+   */
+  public static List<StreamMessage> decryptStreamMessages(
+      final List<StreamMessage> streamMessages, final GroupKey groupKey)
+      throws UnableToDecryptException {
+    final AesContext context = aesContext.get();
+    final List<StreamMessage> decrypted = new ArrayList<>(streamMessages.size());
+    for (final StreamMessage streamMessage : streamMessages) {
+      decrypted.add(decryptStreamMessage(streamMessage, groupKey, context));
+    }
+    return decrypted;
+  }
+
+  private static StreamMessage decryptStreamMessage(
+      final StreamMessage streamMessage, final GroupKey groupKey, final AesContext context)
+      throws UnableToDecryptException {
     if (streamMessage.getEncryptionType() != StreamMessage.EncryptionType.AES) {
       throw new IllegalArgumentException("Given StreamMessage is not encrypted with AES!");
     }
 
     try {
-      final byte[] decryptedContent = decrypt(streamMessage.getSerializedContent(), groupKey);
+      final byte[] decryptedContent =
+          decrypt(streamMessage.getSerializedContentAsByteBuffer(), groupKey, context);
       final StreamMessage.Content content =
           StreamMessage.Content.Factory.withJsonAsPayload(decryptedContent);
       return new StreamMessage.Builder(streamMessage)
@@ -0,0 +1,357 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.exceptions.KeyAlreadyExistsException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A ConcurrentGroupKeyStore that also appends every added key to a file, so that the keys survive a
+ * restart and subscriptions can decrypt right away instead of requesting all the keys again.
+ *
+ * <p>The file is an append-only log of (streamId, groupKeyId, key) records after a header. If a
+ * master key is given, the keys are stored encrypted with it, and the header holds a check value so
+ * that opening the file with the wrong master key fails instead of loading garbage keys.
+ *
+ * <p>The header is checked when the store is created, and the records are then read on a background
+ * thread. Until they have been read, using the store waits for them. Keys removed by the retention
+ * limits of ConcurrentGroupKeyStore stay in the file until the next time it's loaded, which
+ * rewrites the file without them. A record left incomplete by a crash is dropped.
+ *
+ * <p>The file is only readable and writable by its owner where the file system supports POSIX
+ * permissions. Each record is forced to disk as its key is added.
+ */
+public class FileGroupKeyStore extends ConcurrentGroupKeyStore implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(FileGroupKeyStore.class);
+
+  private static final int MAGIC = 0x53474b31; // "SGK1"
+  private static final byte[] CHECK_PLAINTEXT =
+      "streamr-group-key-store".getBytes(StandardCharsets.UTF_8);
+  private static final Set<PosixFilePermission> OWNER_ONLY =
+      PosixFilePermissions.fromString("rw-------");
+
+  private final Path file;
+  private final GroupKey masterKey;
+  private final Thread loader;
+  private final CountDownLatch loadDone = new CountDownLatch(1);
+  private volatile boolean loaded = false;
+  private volatile RuntimeException loadFailure = null;
+  // Guarded by this
+  private boolean loading = false;
+  private FileChannel channel;
+  private DataOutputStream out;
+
+  private static final class Record {
+    private final String streamId;
+    private final String groupKeyId;
+    private final String keyHex;
+
+    private Record(String streamId, String groupKeyId, String keyHex) {
+      this.streamId = streamId;
+      this.groupKeyId = groupKeyId;
+      this.keyHex = keyHex;
+    }
+  }
+
+  /**
+   * @param file created if it doesn't exist
+   * @param masterKey encrypts the keys at rest, or null to store them in plaintext
+   * @throws IllegalArgumentException if the file isn't a key store or was written with another
+   *     master key
+   */
+  public FileGroupKeyStore(Path file, GroupKey masterKey, int maxKeysPerStream, Duration keyTtl) {
+    super(maxKeysPerStream, keyTtl);
+    this.file = file;
+    this.masterKey = masterKey;
+    try {
+      if (Files.exists(file) && Files.size(file) > 0) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+          readHeader(in);
+        }
+      } else {
+        writeHeader(file);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open group key store " + file, e);
+    }
+    loader = new Thread(this::loadInBackground, "streamr-group-key-store-loader");
+    loader.setDaemon(true);
+    loader.start();
+  }
+
+  public FileGroupKeyStore(Path file, GroupKey masterKey) {
+    this(file, masterKey, DEFAULT_MAX_KEYS_PER_STREAM, null);
+  }
+
+  public FileGroupKeyStore(Path file) {
+    this(file, null);
+  }
+
+  @Override
+  public GroupKey get(String streamId, String groupKeyId) {
+    ensureLoaded();
+    return super.get(streamId, groupKeyId);
+  }
+
+  @Override
+  public boolean contains(String groupKeyId) {
+    ensureLoaded();
+    return super.contains(groupKeyId);
+  }
+
+  @Override
+  public GroupKey getCurrentKey(String streamId) {
+    ensureLoaded();
+    return super.getCurrentKey(streamId);
+  }
+
+  @Override
+  public int size(String streamId) {
+    ensureLoaded();
+    return super.size(streamId);
+  }
+
+  @Override
+  protected void storeKey(String streamId, GroupKey key) throws KeyAlreadyExistsException {
+    ensureLoaded();
+    super.storeKey(streamId, key);
+  }
+
+  // Called while holding the lock of the stream, so the last record of a stream in the file is its
+  // current key
+  @Override
+  protected synchronized void keyAdded(String streamId, GroupKey key) {
+    if (loading) {
+      return;
+    }
+    if (out == null) {
+      log.warn(
+          "Key {} of stream {} not written to {}, the store is closed",
+          key.getGroupKeyId(),
+          streamId,
+          file);
+      return;
+    }
+    try {
+      writeRecord(out, new Record(streamId, key.getGroupKeyId(), encode(key)));
+      out.flush();
+      channel.force(false);
+    } catch (IOException e) {
+      // The key is still usable, it just won't be there after a restart
+      log.error(
+          "Failed to write key {} of stream {} to {}", key.getGroupKeyId(), streamId, file, e);
+    }
+  }
+
+  /** Waits for the keys to be loaded, then closes the file. */
+  @Override
+  public void close() throws IOException {
+    awaitLoad();
+    synchronized (this) {
+      if (out != null) {
+        out.close();
+        out = null;
+        channel = null;
+      }
+    }
+  }
+
+  private void ensureLoaded() {
+    // Adding the loaded keys comes back here on the loader thread
+    if (loaded || Thread.currentThread() == loader) {
+      return;
+    }
+    awaitLoad();
+    if (!loaded) {
+      throw new IllegalStateException("Failed to load group key store " + file, loadFailure);
+    }
+  }
+
+  private void awaitLoad() {
+    try {
+      loadDone.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading group key store " + file, e);
+    }
+  }
+
+  private void loadInBackground() {
+    try {
+      load();
+    } catch (RuntimeException e) {
+      log.error("Failed to load group key store {}", file, e);
+      loadFailure = e;
+    } finally {
+      loadDone.countDown();
+    }
+  }
+
+  private synchronized void load() {
+    try {
+      byte[] bytes = Files.readAllBytes(file);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      readHeader(in);
+      List<Record> records = new ArrayList<>();
+      boolean incomplete = false;
+      while (!incomplete && in.available() > 0) {
+        try {
+          records.add(readRecord(in));
+        } catch (EOFException e) {
+          log.warn("Dropping an incomplete record at the end of {}", file);
+          incomplete = true;
+        }
+      }
+
+      loading = true;
+      try {
+        for (Record record : records) {
+          try {
+            add(record.streamId, decode(record));
+          } catch (KeyAlreadyExistsException e) {
+            log.warn("Key {} appears twice in {}, skipping", record.groupKeyId, file);
+          } catch (Exception e) {
+            log.error(
+                "Failed to load key {} of stream {} from {}",
+                record.groupKeyId,
+                record.streamId,
+                file,
+                e);
+          }
+        }
+      } finally {
+        loading = false;
+      }
+      loaded = true;
+
+      // Rewrite the file without the keys that were dropped, in their original order so that
+      // the current key of each stream is still the last one
+      List<Record> kept = new ArrayList<>();
+      Set<String> keptIds = new HashSet<>();
+      for (Record record : records) {
+        if (super.contains(record.groupKeyId) && keptIds.add(record.groupKeyId)) {
+          kept.add(record);
+        }
+      }
+      if (incomplete || kept.size() < records.size()) {
+        compact(kept);
+      }
+      channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      log.debug("Loaded {} keys from {}", kept.size(), file);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to load group key store " + file, e);
+    }
+  }
+
+  private void compact(List<Record> records) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    writeHeader(tmp);
+    try (DataOutputStream tmpOut =
+        new DataOutputStream(
+            new BufferedOutputStream(
+                Files.newOutputStream(
+                    tmp, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))) {
+      for (Record record : records) {
+        writeRecord(tmpOut, record);
+      }
+    }
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+      channel.force(true);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // Replaces the file with one that only the owner can access
+  private void writeHeader(Path path) throws IOException {
+    Files.deleteIfExists(path);
+    if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+      Files.createFile(path, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+    } else {
+      Files.createFile(path);
+    }
+    try (DataOutputStream headerOut = new DataOutputStream(Files.newOutputStream(path))) {
+      headerOut.writeInt(MAGIC);
+      headerOut.writeBoolean(masterKey != null);
+      if (masterKey != null) {
+        headerOut.writeUTF(EncryptionUtil.encrypt(CHECK_PLAINTEXT, masterKey));
+      }
+    }
+  }
+
+  private void readHeader(DataInputStream in) throws IOException {
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IllegalArgumentException(file + " is not a group key store");
+      }
+      boolean encrypted = in.readBoolean();
+      if (encrypted != (masterKey != null)) {
+        throw new IllegalArgumentException(
+            encrypted
+                ? file + " is encrypted, but no master key was given"
+                : file + " is not encrypted, but a master key was given");
+      }
+      if (encrypted && !Arrays.equals(CHECK_PLAINTEXT, decrypt(in.readUTF()))) {
+        throw new IllegalArgumentException(file + " was written with another master key");
+      }
+    } catch (EOFException e) {
+      throw new IllegalArgumentException(file + " is not a group key store", e);
+    }
+  }
+
+  private static void writeRecord(DataOutputStream out, Record record) throws IOException {
+    out.writeUTF(record.streamId);
+    out.writeUTF(record.groupKeyId);
+    out.writeUTF(record.keyHex);
+  }
+
+  private static Record readRecord(DataInputStream in) throws IOException {
+    return new Record(in.readUTF(), in.readUTF(), in.readUTF());
+  }
+
+  private String encode(GroupKey key) {
+    if (masterKey == null) {
+      return key.getGroupKeyHex();
+    }
+    return EncryptionUtil.encryptGroupKey(key, masterKey).getEncryptedGroupKeyHex();
+  }
+
+  private GroupKey decode(Record record) throws Exception {
+    if (masterKey == null) {
+      return new GroupKey(record.groupKeyId, record.keyHex);
+    }
+    return EncryptionUtil.decryptGroupKey(
+        new EncryptedGroupKey(record.groupKeyId, record.keyHex), masterKey);
+  }
+
+  private byte[] decrypt(String ciphertextHex) {
+    try {
+      return EncryptionUtil.decrypt(ciphertextHex, masterKey);
+    } catch (Exception e) {
+      throw new IllegalArgumentException(file + " has an invalid master key check value", e);
+    }
+  }
+}
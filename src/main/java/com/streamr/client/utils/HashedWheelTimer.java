@@ -0,0 +1,371 @@
+package com.streamr.client.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs delayed and periodic tasks on a single thread. Tasks are kept in a wheel of buckets, one
+ * bucket per tick, so scheduling and cancelling a task take constant time regardless of how many
+ * tasks are pending. Tasks run on the first tick after their deadline, so they may run up to two
+ * ticks late.
+ *
+ * <p>Tasks run on the timer thread and should be short. Tasks that may block, for example by
+ * calling message handlers or connecting, are scheduled with an executor, so that the timer thread
+ * only hands them over when they expire. A periodic run is skipped if the previous one is still
+ * running on the executor. Exceptions thrown by tasks are logged.
+ */
+public class HashedWheelTimer {
+  private static final Logger log = LoggerFactory.getLogger(HashedWheelTimer.class);
+  private static final long DEFAULT_TICK_MILLIS = 10;
+  private static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private static final HashedWheelTimer DEFAULT =
+      new HashedWheelTimer("streamr-timer", DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+  private static final int DEFAULT_MAX_WORKERS = Runtime.getRuntime().availableProcessors();
+  private static final int DEFAULT_MAX_QUEUED_TASKS = 10000;
+  private static final AtomicInteger WORKER_COUNTER = new AtomicInteger();
+  private static final ThreadPoolExecutor DEFAULT_WORKERS = createDefaultWorkers();
+
+  private final String name;
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  // Timeouts scheduled or cancelled since the last tick, picked up by the timer thread
+  private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+  private final Object lifecycleLock = new Object();
+  private volatile Thread thread = null;
+  private volatile boolean stopped = false;
+  // Only accessed by the timer thread after it has started
+  private long startTime;
+  private long tick = 0;
+
+  /** A pending task that can be cancelled. */
+  public static final class Timeout {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final HashedWheelTimer timer;
+    private final Runnable task;
+    // Null to run the task on the timer thread
+    private final Executor executor;
+    private final long periodNanos;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    // Set while a run handed to the executor has not finished
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    // The fields below are only accessed by the timer thread
+    private long deadline;
+    private long remainingRounds;
+    private Bucket bucket;
+    private Timeout prev;
+    private Timeout next;
+
+    private Timeout(
+        final HashedWheelTimer timer,
+        final Runnable task,
+        final Executor executor,
+        final long deadline,
+        final long periodNanos) {
+      this.timer = timer;
+      this.task = task;
+      this.executor = executor;
+      this.deadline = deadline;
+      this.periodNanos = periodNanos;
+    }
+
+    /** Cancels the task. A task that is already running is not interrupted. */
+    public void cancel() {
+      if (state.compareAndSet(PENDING, CANCELLED)) {
+        timer.cancelled.add(this);
+      }
+    }
+
+    public boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    /** Returns true once a one-off task has run. Periodic tasks never expire. */
+    public boolean isExpired() {
+      return state.get() == EXPIRED;
+    }
+  }
+
+  /** Doubly-linked list of the timeouts in one slot of the wheel. */
+  private static final class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    private void add(final Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+      }
+      tail = timeout;
+    }
+
+    private Timeout remove(final Timeout timeout) {
+      final Timeout next = timeout.next;
+      if (timeout.prev != null) {
+        timeout.prev.next = next;
+      }
+      if (next != null) {
+        next.prev = timeout.prev;
+      }
+      if (timeout == head) {
+        head = next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+      return next;
+    }
+  }
+
+  /**
+   * @param name name of the timer thread
+   * @param tickMillis resolution of the timer
+   * @param wheelSize number of ticks in one round of the wheel, rounded up to a power of two
+   */
+  public HashedWheelTimer(final String name, final long tickMillis, final int wheelSize) {
+    if (tickMillis < 1) {
+      throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+    }
+    if (wheelSize < 1 || wheelSize > 1 << 30) {
+      throw new IllegalArgumentException("wheelSize must be in [1, 2^30]: " + wheelSize);
+    }
+    this.name = name;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    int size = 1;
+    while (size < wheelSize) {
+      size <<= 1;
+    }
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+  }
+
+  /** Returns the timer shared by all clients. Its thread starts with the first scheduled task. */
+  public static HashedWheelTimer getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Executor for the tasks of the default timer that may block. It has at most one thread per
+   * processor, and tasks that don't fit in its queue are rejected and logged.
+   */
+  public static Executor getDefaultWorkers() {
+    return DEFAULT_WORKERS;
+  }
+
+  /** Runs {@code task} once after {@code delayMillis}. */
+  public Timeout schedule(final Runnable task, final long delayMillis) {
+    return add(task, null, delayMillis, 0);
+  }
+
+  /**
+   * Runs {@code task} after {@code delayMillis}, then repeatedly {@code periodMillis} after the
+   * previous run started, until cancelled. Like {@link java.util.Timer#schedule(java.util.TimerTask,
+   * long, long)}, late runs are not caught up with.
+   */
+  public Timeout schedule(final Runnable task, final long delayMillis, final long periodMillis) {
+    return schedule(task, delayMillis, periodMillis, null);
+  }
+
+  /**
+   * Like {@link #schedule(Runnable, long, long)}, but each run is passed to {@code executor}
+   * instead of running on the timer thread. A run that comes due while the previous one is still
+   * running is skipped.
+   */
+  public Timeout schedule(
+      final Runnable task,
+      final long delayMillis,
+      final long periodMillis,
+      final Executor executor) {
+    if (periodMillis < 1) {
+      throw new IllegalArgumentException("periodMillis must be positive: " + periodMillis);
+    }
+    return add(task, executor, delayMillis, TimeUnit.MILLISECONDS.toNanos(periodMillis));
+  }
+
+  /** Stops the timer thread. Pending tasks are not run. */
+  public void stop() {
+    synchronized (lifecycleLock) {
+      stopped = true;
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+  }
+
+  private Timeout add(
+      final Runnable task,
+      final Executor executor,
+      final long delayMillis,
+      final long periodNanos) {
+    final long deadline =
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+    final Timeout timeout = new Timeout(this, task, executor, deadline, periodNanos);
+    start();
+    scheduled.add(timeout);
+    return timeout;
+  }
+
+  private void start() {
+    if (thread != null) {
+      return;
+    }
+    synchronized (lifecycleLock) {
+      if (thread == null && !stopped) {
+        startTime = System.nanoTime();
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+      }
+    }
+  }
+
+  private void run() {
+    while (!stopped) {
+      final long tickDeadline = startTime + (tick + 1) * tickNanos;
+      final long sleepNanos = tickDeadline - System.nanoTime();
+      if (sleepNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          if (stopped) {
+            return;
+          }
+          continue;
+        }
+      }
+      removeCancelled();
+      transferScheduled();
+      expire(wheel[(int) (tick & mask)]);
+      tick++;
+    }
+  }
+
+  private void removeCancelled() {
+    Timeout timeout;
+    while ((timeout = cancelled.poll()) != null) {
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+  private void transferScheduled() {
+    Timeout timeout;
+    while ((timeout = scheduled.poll()) != null) {
+      if (timeout.state.get() == Timeout.PENDING) {
+        place(timeout);
+      }
+    }
+  }
+
+  /** Puts the timeout in the bucket of the tick at or after its deadline. */
+  private void place(final Timeout timeout) {
+    final long ticks = Math.max(ceilDiv(timeout.deadline - startTime, tickNanos), tick);
+    timeout.remainingRounds = (ticks - tick) / wheel.length;
+    wheel[(int) (ticks & mask)].add(timeout);
+  }
+
+  private void expire(final Bucket bucket) {
+    Timeout timeout = bucket.head;
+    while (timeout != null) {
+      if (timeout.remainingRounds > 0) {
+        timeout.remainingRounds--;
+        timeout = timeout.next;
+        continue;
+      }
+      final Timeout next = bucket.remove(timeout);
+      if (timeout.periodNanos == 0) {
+        if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+          runTask(timeout);
+        }
+      } else if (timeout.state.get() == Timeout.PENDING) {
+        // Rescheduled through the queue, so it lands on a later tick even with a short period
+        timeout.deadline = System.nanoTime() + timeout.periodNanos;
+        runTask(timeout);
+        if (timeout.state.get() == Timeout.PENDING) {
+          scheduled.add(timeout);
+        }
+      }
+      timeout = next;
+    }
+  }
+
+  private static void runTask(final Timeout timeout) {
+    if (timeout.executor == null) {
+      run(timeout.task);
+      return;
+    }
+    if (!timeout.running.compareAndSet(false, true)) {
+      log.debug("Skipping a run of a timer task, the previous run has not finished");
+      return;
+    }
+    try {
+      timeout.executor.execute(
+          () -> {
+            try {
+              run(timeout.task);
+            } finally {
+              timeout.running.set(false);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      timeout.running.set(false);
+      log.error("Executor rejected timer task", e);
+    }
+  }
+
+  // Catches everything, so that a failing task doesn't stop the timer thread
+  private static void run(final Runnable task) {
+    try {
+      task.run();
+    } catch (Throwable e) {
+      log.error("Timer task failed", e);
+    }
+  }
+
+  // Threads are created on demand and stop when idle. The pool and its queue are bounded, so tasks
+  // that block can't make it grow without limit
+  private static ThreadPoolExecutor createDefaultWorkers() {
+    final ThreadPoolExecutor workers =
+        new ThreadPoolExecutor(
+            DEFAULT_MAX_WORKERS,
+            DEFAULT_MAX_WORKERS,
+            60,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(DEFAULT_MAX_QUEUED_TASKS),
+            runnable -> {
+              final Thread thread =
+                  new Thread(runnable, "streamr-timer-worker-" + WORKER_COUNTER.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    workers.allowCoreThreadTimeOut(true);
+    return workers;
+  }
+
+  private static long ceilDiv(final long x, final long y) {
+    return x <= 0 ? 0 : (x + y - 1) / y;
+  }
+}
@@ -45,7 +45,7 @@ public class MessageCreationUtil {
   private final String msgChainId;
   private final SigningUtil signingUtil;
 
-  private final Map<String, MessageRef> refsPerStreamAndPartition = new HashMap<>();
+  private final Map<StreamPartition, MessageRef> refsPerStreamAndPartition = new HashMap<>();
   private final Map<String, Integer> cachedHashes = new HashMap<>();
   private final JsonAdapter<Map<String, Object>> mapOfStringAndObjectAdapter =
       new Moshi.Builder()
@@ -76,8 +76,69 @@ public class MessageCreationUtil {
       @Nullable String partitionKey,
       @Nullable GroupKey groupKey,
       @Nullable GroupKey newGroupKey) {
-    int streamPartition = getStreamPartition(stream.getPartitions(), partitionKey);
+    return createStreamMessage(
+        stream,
+        getStreamPartition(stream, partitionKey),
+        payload,
+        timestamp,
+        groupKey,
+        newGroupKey);
+  }
+
+  /**
+   * Same as {@link #createStreamMessage(Stream, Map, Date, String, GroupKey, GroupKey)}, but for a
+   * partition already chosen with {@link #getStreamPartition(Stream, String)}.
+   */
+  public StreamMessage createStreamMessage(
+      Stream stream,
+      int streamPartition,
+      Map<String, Object> payload,
+      Date timestamp,
+      @Nullable GroupKey groupKey,
+      @Nullable GroupKey newGroupKey) {
+    StreamMessage streamMessage =
+        createUnsignedStreamMessage(
+            stream, streamPartition, payload, timestamp, groupKey, newGroupKey);
+
+    // Sign if signingUtil provided
+    if (signingUtil != null) {
+      streamMessage = signingUtil.signStreamMessage(streamMessage);
+    }
+    return streamMessage;
+  }
+
+  /**
+   * Same as {@link #createStreamMessage(Stream, Map, Date, String, GroupKey, GroupKey)}, but leaves
+   * signing to the caller. The message is still added to its chain, so it must be signed and
+   * published in the order it was created.
+   */
+  public StreamMessage createUnsignedStreamMessage(
+      Stream stream,
+      Map<String, Object> payload,
+      Date timestamp,
+      @Nullable String partitionKey,
+      @Nullable GroupKey groupKey,
+      @Nullable GroupKey newGroupKey) {
+    return createUnsignedStreamMessage(
+        stream,
+        getStreamPartition(stream, partitionKey),
+        payload,
+        timestamp,
+        groupKey,
+        newGroupKey);
+  }
 
+  /**
+   * Same as {@link #createUnsignedStreamMessage(Stream, Map, Date, String, GroupKey, GroupKey)},
+   * but for a partition already chosen with {@link #getStreamPartition(Stream, String)}.
+   */
+  public StreamMessage createUnsignedStreamMessage(
+      Stream stream,
+      int streamPartition,
+      Map<String, Object> payload,
+      Date timestamp,
+      @Nullable GroupKey groupKey,
+      @Nullable GroupKey newGroupKey) {
     Pair<MessageId, MessageRef> pair =
         createMsgIdAndRef(stream.getId(), streamPartition, timestamp.getTime());
     final String jsonMessage = mapOfStringAndObjectAdapter.toJson(payload);
@@ -105,11 +166,6 @@ public class MessageCreationUtil {
                 .createStreamMessage();
       }
     }
-
-    // Sign if signingUtil provided
-    if (signingUtil != null) {
-      streamMessage = signingUtil.signStreamMessage(streamMessage);
-    }
     return streamMessage;
   }
 
@@ -254,7 +310,12 @@ public class MessageCreationUtil {
     return hash;
   }
 
-  private int getStreamPartition(int nbPartitions, String partitionKey) {
+  /**
+   * Returns the partition of a message published with partitionKey. Without a partitionKey, a
+   * random partition is chosen on each call.
+   */
+  public int getStreamPartition(Stream stream, @Nullable String partitionKey) {
+    final int nbPartitions = stream.getPartitions();
     if (nbPartitions == 0) {
       throw new Error("partitionCount is zero!");
     } else if (nbPartitions == 1) {
@@ -269,7 +330,7 @@ public class MessageCreationUtil {
 
   private Pair<MessageId, MessageRef> createMsgIdAndRef(
       String streamId, int streamPartition, long timestamp) {
-    String key = streamId + streamPartition;
+    StreamPartition key = StreamPartition.of(streamId, streamPartition);
     long sequenceNumber = getNextSequenceNumber(key, timestamp);
     MessageId msgId =
         new MessageId.Builder()
@@ -290,7 +351,7 @@ public class MessageCreationUtil {
     return createMsgIdAndRef(streamId, 0, (new Date()).getTime());
   }
 
-  private long getNextSequenceNumber(String key, long timestamp) {
+  private long getNextSequenceNumber(StreamPartition key, long timestamp) {
     MessageRef prev = refsPerStreamAndPartition.get(key);
     if (prev == null || prev.getTimestamp() != timestamp) {
       return 0L;
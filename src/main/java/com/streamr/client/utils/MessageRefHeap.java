@@ -0,0 +1,140 @@
+package com.streamr.client.utils;
+
+import java.util.Arrays;
+
+/**
+ * Min-heap of values, usually StreamMessages, ordered by a (timestamp, sequenceNumber) message
+ * reference. The references are kept in primitive arrays alongside the values, so that ordering
+ * the heap neither allocates nor goes through the values.
+ *
+ * <p>Not thread-safe.
+ */
+final class MessageRefHeap<T> {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private long[] timestamps = new long[INITIAL_CAPACITY];
+  private long[] sequenceNumbers = new long[INITIAL_CAPACITY];
+  private Object[] values = new Object[INITIAL_CAPACITY];
+  private int size = 0;
+
+  /** Compares two message references the way {@code MessageRef.compareTo} does. */
+  static int compare(
+      final long timestamp1,
+      final long sequenceNumber1,
+      final long timestamp2,
+      final long sequenceNumber2) {
+    final int result = Long.compare(timestamp1, timestamp2);
+    return result != 0 ? result : Long.compare(sequenceNumber1, sequenceNumber2);
+  }
+
+  void offer(final long timestamp, final long sequenceNumber, final T value) {
+    if (size == values.length) {
+      final int capacity = size * 2;
+      timestamps = Arrays.copyOf(timestamps, capacity);
+      sequenceNumbers = Arrays.copyOf(sequenceNumbers, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    siftUp(size++, timestamp, sequenceNumber, value);
+  }
+
+  T peek() {
+    return size == 0 ? null : value(0);
+  }
+
+  /** Timestamp of the head of the heap. The heap must not be empty. */
+  long peekTimestamp() {
+    return timestamps[0];
+  }
+
+  /** Sequence number of the head of the heap. The heap must not be empty. */
+  long peekSequenceNumber() {
+    return sequenceNumbers[0];
+  }
+
+  T poll() {
+    if (size == 0) {
+      return null;
+    }
+    final T result = value(0);
+    final int last = --size;
+    final long timestamp = timestamps[last];
+    final long sequenceNumber = sequenceNumbers[last];
+    final Object value = values[last];
+    values[last] = null;
+    if (last > 0) {
+      siftDown(0, timestamp, sequenceNumber, value);
+    }
+    return result;
+  }
+
+  /** Returns the value with the greatest reference. Takes linear time. */
+  T peekLast() {
+    int max = 0;
+    for (int i = 1; i < size; i++) {
+      if (isBefore(max, i)) {
+        max = i;
+      }
+    }
+    return size == 0 ? null : value(max);
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void clear() {
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T value(final int index) {
+    return (T) values[index];
+  }
+
+  private void siftUp(
+      int index, final long timestamp, final long sequenceNumber, final Object value) {
+    while (index > 0) {
+      final int parent = (index - 1) >>> 1;
+      if (compare(timestamp, sequenceNumber, timestamps[parent], sequenceNumbers[parent]) >= 0) {
+        break;
+      }
+      set(index, timestamps[parent], sequenceNumbers[parent], values[parent]);
+      index = parent;
+    }
+    set(index, timestamp, sequenceNumber, value);
+  }
+
+  private void siftDown(
+      int index, final long timestamp, final long sequenceNumber, final Object value) {
+    final int half = size >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      final int right = child + 1;
+      if (right < size && isBefore(right, child)) {
+        child = right;
+      }
+      if (compare(timestamp, sequenceNumber, timestamps[child], sequenceNumbers[child]) <= 0) {
+        break;
+      }
+      set(index, timestamps[child], sequenceNumbers[child], values[child]);
+      index = child;
+    }
+    set(index, timestamp, sequenceNumber, value);
+  }
+
+  private boolean isBefore(final int i, final int j) {
+    return compare(timestamps[i], sequenceNumbers[i], timestamps[j], sequenceNumbers[j]) < 0;
+  }
+
+  private void set(
+      final int index, final long timestamp, final long sequenceNumber, final Object value) {
+    timestamps[index] = timestamp;
+    sequenceNumbers[index] = sequenceNumber;
+    values[index] = value;
+  }
+}
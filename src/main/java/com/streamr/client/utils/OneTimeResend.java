@@ -3,33 +3,33 @@ package com.streamr.client.utils;
 import com.streamr.client.protocol.control_layer.ControlMessage;
 import com.streamr.client.subs.Subscription;
 import org.java_websocket.client.WebSocketClient;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-public class OneTimeResend extends Thread {
-    private static final Logger log = LoggerFactory.getLogger(OneTimeResend.class);
+/**
+ * Sends a resend request a second time, in case the messages requested the first time were not
+ * available yet. Scheduled with {@link #schedule}, so that pending second resends cost no threads.
+ */
+public class OneTimeResend implements Runnable {
+  private final WebSocketClient ws;
+  private final ControlMessage controlMessage;
+  private final Subscription sub;
 
-    private WebSocketClient ws;
-    private ControlMessage controlMessage;
-    private int timeout;
-    private Subscription sub;
+  public OneTimeResend(WebSocketClient ws, ControlMessage controlMessage, Subscription sub) {
+    this.ws = ws;
+    this.controlMessage = controlMessage;
+    this.sub = sub;
+  }
 
-    public OneTimeResend(WebSocketClient ws, ControlMessage controlMessage, int timeout, Subscription sub) {
-        this.ws = ws;
-        this.controlMessage = controlMessage;
-        this.timeout = timeout;
-        this.sub = sub;
-    }
+  /** Sends the request after {@code timeout} milliseconds unless cancelled before that. */
+  public static HashedWheelTimer.Timeout schedule(
+      WebSocketClient ws, ControlMessage controlMessage, int timeout, Subscription sub) {
+    return HashedWheelTimer.getDefault()
+        .schedule(new OneTimeResend(ws, controlMessage, sub), timeout);
+  }
 
-    @Override
-    public void run() {
-        try {
-            Thread.sleep(timeout);
-            if (!isInterrupted() && ws.isOpen() && sub.isSubscribed()) {
-                ws.send(controlMessage.toJson());
-            }
-        } catch (InterruptedException e) {
-            log.warn("Second resend request was canceled.");
-        }
+  @Override
+  public void run() {
+    if (ws.isOpen() && sub.isSubscribed()) {
+      ws.send(controlMessage.toJson());
     }
+  }
 }
@@ -0,0 +1,184 @@
+package com.streamr.client.utils;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks on a pool of threads, then runs each task's completion handler in the order the tasks
+ * were submitted. Completion handlers run one at a time, so they need no synchronization among
+ * themselves. A finished task waits in a re-sequencing buffer until every task submitted before it
+ * has completed.
+ *
+ * <p>The order is kept within a {@link Lane}. Lanes share the threads of the executor, but a task
+ * only waits for the earlier tasks of its own lane, so a slow task holds up only its own lane.
+ * {@link #execute(Supplier, BiConsumer)} uses a lane of its own.
+ */
+public class OrderPreservingExecutor {
+  private static final Logger log = LoggerFactory.getLogger(OrderPreservingExecutor.class);
+  private static final AtomicInteger poolCounter = new AtomicInteger();
+
+  private final int maxInFlight;
+  private final ExecutorService executor;
+  private final Lane defaultLane;
+
+  private static final class Slot<T> {
+    private final BiConsumer<T, Throwable> then;
+    private T result;
+    private Throwable error;
+    private boolean done = false;
+
+    private Slot(final BiConsumer<T, Throwable> then) {
+      this.then = then;
+    }
+
+    private void complete() {
+      try {
+        then.accept(result, error);
+      } catch (RuntimeException e) {
+        log.error("Completion handler failed", e);
+      }
+    }
+  }
+
+  /** A sequence of tasks whose completion handlers run in submission order. */
+  public final class Lane {
+    // Tasks running or waiting for their turn to complete, in submission order. Guarded by this.
+    private final ArrayDeque<Slot<?>> inFlight = new ArrayDeque<>();
+    private boolean draining = false;
+
+    private Lane() {}
+
+    /**
+     * Runs {@code task} on a worker thread, then {@code then} with its result or exception once
+     * all earlier tasks of this lane have completed. A null {@code task} only takes a place in the
+     * order. Blocks while {@code maxInFlight} tasks of this lane are in flight. If interrupted
+     * while blocked, {@code then} is called right away with the {@link InterruptedException}.
+     */
+    public <T> void execute(final Supplier<T> task, final BiConsumer<T, Throwable> then) {
+      final Slot<T> slot = new Slot<>(then);
+      synchronized (this) {
+        while (inFlight.size() >= maxInFlight) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            slot.error = e;
+            slot.complete();
+            return;
+          }
+        }
+        inFlight.add(slot);
+        if (task == null) {
+          slot.done = true;
+        }
+      }
+      if (task == null) {
+        drain();
+      } else {
+        executor.execute(() -> run(slot, task));
+      }
+    }
+
+    private <T> void run(final Slot<T> slot, final Supplier<T> task) {
+      T result = null;
+      Throwable error = null;
+      try {
+        result = task.get();
+      } catch (Throwable e) {
+        error = e;
+        if (e instanceof Error) {
+          throw (Error) e;
+        }
+      } finally {
+        // Also on an Error, so that the tasks after this one aren't held back forever
+        synchronized (this) {
+          slot.result = result;
+          slot.error = error;
+          slot.done = true;
+        }
+        drain();
+      }
+    }
+
+    /**
+     * Completes finished tasks from the head of the buffer. Only one thread drains at a time,
+     * others just mark their task done and let the draining thread complete it.
+     */
+    private void drain() {
+      synchronized (this) {
+        if (draining) {
+          return;
+        }
+        draining = true;
+      }
+      boolean stopped = false;
+      try {
+        while (true) {
+          final Slot<?> slot;
+          synchronized (this) {
+            slot = inFlight.peek();
+            if (slot == null || !slot.done) {
+              draining = false;
+              stopped = true;
+              return;
+            }
+            inFlight.poll();
+            notifyAll();
+          }
+          slot.complete();
+        }
+      } finally {
+        if (!stopped) {
+          // A completion handler threw an Error, let the next finished task drain again
+          synchronized (this) {
+            draining = false;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @param name prefix of the worker thread names
+   * @param threads number of worker threads
+   * @param maxInFlight maximum number of tasks of a lane running or waiting to complete, after
+   *     which {@link Lane#execute(Supplier, BiConsumer)} blocks
+   */
+  public OrderPreservingExecutor(final String name, final int threads, final int maxInFlight) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive: " + threads);
+    }
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+    }
+    this.maxInFlight = maxInFlight;
+    final int pool = poolCounter.incrementAndGet();
+    final AtomicInteger threadCounter = new AtomicInteger();
+    this.executor =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              final Thread thread =
+                  new Thread(runnable, name + "-" + pool + "-" + threadCounter.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.defaultLane = new Lane();
+  }
+
+  /** Returns a new lane, ordered independently of the other lanes. */
+  public Lane newLane() {
+    return new Lane();
+  }
+
+  /** Same as {@link Lane#execute(Supplier, BiConsumer)} on the default lane. */
+  public <T> void execute(final Supplier<T> task, final BiConsumer<T, Throwable> then) {
+    defaultLane.execute(task, then);
+  }
+}
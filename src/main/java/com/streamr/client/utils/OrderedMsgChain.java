@@ -1,9 +1,10 @@
 package com.streamr.client.utils;
 
 import com.streamr.client.exceptions.GapFillFailedException;
+import com.streamr.client.options.BufferOverflowPolicy;
 import com.streamr.client.protocol.common.MessageRef;
 import com.streamr.client.protocol.message_layer.StreamMessage;
-import java.util.*;
+import java.io.UncheckedIOException;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import org.slf4j.Logger;
@@ -22,9 +23,26 @@ public class OrderedMsgChain {
   private final Function<GapFillFailedException, Void> gapFillFailedHandler;
   private final long propagationTimeout;
   private final long resendTimeout;
-  private final PriorityQueue<StreamMessage> queue;
-  private MessageRef lastReceived = null;
-  private Timer gap = null;
+  private final MessageRefHeap<StreamMessage> queue = new MessageRefHeap<>();
+  private final BufferBudget bufferBudget;
+  // Bytes reserved from bufferBudget for the queued messages
+  private long queuedBytes = 0;
+  // Positions in the spill file of the messages that didn't fit in the budget. Together with queue
+  // they form the queue of the chain.
+  private final MessageRefHeap<Long> spilled = new MessageRefHeap<>();
+  // The head of spilled once it has been read from disk
+  private StreamMessage spilledHead = null;
+  // Reference of the newest message dropped because the budget was used up, so that the gap fill
+  // covers it even if nothing is queued
+  private boolean hasDropped = false;
+  private long droppedTimestamp;
+  private long droppedSequenceNumber;
+  // Reference of the last processed message, kept as primitives so that comparing against it
+  // doesn't allocate
+  private boolean hasLastReceived = false;
+  private long lastReceivedTimestamp;
+  private long lastReceivedSequenceNumber;
+  private HashedWheelTimer.Timeout gap = null;
   private int gapRequestCount = 0;
   private final boolean skipGapsOnFullQueue;
   private final GapFillFailedException gapException = null;
@@ -37,7 +55,8 @@ public class OrderedMsgChain {
       Function<GapFillFailedException, Void> gapFillFailedHandler,
       long propagationTimeout,
       long resendTimeout,
-      boolean skipGapsOnFullQueue) {
+      boolean skipGapsOnFullQueue,
+      BufferBudget bufferBudget) {
     this.publisherId = publisherId;
     this.msgChainId = msgChainId;
     this.inOrderHandler = inOrderHandler;
@@ -46,14 +65,28 @@ public class OrderedMsgChain {
     this.propagationTimeout = propagationTimeout;
     this.resendTimeout = resendTimeout;
     this.skipGapsOnFullQueue = skipGapsOnFullQueue;
-    queue =
-        new PriorityQueue<>(
-            new Comparator<StreamMessage>() {
-              @Override
-              public int compare(StreamMessage o1, StreamMessage o2) {
-                return o1.getMessageRef().compareTo(o2.getMessageRef());
-              }
-            });
+    this.bufferBudget = bufferBudget;
+  }
+
+  public OrderedMsgChain(
+      Address publisherId,
+      String msgChainId,
+      Consumer<StreamMessage> inOrderHandler,
+      GapHandlerFunction gapHandler,
+      Function<GapFillFailedException, Void> gapFillFailedHandler,
+      long propagationTimeout,
+      long resendTimeout,
+      boolean skipGapsOnFullQueue) {
+    this(
+        publisherId,
+        msgChainId,
+        inOrderHandler,
+        gapHandler,
+        gapFillFailedHandler,
+        propagationTimeout,
+        resendTimeout,
+        skipGapsOnFullQueue,
+        BufferBudget.UNLIMITED);
   }
 
   public OrderedMsgChain(
@@ -78,55 +111,221 @@ public class OrderedMsgChain {
   }
 
   public synchronized void add(StreamMessage unorderedMsg) {
-    MessageRef ref = unorderedMsg.getMessageRef();
-    if (lastReceived != null && ref.compareTo(lastReceived) <= 0) {
-      log.debug(
-          "Already received message: "
-              + ref
-              + ", lastReceivedMsgRef: "
-              + lastReceived
-              + ". Ignoring message.");
+    if (isAlreadyReceived(unorderedMsg)) {
+      if (log.isDebugEnabled()) {
+        log.debug(
+            "Already received message: "
+                + unorderedMsg.getMessageRef()
+                + ", lastReceivedMsgRef: "
+                + getLastReceived()
+                + ". Ignoring message.");
+      }
       return;
     }
     if (isNextMessage(unorderedMsg)) {
       process(unorderedMsg);
       checkQueue();
+      checkDropped();
     } else {
       if (gap == null) {
         scheduleGap();
       }
       // Prevent memory exhaustion under unusual conditions by limiting the queue size
-      if (queue.size() < MAX_QUEUE_SIZE) {
-        queue.offer(unorderedMsg);
-      } else {
-
-        // Form diagnosis string
-        List<StreamMessage> queueAsArrayList = new ArrayList<>(queue);
-        String diagnosisString =
-            String.format(
-                "Queue for %s::%d was (%s, ..., %s) and new message is %s",
-                unorderedMsg.getStreamId(),
-                unorderedMsg.getStreamPartition(),
-                queueAsArrayList.get(0).getMessageRef(),
-                queueAsArrayList.get(queueAsArrayList.size() - 1).getMessageRef(),
-                unorderedMsg.getMessageRef());
-
+      if (queue.size() >= MAX_QUEUE_SIZE) {
         if (skipGapsOnFullQueue) {
-          log.warn("Queue is full. Emptying and processing new message. " + diagnosisString);
-          clearGap();
-          queue.clear();
-          process(unorderedMsg);
+          log.warn(
+              "Queue is full. Emptying and processing new message. " + diagnosis(unorderedMsg));
+          skipGap(unorderedMsg);
         } else {
-          throw new IllegalStateException("Queue is full! Message." + diagnosisString);
+          throw new IllegalStateException("Queue is full! Message." + diagnosis(unorderedMsg));
         }
+        return;
+      }
+      // The queues of all chains share the byte budget
+      long bytes = bufferBudget.tryReserve(unorderedMsg);
+      if (bytes >= 0) {
+        queue.offer(unorderedMsg.getTimestamp(), unorderedMsg.getSequenceNumber(), unorderedMsg);
+        queuedBytes += bytes;
+      } else if (bufferBudget.getPolicy() == BufferOverflowPolicy.SPILL_TO_DISK) {
+        spill(unorderedMsg);
+      } else if (bufferBudget.getPolicy() == BufferOverflowPolicy.SKIP_GAP
+          && !queue.isEmpty()) {
+        log.warn(
+            "Buffer budget of {} bytes is used up. Emptying and processing new message. {}",
+            bufferBudget.getMaxBytes(),
+            diagnosis(unorderedMsg));
+        skipGap(unorderedMsg);
+      } else {
+        log.warn(
+            "Buffer budget of {} bytes is used up. Dropping message {} of {}::{}.",
+            bufferBudget.getMaxBytes(),
+            unorderedMsg.getMessageRef(),
+            unorderedMsg.getStreamId(),
+            unorderedMsg.getStreamPartition());
+        dropped(unorderedMsg);
       }
     }
   }
 
+  private String diagnosis(StreamMessage unorderedMsg) {
+    if (queue.isEmpty()) {
+      return String.format(
+          "Queue for %s::%d was empty and new message is %s",
+          unorderedMsg.getStreamId(),
+          unorderedMsg.getStreamPartition(),
+          unorderedMsg.getMessageRef());
+    }
+    return String.format(
+        "Queue for %s::%d was (%s, ..., %s) and new message is %s",
+        unorderedMsg.getStreamId(),
+        unorderedMsg.getStreamPartition(),
+        queue.peek().getMessageRef(),
+        queue.peekLast().getMessageRef(),
+        unorderedMsg.getMessageRef());
+  }
+
+  private void spill(StreamMessage msg) {
+    try {
+      long position = bufferBudget.getSpillFile().append(msg);
+      spilled.offer(msg.getTimestamp(), msg.getSequenceNumber(), position);
+      spilledHead = null;
+    } catch (UncheckedIOException e) {
+      log.error(
+          "Failed to spill message {} of {}::{} to disk. Dropping it.",
+          msg.getMessageRef(),
+          msg.getStreamId(),
+          msg.getStreamPartition(),
+          e);
+      dropped(msg);
+    }
+  }
+
+  // The message is requested again with the gap fill, which the gap task sends even if nothing is
+  // queued. Messages that fill the gap are processed without taking room from the budget.
+  private void dropped(StreamMessage msg) {
+    if (!hasDropped
+        || MessageRefHeap.compare(
+                msg.getTimestamp(),
+                msg.getSequenceNumber(),
+                droppedTimestamp,
+                droppedSequenceNumber)
+            > 0) {
+      hasDropped = true;
+      droppedTimestamp = msg.getTimestamp();
+      droppedSequenceNumber = msg.getSequenceNumber();
+    }
+  }
+
+  // Whether a dropped message has yet to be processed
+  private boolean isDroppedPending() {
+    if (hasDropped
+        && hasLastReceived
+        && compareToLastReceived(droppedTimestamp, droppedSequenceNumber) <= 0) {
+      hasDropped = false;
+    }
+    return hasDropped;
+  }
+
+  // Once the queue has been processed, keeps a gap scheduled while a dropped message is missing
+  private void checkDropped() {
+    if (hasQueued()) {
+      return;
+    }
+    if (isDroppedPending()) {
+      if (gap == null) {
+        scheduleGap();
+      }
+    } else if (gap != null) {
+      clearGap();
+    }
+  }
+
+  // The last message missing before the next queued or dropped one
+  private MessageRef gapEnd() {
+    if (hasQueued()) {
+      return peekQueued().getPreviousMessageRef();
+    }
+    return new MessageRef(droppedTimestamp, droppedSequenceNumber);
+  }
+
+  private void skipGap(StreamMessage msg) {
+    clearGap();
+    clearQueue();
+    process(msg);
+  }
+
+  /** Empties the queue, giving up on the gap if there is one. */
+  public synchronized void clear() {
+    if (gap != null) {
+      gap.cancel();
+      gap = null;
+    }
+    clearQueue();
+  }
+
+  private void clearQueue() {
+    hasDropped = false;
+    queue.clear();
+    bufferBudget.release(queuedBytes);
+    queuedBytes = 0;
+    while (!spilled.isEmpty()) {
+      bufferBudget.getSpillFile().free(spilled.poll());
+    }
+    spilledHead = null;
+  }
+
+  private boolean hasQueued() {
+    return !queue.isEmpty() || !spilled.isEmpty();
+  }
+
+  // Whether the next message to take is on disk rather than in memory
+  private boolean isSpilledFirst() {
+    return !spilled.isEmpty()
+        && (queue.isEmpty()
+            || MessageRefHeap.compare(
+                    spilled.peekTimestamp(),
+                    spilled.peekSequenceNumber(),
+                    queue.peekTimestamp(),
+                    queue.peekSequenceNumber())
+                < 0);
+  }
+
+  /** Returns the queued message with the smallest reference, whether in memory or on disk. */
+  private StreamMessage peekQueued() {
+    if (!isSpilledFirst()) {
+      return queue.peek();
+    }
+    if (spilledHead == null) {
+      spilledHead = bufferBudget.getSpillFile().read(spilled.peek());
+    }
+    return spilledHead;
+  }
+
+  private void pollQueued() {
+    if (isSpilledFirst()) {
+      bufferBudget.getSpillFile().free(spilled.poll());
+      spilledHead = null;
+    } else {
+      StreamMessage msg = queue.poll();
+      long bytes = BufferBudget.sizeOf(msg);
+      bufferBudget.release(bytes);
+      queuedBytes -= bytes;
+    }
+  }
+
+  /** Number of queued messages that were spilled to disk. */
+  public synchronized int getSpilledMessages() {
+    return spilled.size();
+  }
+
+  /** Estimated size of the queued messages in bytes. */
+  public synchronized long getQueuedBytes() {
+    return queuedBytes;
+  }
+
   synchronized void clearGap() {
     if (gap != null) {
       gap.cancel();
-      gap.purge();
       gap = null;
       if (gapException != null) { // TODO: gapException is always null
         throw gapException;
@@ -147,38 +346,55 @@ public class OrderedMsgChain {
   }
 
   public synchronized void setLastReceived(MessageRef lastReceived) {
-    this.lastReceived = lastReceived;
+    hasLastReceived = lastReceived != null;
+    if (hasLastReceived) {
+      lastReceivedTimestamp = lastReceived.getTimestamp();
+      lastReceivedSequenceNumber = lastReceived.getSequenceNumber();
+    }
   }
 
   public synchronized MessageRef getLastReceived() {
-    return lastReceived;
+    return hasLastReceived
+        ? new MessageRef(lastReceivedTimestamp, lastReceivedSequenceNumber)
+        : null;
+  }
+
+  private int compareToLastReceived(long timestamp, long sequenceNumber) {
+    return MessageRefHeap.compare(
+        timestamp, sequenceNumber, lastReceivedTimestamp, lastReceivedSequenceNumber);
+  }
+
+  private boolean isAlreadyReceived(StreamMessage msg) {
+    return hasLastReceived
+        && compareToLastReceived(msg.getTimestamp(), msg.getSequenceNumber()) <= 0;
   }
 
   private boolean isNextMessage(StreamMessage msg) {
-    boolean isFirstMessage = lastReceived == null;
-    return isFirstMessage
-        // is chained and next
-        || (msg.getPreviousMessageRef() != null
-            && msg.getPreviousMessageRef().compareTo(lastReceived) == 0)
-        // is unchained and newer
-        || (msg.getPreviousMessageRef() == null && msg.getMessageRef().compareTo(lastReceived) > 0);
+    if (!hasLastReceived) {
+      return true;
+    }
+    MessageRef previous = msg.getPreviousMessageRef();
+    if (previous != null) {
+      // is chained and next
+      return compareToLastReceived(previous.getTimestamp(), previous.getSequenceNumber()) == 0;
+    }
+    // is unchained and newer
+    return compareToLastReceived(msg.getTimestamp(), msg.getSequenceNumber()) > 0;
   }
 
   private void checkQueue() {
-    while (!queue.isEmpty()) {
-      StreamMessage msg = queue.peek();
+    while (hasQueued()) {
+      StreamMessage msg = peekQueued();
       if (msg != null && isNextMessage(msg)) {
-        queue.poll();
+        pollQueued();
 
         // If the next message is found in the queue, any gap must have been filled, so clear the
         // timer
         clearGap();
         process(msg);
-      } else if (msg != null
-          && lastReceived != null
-          && msg.getMessageRef().compareTo(lastReceived) <= 0) {
+      } else if (msg != null && isAlreadyReceived(msg)) {
         // If there are old (already received) messages in the queue for any reason, remove them
-        queue.poll();
+        pollQueued();
       } else {
         // Nothing further can be processed from the queue
         break;
@@ -187,29 +403,35 @@ public class OrderedMsgChain {
   }
 
   private void process(StreamMessage msg) {
-    lastReceived = msg.getMessageRef();
+    hasLastReceived = true;
+    lastReceivedTimestamp = msg.getTimestamp();
+    lastReceivedSequenceNumber = msg.getSequenceNumber();
     inOrderHandler.accept(msg);
   }
 
   private void scheduleGap() {
     gapRequestCount = 0;
-    gap = new Timer(true);
-    TimerTask task =
-        new TimerTask() {
+    Runnable task =
+        new Runnable() {
           @Override
           public void run() {
             synchronized (OrderedMsgChain.this) {
               // Make sure nothing further can be processed from the queue
               checkQueue();
 
-              // Make sure a gapfill is still scheduled and there is a queued message
-              if (gap == null || queue.isEmpty()) {
+              // Make sure a gapfill is still scheduled and there is a queued or dropped message
+              if (gap == null) {
+                checkDropped();
+                return;
+              }
+              if (!hasQueued() && !isDroppedPending()) {
+                clearGap();
                 return;
               }
 
               MessageRef from =
-                  new MessageRef(lastReceived.getTimestamp(), lastReceived.getSequenceNumber() + 1);
-              MessageRef to = queue.peek().getPreviousMessageRef();
+                  new MessageRef(lastReceivedTimestamp, lastReceivedSequenceNumber + 1);
+              MessageRef to = gapEnd();
 
               // Sanity check
               if (from.compareTo(to) > 0) {
@@ -225,9 +447,9 @@ public class OrderedMsgChain {
                 } else {
                   log.error(
                       String.format(
-                          "Failed to request gapfill because the gapHandler is null. streamId %s, streamPartition %d, publisherId %s, msgChainId %s.",
-                          queue.peek().getStreamId(),
-                          queue.peek().getStreamPartition(),
+                          "Failed to request gapfill because the gapHandler is null. from %s, to %s, publisherId %s, msgChainId %s.",
+                          from,
+                          to,
                           publisherId,
                           msgChainId));
                 }
@@ -240,9 +462,9 @@ public class OrderedMsgChain {
                   } else {
                     log.error(
                         String.format(
-                            "Failed to report failed gapfill because gapFillFailedHandler is null. streamId %s, streamPartition %d, publisherId %s, msgChainId %s.",
-                            queue.peek().getStreamId(),
-                            queue.peek().getStreamPartition(),
+                            "Failed to report failed gapfill because gapFillFailedHandler is null. from %s, to %s, publisherId %s, msgChainId %s.",
+                            from,
+                            to,
                             publisherId,
                             msgChainId));
                   }
@@ -254,16 +476,21 @@ public class OrderedMsgChain {
                   // the next
                   // message after the gap.
                   log.warn(
-                      "Unable to fill gap: Max retries reached! Ignoring the error and continuing from the first processable message: "
-                          + queue.peek().getMessageRef());
-                  lastReceived = queue.peek().getPreviousMessageRef();
+                      "Unable to fill gap: Max retries reached! Ignoring the error and continuing after the gap: "
+                          + to);
+                  setLastReceived(to);
                   checkQueue();
+                  checkDropped();
                 }
               }
             }
           }
         };
-    gap.schedule(task, propagationTimeout, resendTimeout);
+    // Off the timer thread, since processing the queue calls the handlers, which can block
+    gap =
+        HashedWheelTimer.getDefault()
+            .schedule(
+                task, propagationTimeout, resendTimeout, HashedWheelTimer.getDefaultWorkers());
   }
 
   // Used in unit test only
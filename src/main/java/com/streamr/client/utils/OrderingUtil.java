@@ -17,7 +17,8 @@ public class OrderingUtil {
   private long propagationTimeout;
   private long resendTimeout;
   private boolean skipGapsOnFullQueue = false;
-  private Map<String, OrderedMsgChain> chains = new HashMap<>();
+  private BufferBudget bufferBudget = BufferBudget.UNLIMITED;
+  private Map<PublisherChain, OrderedMsgChain> chains = new HashMap<>();
 
   public OrderingUtil(
       String streamId,
@@ -70,11 +71,23 @@ public class OrderingUtil {
     }
   }
 
+  /** Empties the queues of all chains, returning their bytes to the buffer budget. */
+  public synchronized void clearQueues() {
+    for (OrderedMsgChain chain : chains.values()) {
+      chain.clear();
+    }
+  }
+
+  /** Sets the budget shared by the queues of the chains. Must be called before adding messages. */
+  public synchronized void setBufferBudget(BufferBudget bufferBudget) {
+    this.bufferBudget = bufferBudget;
+  }
+
   private synchronized OrderedMsgChain getChain(Address publisherId, String msgChainId) {
-    String key = publisherId + msgChainId;
-    if (!chains.containsKey(key)) {
-      chains.put(
-          key,
+    PublisherChain key = PublisherChain.of(publisherId, msgChainId);
+    OrderedMsgChain chain = chains.get(key);
+    if (chain == null) {
+      chain =
           new OrderedMsgChain(
               publisherId,
               msgChainId,
@@ -83,9 +96,11 @@ public class OrderingUtil {
               gapFillFailedHandler,
               propagationTimeout,
               resendTimeout,
-              skipGapsOnFullQueue));
+              skipGapsOnFullQueue,
+              bufferBudget);
+      chains.put(key, chain);
     }
-    return chains.get(key);
+    return chain;
   }
 
   public ArrayList<OrderedMsgChain> getChains() {
@@ -98,7 +113,7 @@ public class OrderingUtil {
 
   public synchronized void addChains(ArrayList<OrderedMsgChain> previousChains) {
     for (OrderedMsgChain chain : previousChains) {
-      String key = chain.getPublisherId() + chain.getMsgChainId();
+      PublisherChain key = PublisherChain.of(chain.getPublisherId(), chain.getMsgChainId());
       OrderedMsgChain newChain =
           new OrderedMsgChain(
               chain.getPublisherId(),
@@ -108,7 +123,8 @@ public class OrderingUtil {
               gapFillFailedHandler,
               propagationTimeout,
               resendTimeout,
-              skipGapsOnFullQueue);
+              skipGapsOnFullQueue,
+              bufferBudget);
       newChain.setLastReceived(chain.getLastReceived());
       chains.put(key, newChain);
     }
@@ -0,0 +1,342 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.exceptions.PublishQueueFullException;
+import com.streamr.client.options.BackpressurePolicy;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of outgoing StreamMessages. Any number of threads can add messages, a single
+ * sender thread sends them in the order they were added.
+ *
+ * <p>Messages are only taken off the queue while connected. While the connection is down they stay
+ * in the queue, subject to the {@link BackpressurePolicy}, and are sent once it is back up. If
+ * sending fails because the connection went down, the message is retried after reconnecting.
+ *
+ * <p>{@link #close()} fails the messages that haven't been sent, including those of threads waiting
+ * for room, and stops the sender thread. The queue can still be used after that, the next message
+ * starts a new sender thread.
+ */
+public class PublishQueue {
+  private static final Logger log = LoggerFactory.getLogger(PublishQueue.class);
+  static final int MAX_BATCH_SIZE = 64;
+  private static final long CONNECTION_POLL_INTERVAL_MILLIS = 100;
+
+  private final int capacity;
+  private final BackpressurePolicy policy;
+  private final BooleanSupplier isConnected;
+  private final Consumer<StreamMessage> sender;
+  private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition readyToSend = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  // Guarded by lock
+  private Thread senderThread = null;
+  // Places held by reservations, guarded by lock
+  private int reserved = 0;
+  // Number of calls to close(), guarded by lock. Threads waiting for room fail if it changes
+  private long closes = 0;
+
+  private static final class Entry {
+    private final StreamMessage message;
+    private final CompletableFuture<StreamMessage> future = new CompletableFuture<>();
+
+    private Entry(final StreamMessage message) {
+      this.message = message;
+    }
+  }
+
+  /**
+   * A place in the queue held for a message that has yet to be created, so that the thread creating
+   * it doesn't wait for room. Must be either used or cancelled.
+   */
+  public final class Reservation {
+    // False if the policy doesn't wait for room, and nothing is held
+    private final boolean holdsPlace;
+    private final AtomicBoolean done = new AtomicBoolean(false);
+
+    private Reservation(final boolean holdsPlace) {
+      this.holdsPlace = holdsPlace;
+    }
+
+    /**
+     * Adds the message in the reserved place. Doesn't block.
+     *
+     * @throws IllegalStateException if the reservation has already been used or cancelled
+     */
+    public CompletableFuture<StreamMessage> add(final StreamMessage message) {
+      if (!done.compareAndSet(false, true)) {
+        throw new IllegalStateException("Reservation already used or cancelled");
+      }
+      return PublishQueue.this.add(message, holdsPlace);
+    }
+
+    /** Releases the reserved place. Does nothing if the reservation has already been used. */
+    public void cancel() {
+      if (done.compareAndSet(false, true) && holdsPlace) {
+        release();
+      }
+    }
+  }
+
+  /**
+   * @param isConnected tells whether {@code sender} can currently send
+   * @param sender sends a single message. If it throws while {@code isConnected} returns false, the
+   *     message is retried after reconnecting. Otherwise the message's future completes with the
+   *     exception.
+   */
+  public PublishQueue(
+      final int capacity,
+      final BackpressurePolicy policy,
+      final BooleanSupplier isConnected,
+      final Consumer<StreamMessage> sender) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.policy = policy;
+    this.isConnected = isConnected;
+    this.sender = sender;
+  }
+
+  /**
+   * Adds a message to the queue. Under {@link BackpressurePolicy#BLOCK} this blocks while the queue
+   * is full.
+   *
+   * @return a future that completes with the message once it has been handed to the connection
+   */
+  public CompletableFuture<StreamMessage> add(final StreamMessage message) {
+    return add(message, false);
+  }
+
+  /**
+   * Under {@link BackpressurePolicy#BLOCK}, waits until there is room and holds a place for one
+   * message. Under the other policies nothing is held, and the policy applies when the message is
+   * added.
+   *
+   * @throws IllegalStateException if the queue is closed while waiting
+   */
+  public Reservation reserve() throws InterruptedException {
+    if (policy != BackpressurePolicy.BLOCK) {
+      return new Reservation(false);
+    }
+    lock.lock();
+    try {
+      final long closesBefore = closes;
+      while (queue.size() + reserved >= capacity) {
+        notFull.await();
+      }
+      if (closes != closesBefore) {
+        throw closed();
+      }
+      reserved++;
+      return new Reservation(true);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private CompletableFuture<StreamMessage> add(final StreamMessage message, final boolean held) {
+    final Entry entry = new Entry(message);
+    Entry dropped = null;
+    lock.lock();
+    try {
+      if (held) {
+        reserved--;
+      } else {
+        final long closesBefore = closes;
+        while (queue.size() + reserved >= capacity) {
+          if (policy == BackpressurePolicy.FAIL) {
+            entry.future.completeExceptionally(new PublishQueueFullException(capacity, policy));
+            return entry.future;
+          } else if (policy == BackpressurePolicy.DROP_OLDEST) {
+            dropped = queue.poll();
+          } else {
+            try {
+              notFull.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              entry.future.completeExceptionally(e);
+              return entry.future;
+            }
+          }
+        }
+        if (closes != closesBefore) {
+          entry.future.completeExceptionally(closed());
+          return entry.future;
+        }
+      }
+      startSenderThread();
+      queue.add(entry);
+      readyToSend.signal();
+    } finally {
+      lock.unlock();
+    }
+    if (dropped != null) {
+      dropped.future.completeExceptionally(new PublishQueueFullException(capacity, policy));
+    }
+    return entry.future;
+  }
+
+  private void release() {
+    lock.lock();
+    try {
+      reserved--;
+      notFull.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Wakes up the sender thread. Call when the connection has been (re-)established. */
+  public void onConnected() {
+    lock.lock();
+    try {
+      readyToSend.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Fails the futures of all messages that haven't been sent yet and stops the sender thread. Call
+   * when disconnecting.
+   */
+  public void close() {
+    final Thread thread;
+    final List<Entry> unsent;
+    lock.lock();
+    try {
+      thread = senderThread;
+      senderThread = null;
+      closes++;
+      unsent = new ArrayList<>(queue);
+      queue.clear();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (thread != null) {
+      // The thread fails the messages it has already taken off the queue
+      thread.interrupt();
+    }
+    for (final Entry entry : unsent) {
+      entry.future.completeExceptionally(closed());
+    }
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void startSenderThread() {
+    if (senderThread == null) {
+      senderThread = new Thread(this::run, "streamr-publish-sender");
+      senderThread.setDaemon(true);
+      senderThread.start();
+    }
+  }
+
+  private static IllegalStateException closed() {
+    return new IllegalStateException("Publish queue closed before the message was sent");
+  }
+
+  private void run() {
+    final ArrayDeque<Entry> batch = new ArrayDeque<>(MAX_BATCH_SIZE);
+    try {
+      sendBatches(batch);
+    } catch (InterruptedException e) {
+      log.debug("Publish sender thread stopped, {} messages left unsent", batch.size());
+    } finally {
+      lock.lock();
+      try {
+        // Unless closed, let the next message start a new thread
+        if (senderThread == Thread.currentThread()) {
+          senderThread = null;
+        }
+      } finally {
+        lock.unlock();
+      }
+      for (final Entry entry : batch) {
+        entry.future.completeExceptionally(closed());
+      }
+    }
+  }
+
+  private void sendBatches(final ArrayDeque<Entry> batch) throws InterruptedException {
+    while (true) {
+      takeBatch(batch);
+      while (!batch.isEmpty()) {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedException();
+        }
+        final Entry entry = batch.peek();
+        try {
+          sender.accept(entry.message);
+        } catch (RuntimeException e) {
+          if (!isConnected.getAsBoolean()) {
+            // Connection went down, try again once it is back up
+            awaitConnection();
+            continue;
+          }
+          batch.poll();
+          entry.future.completeExceptionally(e);
+          continue;
+        }
+        batch.poll();
+        entry.future.complete(entry.message);
+      }
+    }
+  }
+
+  /** Waits until connected and the queue is non-empty, then moves up to a batch of entries. */
+  private void takeBatch(final ArrayDeque<Entry> batch) throws InterruptedException {
+    lock.lock();
+    try {
+      while (queue.isEmpty() || !isConnected.getAsBoolean()) {
+        if (queue.isEmpty()) {
+          readyToSend.await();
+        } else {
+          readyToSend.await(CONNECTION_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+      }
+      // A thread replaced by close() must not take messages added after it
+      if (senderThread != Thread.currentThread()) {
+        throw new InterruptedException();
+      }
+      for (int i = 0; i < MAX_BATCH_SIZE && !queue.isEmpty(); i++) {
+        batch.add(queue.poll());
+      }
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void awaitConnection() throws InterruptedException {
+    lock.lock();
+    try {
+      while (!isConnected.getAsBoolean()) {
+        readyToSend.await(CONNECTION_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+}
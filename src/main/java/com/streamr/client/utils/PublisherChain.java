@@ -0,0 +1,78 @@
+package com.streamr.client.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable publisher-msgChainId pair with a precomputed hash, identifying a message chain within a
+ * stream-partition. Instances obtained with {@link #of} are interned, so looking one up doesn't
+ * allocate.
+ */
+public class PublisherChain {
+  // Interning is only an optimization, so the table is simply emptied when it gets this big
+  static final int MAX_INTERNED_PUBLISHERS = 10000;
+  static final int MAX_INTERNED_CHAINS_PER_PUBLISHER = 1000;
+  private static final ConcurrentMap<Address, ConcurrentMap<String, PublisherChain>> INTERNED =
+      new ConcurrentHashMap<>();
+
+  private final Address publisherId;
+  private final String msgChainId;
+  private final int hash;
+
+  public PublisherChain(Address publisherId, String msgChainId) {
+    this.publisherId = publisherId;
+    this.msgChainId = msgChainId;
+    this.hash = 31 * publisherId.hashCode() + msgChainId.hashCode();
+  }
+
+  /** Returns the interned instance for the publisher and msgChainId. */
+  public static PublisherChain of(Address publisherId, String msgChainId) {
+    ConcurrentMap<String, PublisherChain> chains = INTERNED.get(publisherId);
+    if (chains == null) {
+      if (INTERNED.size() >= MAX_INTERNED_PUBLISHERS) {
+        INTERNED.clear();
+      }
+      chains = INTERNED.computeIfAbsent(publisherId, id -> new ConcurrentHashMap<>());
+    }
+    PublisherChain result = chains.get(msgChainId);
+    if (result == null) {
+      if (chains.size() >= MAX_INTERNED_CHAINS_PER_PUBLISHER) {
+        chains.clear();
+      }
+      result = chains.computeIfAbsent(msgChainId, id -> new PublisherChain(publisherId, id));
+    }
+    return result;
+  }
+
+  public Address getPublisherId() {
+    return publisherId;
+  }
+
+  public String getMsgChainId() {
+    return msgChainId;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof PublisherChain)) {
+      return false;
+    }
+    PublisherChain other = (PublisherChain) obj;
+    return hash == other.hash
+        && msgChainId.equals(other.msgChainId)
+        && publisherId.equals(other.publisherId);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return "publisherId: " + publisherId + ", msgChainId: " + msgChainId;
+  }
+}
@@ -0,0 +1,169 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.exceptions.UnsupportedSignatureTypeException;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.nio.charset.StandardCharsets;
+import org.bouncycastle.crypto.digests.KeccakDigest;
+
+/**
+ * Computes the Ethereum signed message hash of the payload that is signed for a {@link
+ * StreamMessage}. The message fields are encoded straight into Keccak-256 instead of first being
+ * concatenated into a payload String, and the length in the Ethereum prefix is computed from the
+ * fields. The content is hashed from its UTF-8 bytes as they are.
+ *
+ * <p>Instances are not thread-safe.
+ */
+final class SigningPayloadHasher {
+  private static final byte[] SIGN_MAGIC =
+      "\u0019Ethereum Signed Message:\n".getBytes(StandardCharsets.UTF_8);
+  private static final int HASH_SIZE = 32;
+
+  private final KeccakDigest digest = new KeccakDigest(HASH_SIZE * 8);
+  private final byte[] buffer = new byte[128];
+  private int position;
+
+  byte[] hash(final StreamMessage msg, final StreamMessage.SignatureType signatureType) {
+    final long length = appendPayload(msg, signatureType, false);
+    digest.update(SIGN_MAGIC, 0, SIGN_MAGIC.length);
+    appendLong(length, true);
+    appendPayload(msg, signatureType, true);
+    flush();
+    final byte[] hash = new byte[HASH_SIZE];
+    digest.doFinal(hash, 0);
+    return hash;
+  }
+
+  /**
+   * Goes through the fields of the payload in order. Returns the payload length in bytes and, if
+   * {@code write} is true, also feeds the fields to the digest.
+   */
+  private long appendPayload(
+      final StreamMessage msg,
+      final StreamMessage.SignatureType signatureType,
+      final boolean write) {
+    long length = 0;
+    if (signatureType == StreamMessage.SignatureType.ETH_LEGACY) {
+      length += appendString(msg.getStreamId(), write);
+      length += appendLong(msg.getStreamPartition(), write);
+      length += appendLong(msg.getTimestamp(), write);
+      length += appendString(msg.getPublisherId().toString(), write);
+      length += appendBytes(msg.getSerializedContentAsBytes(), write);
+      return length;
+    } else if (signatureType == StreamMessage.SignatureType.ETH) {
+      length += appendString(msg.getStreamId(), write);
+      length += appendLong(msg.getStreamPartition(), write);
+      length += appendLong(msg.getTimestamp(), write);
+      length += appendLong(msg.getSequenceNumber(), write);
+      length += appendString(msg.getPublisherId().toString(), write);
+      length += appendString(msg.getMsgChainId(), write);
+      if (msg.getPreviousMessageRef() != null) {
+        length += appendLong(msg.getPreviousMessageRef().getTimestamp(), write);
+        length += appendLong(msg.getPreviousMessageRef().getSequenceNumber(), write);
+      }
+      length += appendBytes(msg.getSerializedContentAsBytes(), write);
+      if (msg.getNewGroupKey() != null) {
+        length += appendString(msg.getNewGroupKey().serialize(), write);
+      }
+      return length;
+    }
+    throw new UnsupportedSignatureTypeException(signatureType);
+  }
+
+  private int appendBytes(final byte[] bytes, final boolean write) {
+    if (write) {
+      flush();
+      digest.update(bytes, 0, bytes.length);
+    }
+    return bytes.length;
+  }
+
+  /** Appends the decimal representation of the value, as {@link StringBuilder#append} would. */
+  private int appendLong(final long value, final boolean write) {
+    if (value == Long.MIN_VALUE) {
+      return appendString(Long.toString(value), write);
+    }
+    long remaining = Math.abs(value);
+    int digits = 1;
+    for (long limit = 10; digits < 19 && remaining >= limit; limit *= 10) {
+      digits++;
+    }
+    final int length = value < 0 ? digits + 1 : digits;
+    if (write) {
+      ensureCapacity(length);
+      int i = position + length;
+      do {
+        buffer[--i] = (byte) ('0' + remaining % 10);
+        remaining /= 10;
+      } while (remaining > 0);
+      if (value < 0) {
+        buffer[--i] = '-';
+      }
+      position += length;
+    }
+    return length;
+  }
+
+  /**
+   * Appends the UTF-8 encoding of the string, as {@link String#getBytes} would produce it:
+   * unpaired surrogates are encoded as '?'.
+   */
+  private int appendString(final String s, final boolean write) {
+    int length = 0;
+    final int n = s.length();
+    for (int i = 0; i < n; i++) {
+      final char c = s.charAt(i);
+      if (write) {
+        ensureCapacity(4);
+      }
+      if (c < 0x80) {
+        length += 1;
+        if (write) {
+          buffer[position++] = (byte) c;
+        }
+      } else if (c < 0x800) {
+        length += 2;
+        if (write) {
+          buffer[position++] = (byte) (0xC0 | (c >> 6));
+          buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < n
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+        length += 4;
+        if (write) {
+          buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+          buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+          buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+          buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+      } else if (Character.isSurrogate(c)) {
+        length += 1;
+        if (write) {
+          buffer[position++] = '?';
+        }
+      } else {
+        length += 3;
+        if (write) {
+          buffer[position++] = (byte) (0xE0 | (c >> 12));
+          buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+    }
+    return length;
+  }
+
+  private void ensureCapacity(final int bytes) {
+    if (position + bytes > buffer.length) {
+      flush();
+    }
+  }
+
+  private void flush() {
+    if (position > 0) {
+      digest.update(buffer, 0, position);
+      position = 0;
+    }
+  }
+}
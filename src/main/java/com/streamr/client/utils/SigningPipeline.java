@@ -0,0 +1,67 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Signs messages on a pool of worker threads and passes them on in the order they were submitted,
+ * so that message chains stay in order even though signing completes out of order.
+ */
+public class SigningPipeline {
+  private final UnaryOperator<StreamMessage> signer;
+  private final OrderPreservingExecutor executor;
+
+  /**
+   * @param signer signs a message, must be thread-safe
+   * @param threads number of signing threads
+   * @param maxInFlight maximum number of messages being signed or waiting to be passed on, after
+   *     which {@link #submit(StreamMessage, Function)} blocks
+   */
+  public SigningPipeline(
+      final UnaryOperator<StreamMessage> signer, final int threads, final int maxInFlight) {
+    this.signer = signer;
+    this.executor = new OrderPreservingExecutor("streamr-signer", threads, maxInFlight);
+  }
+
+  /**
+   * Submits a message for signing. Messages are passed on in the order of the calls to this
+   * method, so callers must submit the messages of a chain in chain order. Blocks while {@code
+   * maxInFlight} messages are in flight.
+   *
+   * @param next receives the signed message, after the messages submitted before it. Not called if
+   *     signing fails
+   * @return a future that completes with the result of passing the signed message on, or
+   *     exceptionally if signing failed
+   */
+  public CompletableFuture<StreamMessage> submit(
+      final StreamMessage unsigned,
+      final Function<StreamMessage, CompletableFuture<StreamMessage>> next) {
+    final CompletableFuture<StreamMessage> result = new CompletableFuture<>();
+    executor.execute(
+        () -> signer.apply(unsigned),
+        (signed, error) -> {
+          if (error != null) {
+            result.completeExceptionally(error);
+            return;
+          }
+          final CompletableFuture<StreamMessage> sent;
+          try {
+            sent = next.apply(signed);
+          } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+          }
+          sent.whenComplete(
+              (message, e) -> {
+                if (e != null) {
+                  result.completeExceptionally(e);
+                } else {
+                  result.complete(message);
+                }
+              });
+        });
+    return result;
+  }
+}
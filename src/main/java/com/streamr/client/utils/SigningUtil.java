@@ -1,19 +1,20 @@
 package com.streamr.client.utils;
 
-import com.streamr.client.exceptions.UnsupportedSignatureTypeException;
 import com.streamr.client.protocol.message_layer.StreamMessage;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import org.web3j.crypto.ECDSASignature;
 import org.web3j.crypto.ECKeyPair;
-import org.web3j.crypto.Hash;
 import org.web3j.crypto.Keys;
 import org.web3j.crypto.Sign;
 import org.web3j.utils.Numeric;
 
 public class SigningUtil {
-  private static final String SIGN_MAGIC = "\u0019Ethereum Signed Message:\n";
+  private static final ThreadLocal<SigningPayloadHasher> HASHER =
+      ThreadLocal.withInitial(SigningPayloadHasher::new);
+  private static final int SIGNATURE_SIZE = 65;
+  private static final int PUBLIC_KEY_SIZE = 64;
   private final ECKeyPair account;
 
   public SigningUtil(ECKeyPair account) {
@@ -22,7 +23,9 @@ public class SigningUtil {
 
   private StreamMessage signStreamMessage(
       final StreamMessage msg, final StreamMessage.SignatureType signatureType) {
-    final String signature = sign(getPayloadToSignOrVerify(msg, signatureType), account);
+    final byte[] messageHash = HASHER.get().hash(msg, signatureType);
+    final String signature =
+        new SignatureData(Sign.signMessage(messageHash, account, false)).toHex();
     final StreamMessage m =
         new StreamMessage.Builder(msg)
             .withSignature(signature)
@@ -46,59 +49,62 @@ public class SigningUtil {
     if (msg.getSignature() == null) {
       return false;
     }
-    String payload = getPayloadToSignOrVerify(msg, msg.getSignatureType());
-    return verify(payload, msg.getSignature(), msg.getPublisherId());
+    return hasValidSignature(msg, getMessageHash(msg));
   }
 
-  private static String getPayloadToSignOrVerify(
-      StreamMessage msg, StreamMessage.SignatureType signatureType) {
-    if (signatureType == StreamMessage.SignatureType.ETH_LEGACY) {
-      StringBuilder sb = new StringBuilder(msg.getStreamId());
-      sb.append(msg.getStreamPartition());
-      sb.append(msg.getTimestamp());
-      sb.append(msg.getPublisherId());
-      sb.append(msg.getSerializedContent());
-      return sb.toString();
-    } else if (signatureType == StreamMessage.SignatureType.ETH) {
-      StringBuilder sb = new StringBuilder(msg.getStreamId());
-      sb.append(msg.getStreamPartition());
-      sb.append(msg.getTimestamp());
-      sb.append(msg.getSequenceNumber());
-      sb.append(msg.getPublisherId());
-      sb.append(msg.getMsgChainId());
-      if (msg.getPreviousMessageRef() != null) {
-        sb.append(msg.getPreviousMessageRef().getTimestamp());
-        sb.append(msg.getPreviousMessageRef().getSequenceNumber());
-      }
-      sb.append(msg.getSerializedContent());
-      if (msg.getNewGroupKey() != null) {
-        sb.append(msg.getNewGroupKey().serialize());
-      }
-      return sb.toString();
+  /** Like {@link #hasValidSignature(StreamMessage)}, with the hash from {@link #getMessageHash}. */
+  public static boolean hasValidSignature(StreamMessage msg, byte[] messageHash) {
+    if (msg.getSignature() == null) {
+      return false;
     }
-    throw new UnsupportedSignatureTypeException(signatureType);
+    return verify(messageHash, msg.getSignature(), msg.getPublisherId());
   }
 
-  private static byte[] calculateMessageHash(String message) {
-    int msgLen = message.getBytes(StandardCharsets.UTF_8).length;
-    String s = String.format("%s%d%s", SIGN_MAGIC, msgLen, message);
-    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
-    return Hash.sha3(bytes);
+  /** Hash of the fields of the message that its signature covers, for its signature type. */
+  public static byte[] getMessageHash(StreamMessage msg) {
+    return HASHER.get().hash(msg, msg.getSignatureType());
   }
 
-  private static boolean verify(String data, String signature, Address address) {
-    byte[] messageHash = calculateMessageHash(data);
-    Address result = recoverAddress(messageHash, signature, address);
-    return address.equals(result);
+  private static boolean verify(byte[] messageHash, String signatureHex, Address address) {
+    byte[] source = Numeric.hexStringToByteArray(signatureHex);
+    ECDSASignature signature =
+        new ECDSASignature(toBigInteger(source, 0, 32), toBigInteger(source, 32, 64));
+    int recoveryId = getRecoveryId(source);
+    if (recoveryId < 0) {
+      return recoverAddress(messageHash, signature, address) != null;
+    }
+    BigInteger publicKey;
+    try {
+      publicKey = Sign.recoverFromSignature(recoveryId, signature, messageHash);
+    } catch (RuntimeException e) {
+      return false;
+    }
+    if (publicKey == null) {
+      return false;
+    }
+    byte[] recovered = Keys.getAddress(Numeric.toBytesPadded(publicKey, PUBLIC_KEY_SIZE));
+    return Arrays.equals(recovered, Numeric.hexStringToByteArray(address.toString()));
   }
 
-  private static Address recoverAddress(byte[] messageHash, String signatureHex, Address original) {
-    final ECDSASignature signature;
+  /**
+   * Returns the recovery id encoded in the v byte of a 65-byte signature, or -1 if the signature
+   * doesn't carry a usable one. Both the Ethereum (27/28) and the raw (0/1) conventions are
+   * accepted.
+   */
+  private static int getRecoveryId(byte[] signature) {
+    if (signature.length != SIGNATURE_SIZE) {
+      return -1;
+    }
+    int v = signature[SIGNATURE_SIZE - 1] & 0xFF;
+    if (v >= 27) {
+      v -= 27;
+    }
+    return v <= 3 ? v : -1;
+  }
 
-    byte[] source = Numeric.hexStringToByteArray(signatureHex);
-    BigInteger r = toBigInteger(source, 0, 32);
-    BigInteger s = toBigInteger(source, 32, 64);
-    signature = new ECDSASignature(r, s);
+  /** Slow path for signatures without a recovery id: tries each possible public key in turn. */
+  private static Address recoverAddress(
+      byte[] messageHash, ECDSASignature signature, Address original) {
     for (byte i = 0; i < 4; i++) {
       BigInteger publicKey;
       try {
@@ -0,0 +1,243 @@
+package com.streamr.client.utils;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only store of serialized StreamMessages in memory-mapped segment files. Messages are
+ * appended to the newest segment and read back by the position returned from {@link #append}. A
+ * segment file is deleted once it is full and all of its messages have been freed.
+ *
+ * <p>The files are opened with {@link StandardOpenOption#DELETE_ON_CLOSE}, so on most systems
+ * they are unlinked right away. A freed segment is unmapped and closed, which reclaims its disk
+ * space. The mapped segments together are limited to {@code maxBytes}, after which appending
+ * fails.
+ */
+final class SpillFile {
+  private static final Logger log = LoggerFactory.getLogger(SpillFile.class);
+  static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+  private static final int LENGTH_BYTES = 4;
+  private static final Consumer<MappedByteBuffer> UNMAPPER = createUnmapper();
+
+  private final Path directory;
+  private final int segmentSize;
+  private final long maxBytes;
+  // Guarded by this
+  private final Map<Integer, Segment> segments = new HashMap<>();
+  private Segment current = null;
+  private int nextSegmentId = 0;
+  private long mappedBytes = 0;
+  // Segments before this one were deleted by close(), freeing their messages is a no-op
+  private int firstOpenSegmentId = 0;
+
+  private static final class Segment {
+    private final int id;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int messages = 0;
+
+    private Segment(final int id, final FileChannel channel, final MappedByteBuffer buffer) {
+      this.id = id;
+      this.channel = channel;
+      this.buffer = buffer;
+    }
+
+    // The buffer must not be used afterwards
+    private void close() {
+      UNMAPPER.accept(buffer);
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.warn("Failed to close spill segment {}", id, e);
+      }
+    }
+  }
+
+  /**
+   * @param directory where the segment files are created. Created if it doesn't exist.
+   * @param maxBytes total size of the segments, after which {@link #append} fails
+   */
+  SpillFile(final Path directory, final int segmentSize, final long maxBytes) {
+    if (maxBytes < 1) {
+      throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+    }
+    this.directory = directory;
+    this.segmentSize = (int) Math.min(segmentSize, maxBytes);
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Writes the message to disk and returns its position.
+   *
+   * @throws UncheckedIOException if writing fails or the segments would exceed {@code maxBytes}
+   */
+  synchronized long append(final StreamMessage msg) {
+    final byte[] bytes = msg.toBytes();
+    final int recordSize = LENGTH_BYTES + bytes.length;
+    if (current == null || current.buffer.remaining() < recordSize) {
+      seal();
+      final int size = Math.max(segmentSize, recordSize);
+      if (mappedBytes + size > maxBytes) {
+        throw new UncheckedIOException(
+            new IOException("Spilled messages would exceed " + maxBytes + " bytes"));
+      }
+      current = createSegment(size);
+    }
+    final int offset = current.buffer.position();
+    current.buffer.putInt(bytes.length);
+    current.buffer.put(bytes);
+    current.messages++;
+    return ((long) current.id << 32) | offset;
+  }
+
+  /** Reads the message at {@code position}. The message stays on disk until freed. */
+  synchronized StreamMessage read(final long position) {
+    final ByteBuffer view = getSegment(position).buffer.duplicate();
+    view.position((int) position);
+    final byte[] bytes = new byte[view.getInt()];
+    view.get(bytes);
+    try {
+      return StreamMessage.fromBytes(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Marks the message at {@code position} as no longer needed. */
+  synchronized void free(final long position) {
+    if ((int) (position >>> 32) < firstOpenSegmentId) {
+      return;
+    }
+    final Segment segment = getSegment(position);
+    segment.messages--;
+    if (segment.messages == 0 && segment != current) {
+      remove(segment);
+    }
+  }
+
+  /** Number of segments that hold messages or are being written to. */
+  synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  /** Total size of the segments on disk. */
+  synchronized long getMappedBytes() {
+    return mappedBytes;
+  }
+
+  /**
+   * Deletes all segment files. The positions of the messages appended so far are no longer valid,
+   * but new messages can still be appended.
+   */
+  synchronized void close() {
+    for (final Segment segment : segments.values()) {
+      segment.close();
+    }
+    segments.clear();
+    mappedBytes = 0;
+    current = null;
+    firstOpenSegmentId = nextSegmentId;
+  }
+
+  private Segment getSegment(final long position) {
+    final Segment segment = segments.get((int) (position >>> 32));
+    if (segment == null) {
+      throw new IllegalArgumentException("No spilled message at position " + position);
+    }
+    return segment;
+  }
+
+  // Stops writing to the current segment. Until then it is kept even if all its messages are freed
+  private void seal() {
+    if (current != null && current.messages == 0) {
+      remove(current);
+    }
+    current = null;
+  }
+
+  private void remove(final Segment segment) {
+    segments.remove(segment.id);
+    mappedBytes -= segment.buffer.capacity();
+    segment.close();
+  }
+
+  private Segment createSegment(final int size) {
+    final int id = nextSegmentId++;
+    try {
+      Files.createDirectories(directory);
+      final Path path = Files.createTempFile(directory, "streamr-spill-" + id + "-", ".seg");
+      final FileChannel channel =
+          FileChannel.open(
+              path,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.DELETE_ON_CLOSE);
+      final MappedByteBuffer buffer;
+      try {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+      final Segment segment = new Segment(id, channel, buffer);
+      segments.put(id, segment);
+      mappedBytes += size;
+      return segment;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to create spill segment in " + directory, e);
+    }
+  }
+
+  /**
+   * Mapped buffers are otherwise only unmapped when garbage collected, and until then the disk
+   * space of a deleted segment isn't reclaimed. There is no public API for unmapping, so this goes
+   * through the JDK internals, on Java 9 and later through Unsafe.invokeCleaner and on Java 8
+   * through the buffer's Cleaner. If neither is available, unmapping is left to the GC.
+   */
+  private static Consumer<MappedByteBuffer> createUnmapper() {
+    try {
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      final Object unsafe = theUnsafe.get(null);
+      return buffer -> unmap(() -> invokeCleaner.invoke(unsafe, buffer));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Not Java 9 or later
+    }
+    try {
+      final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      return buffer -> unmap(() -> clean.invoke(cleaner.invoke(buffer)));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log.debug("Spill segments are unmapped when garbage collected", e);
+      return buffer -> {};
+    }
+  }
+
+  private interface Unmapping {
+    void run() throws ReflectiveOperationException;
+  }
+
+  private static void unmap(final Unmapping unmapping) {
+    try {
+      unmapping.run();
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log.warn("Failed to unmap spill segment, it is unmapped when garbage collected", e);
+    }
+  }
+}
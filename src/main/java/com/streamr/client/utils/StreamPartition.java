@@ -1,37 +1,99 @@
 package com.streamr.client.utils;
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable stream-partition pair with a precomputed hash, for use as a map key. Instances obtained
+ * with {@link #of} are interned for partitions below {@link #MAX_INTERNED_PARTITIONS}, so looking
+ * one up doesn't allocate.
+ */
 public class StreamPartition {
+  // Interning is only an optimization, so the table is simply emptied when it gets this big
+  static final int MAX_INTERNED_STREAMS = 10000;
+  // The partition comes from the network and indexes an array, so only small ones are interned
+  static final int MAX_INTERNED_PARTITIONS = 256;
+  // Instances by streamId, indexed by partition
+  private static final ConcurrentMap<String, StreamPartition[]> INTERNED =
+      new ConcurrentHashMap<>();
 
-    private String streamId;
-    private int partition;
+  private final String streamId;
+  private final int partition;
+  private final int hash;
 
-    public StreamPartition(String streamId, int partition) {
-        this.streamId = streamId;
-        this.partition = partition;
-    }
+  public StreamPartition(String streamId, int partition) {
+    this.streamId = streamId;
+    this.partition = partition;
+    this.hash = 31 * streamId.hashCode() + partition;
+  }
 
-    public String getStreamId() {
-        return streamId;
+  /** Returns the interned instance for the stream-partition. */
+  public static StreamPartition of(String streamId, int partition) {
+    StreamPartition[] partitions = INTERNED.get(streamId);
+    if (partitions != null && partition >= 0 && partition < partitions.length) {
+      StreamPartition result = partitions[partition];
+      if (result != null) {
+        return result;
+      }
     }
+    return intern(streamId, partition);
+  }
 
-    public int getPartition() {
-        return partition;
+  private static StreamPartition intern(String streamId, int partition) {
+    StreamPartition result = new StreamPartition(streamId, partition);
+    if (partition < 0 || partition >= MAX_INTERNED_PARTITIONS) {
+      return result;
     }
-
-    @Override
-    public boolean equals(Object obj) {
-        return obj instanceof StreamPartition
-                && ((StreamPartition) obj).getStreamId().equals(streamId)
-                && ((StreamPartition) obj).getPartition() == partition;
+    if (INTERNED.size() >= MAX_INTERNED_STREAMS) {
+      INTERNED.clear();
     }
+    // Arrays are replaced rather than modified, so readers never see a partially written one
+    INTERNED.compute(
+        streamId,
+        (id, partitions) -> {
+          if (partitions != null
+              && partition < partitions.length
+              && partitions[partition] != null) {
+            return partitions;
+          }
+          StreamPartition[] copy =
+              partitions == null
+                  ? new StreamPartition[partition + 1]
+                  : Arrays.copyOf(partitions, Math.max(partitions.length, partition + 1));
+          copy[partition] = result;
+          return copy;
+        });
+    return result;
+  }
 
-    @Override
-    public int hashCode() {
-        return (this.getStreamId() + "-" + getPartition()).hashCode();
-    }
+  public String getStreamId() {
+    return streamId;
+  }
 
-    @Override
-    public String toString() {
-        return "streamId: " + this.getStreamId() + ", partition: " + getPartition();
+  public int getPartition() {
+    return partition;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof StreamPartition)) {
+      return false;
     }
+    StreamPartition other = (StreamPartition) obj;
+    return hash == other.hash && partition == other.partition && streamId.equals(other.streamId);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return "streamId: " + this.getStreamId() + ", partition: " + getPartition();
+  }
 }
@@ -3,64 +3,70 @@ package com.streamr.client.utils;
 import com.streamr.client.exceptions.AlreadySubscribedException;
 import com.streamr.client.exceptions.SubscriptionNotFoundException;
 import com.streamr.client.subs.Subscription;
-
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
 
+/**
+ * Registry of the subscriptions of a client, one per stream-partition. Safe to use from any thread:
+ * lookups don't lock, and iteration doesn't fail if subscriptions are added or removed meanwhile.
+ */
 public class Subscriptions {
 
-    private final Map<String, Map<Integer, Subscription>> subsByStreamIdAndPartition = new HashMap<>();
+  private final ConcurrentMap<StreamPartition, Subscription> subsByStreamPartition =
+      new ConcurrentHashMap<>();
 
-    /**
-     *
-     * @throws AlreadySubscribedException if there is already a subscription for the stream-partition
-     */
-    public void add(Subscription sub) throws AlreadySubscribedException {
-        Map<Integer, Subscription> subsByStreamId = subsByStreamIdAndPartition.get(sub.getStreamId());
-        if (subsByStreamId == null) {
-            subsByStreamId = new HashMap<>();
-            subsByStreamIdAndPartition.put(sub.getStreamId(), subsByStreamId);
-        }
-        if (subsByStreamId.containsKey(sub.getPartition())) {
-            throw new AlreadySubscribedException(sub);
-        } else {
-            subsByStreamId.put(sub.getPartition(), sub);
-        }
+  /**
+   * @throws AlreadySubscribedException if there is already a subscription for the stream-partition
+   */
+  public void add(Subscription sub) throws AlreadySubscribedException {
+    if (subsByStreamPartition.putIfAbsent(key(sub), sub) != null) {
+      throw new AlreadySubscribedException(sub);
     }
+  }
 
-    public Subscription get(String streamId, int partition) throws SubscriptionNotFoundException {
-        Map<Integer, Subscription> subsByStreamId = subsByStreamIdAndPartition.get(streamId);
-        if (subsByStreamId == null) {
-            throw new SubscriptionNotFoundException(streamId, partition);
-        }
-        Subscription result = subsByStreamId.get(partition);
-        if (result == null) {
-            throw new SubscriptionNotFoundException(streamId, partition);
-        }
-        return result;
+  public Subscription get(String streamId, int partition) throws SubscriptionNotFoundException {
+    Subscription result = subsByStreamPartition.get(StreamPartition.of(streamId, partition));
+    if (result == null) {
+      throw new SubscriptionNotFoundException(streamId, partition);
     }
+    return result;
+  }
 
-    public Collection<Subscription> getAllForStreamId(String streamId) {
-        Map<Integer, Subscription> subsByStreamId = subsByStreamIdAndPartition.get(streamId);
-        return subsByStreamId == null ? new HashSet<>() : subsByStreamId.values();
+  /**
+   * Returns the subscriptions to the partitions of the stream, ordered by partition. Takes time
+   * linear in the number of subscriptions.
+   */
+  public Collection<Subscription> getAllForStreamId(String streamId) {
+    List<Subscription> result = new ArrayList<>();
+    for (Subscription sub : subsByStreamPartition.values()) {
+      if (sub.getStreamId().equals(streamId)) {
+        result.add(sub);
+      }
     }
+    result.sort(Comparator.comparingInt(Subscription::getPartition));
+    return result;
+  }
 
-    public void remove(Subscription sub) throws SubscriptionNotFoundException {
-        Map<Integer, Subscription> subsByStreamId = subsByStreamIdAndPartition.get(sub.getStreamId());
-        if (subsByStreamId == null) {
-            throw new SubscriptionNotFoundException(sub.getStreamId(), sub.getPartition());
-        }
-        if (subsByStreamId.containsKey(sub.getPartition())) {
-            subsByStreamId.remove(sub.getPartition());
-        } else {
-            throw new SubscriptionNotFoundException(sub.getStreamId(), sub.getPartition());
-        }
+  public void remove(Subscription sub) throws SubscriptionNotFoundException {
+    if (!subsByStreamPartition.remove(key(sub), sub)) {
+      throw new SubscriptionNotFoundException(sub.getStreamId(), sub.getPartition());
     }
+  }
 
-    public void forEach(Consumer<Subscription> f) {
-        subsByStreamIdAndPartition.values().forEach(map -> map.values().forEach(f));
-    }
+  /**
+   * Calls {@code f} for each subscription. Subscriptions added or removed during the iteration may
+   * or may not be included.
+   */
+  public void forEach(Consumer<Subscription> f) {
+    subsByStreamPartition.values().forEach(f);
+  }
+
+  private static StreamPartition key(Subscription sub) {
+    return StreamPartition.of(sub.getStreamId(), sub.getPartition());
+  }
 }
@@ -0,0 +1,94 @@
+package com.streamr.client.protocol.control_layer
+
+import static com.streamr.client.testing.StreamMessageExamples.InvalidSignature.helloWorld
+import static com.streamr.client.testing.StreamMessageExamples.InvalidSignature.helloWorldSerialized31
+import static com.streamr.client.testing.StreamMessageExamples.InvalidSignature.helloWorldSerialized32
+
+import com.streamr.client.protocol.message_layer.MalformedMessageException
+import com.streamr.client.protocol.message_layer.StreamMessage
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import spock.lang.Specification
+
+class StreamMessageFrameDecoderSpec extends Specification {
+
+	private static ControlMessage decode(String frame) {
+		return StreamMessageFrameDecoder.decode(ByteBuffer.wrap(frame.getBytes(StandardCharsets.UTF_8)))
+	}
+
+	def "decodes broadcast and unicast frames"(String frame, ControlMessage message) {
+		expect:
+		decode(frame) == message
+
+		where:
+		frame | message
+		"[2,0,\"requestId\",${helloWorldSerialized32}]" | new BroadcastMessage("requestId", helloWorld)
+		"[2,1,\"requestId\",${helloWorldSerialized32}]" | new UnicastMessage("requestId", helloWorld)
+		" [ 2 , 0 , \"requestId\" , ${helloWorldSerialized32} ] " | new BroadcastMessage("requestId", helloWorld)
+	}
+
+	def "unescapes content into the payload bytes"() {
+		String frame = "[2,0,\"requestId\",[32,[\"streamId\",0,1528228173462,0,\"publisherid\",\"1\"],null,27,0,0,null,\"{\\\"a\\\":\\\"\\\\u00e4\\\\ud83d\\\\ude00\\\\n\\\"}\",null,0,null]]"
+
+		when:
+		BroadcastMessage decoded = (BroadcastMessage) decode(frame)
+
+		then:
+		decoded == new ControlMessageAdapter().fromJson(frame)
+		decoded.getStreamMessage().getParsedContent() == [a: "ä😀\n"]
+	}
+
+	def "returns null for frames it does not handle"(String frame) {
+		expect:
+		decode(frame) == null
+
+		where:
+		frame << [
+			"[2,2,\"requestId\",\"streamId\",0]",
+			"[2,0,\"requestId\",${helloWorldSerialized31}]".toString(),
+			"[1,0,\"requestId\",${helloWorldSerialized32}]".toString(),
+			"[2,0,\"requestId\",${helloWorldSerialized32}".toString(),
+		]
+	}
+
+	def "throws MalformedMessageException for invalid values"(String frame) {
+		when:
+		decode(frame)
+
+		then:
+		thrown(MalformedMessageException)
+
+		where:
+		frame << [
+			"[2,0,\"requestId\",[32,[\"streamId\",2147483648,1528228173462,0,\"publisherid\",\"1\"],null,27,0,0,null,\"{}\",null,0,null]]",
+			"[2,0,\"requestId\",[32,[\"streamId\",0,1528228173462,0,\"publisherid\",\"1\"],null,283,0,0,null,\"{}\",null,0,null]]",
+			"[2,0,\"requestId\",[32,[\"streamId\",0,1528228173462,0,\"publisherid\",\"1\"],null,27,0,9,null,\"{}\",null,0,null]]",
+			"[2,0,\"requestId\",[32,[\"streamId\",0,1528228173462,0,\"publisherid\",\"1\"],null,27,0,0,null,\"{}\",\"not a key\",0,null]]",
+		]
+	}
+
+	def "ControlMessage.fromJson() falls back to the adapters"() {
+		expect:
+		ControlMessage.fromJson("[2,0,\"requestId\",${helloWorldSerialized31}]").getStreamMessage() instanceof StreamMessage
+		ControlMessage.fromJson("[2,2,\"requestId\",\"streamId\",0]") == new SubscribeResponse("requestId", "streamId", 0)
+	}
+
+	def "ControlMessage.fromBytes() reads direct buffers without moving their position"() {
+		byte[] bytes = "[2,0,\"requestId\",${helloWorldSerialized32}]".getBytes(StandardCharsets.UTF_8)
+		ByteBuffer frame = ByteBuffer.allocateDirect(bytes.length)
+		frame.put(bytes).flip()
+
+		expect:
+		ControlMessage.fromBytes(frame) == new BroadcastMessage("requestId", helloWorld)
+		frame.position() == 0
+		frame.remaining() == bytes.length
+	}
+
+	def "ControlMessage.fromBytes() falls back to the adapters"() {
+		ByteBuffer frame = ByteBuffer.wrap("[2,2,\"requestId\",\"streamId\",0]".getBytes(StandardCharsets.UTF_8))
+
+		expect:
+		ControlMessage.fromBytes(frame) == new SubscribeResponse("requestId", "streamId", 0)
+		frame.position() == 0
+	}
+}
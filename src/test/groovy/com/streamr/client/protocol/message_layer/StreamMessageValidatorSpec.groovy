@@ -125,6 +125,33 @@ class StreamMessageValidatorSpec extends Specification {
         notThrown(Exception)
     }
 
+    void "accepts duplicates of a verified message"() {
+        StreamMessage duplicate = StreamMessage.deserialize(msgSigned.serialize())
+
+        when:
+        validator.validate(msgSigned)
+        validator.validate(duplicate)
+        validator.clearAndClose()
+        validator.validate(duplicate)
+
+        then:
+        notThrown(Exception)
+    }
+
+    void "rejects a verified signature attached to different content"() {
+        StreamMessage tampered = new StreamMessage.Builder(msgSigned)
+                .withContent(TestingContent.fromJsonMap([foo: 'bar']))
+                .createStreamMessage()
+        validator.validate(msgSigned)
+
+        when:
+        validator.validate(tampered)
+
+        then:
+        ValidationException e = thrown(ValidationException)
+        e.getReason() == ValidationException.Reason.INVALID_SIGNATURE
+    }
+
     void "can open the caches again after they have been closed (no CacheClosedException)"() {
         when:
         validator.clearAndClose()
@@ -10,12 +10,14 @@ import com.streamr.client.subs.BasicSubscription.GroupKeyRequestFunction
 import com.streamr.client.testing.TestingAddresses
 import com.streamr.client.testing.TestingContent
 import com.streamr.client.testing.TestingMessageRef
+import com.streamr.client.testing.TestingStreamMessages
 import com.streamr.client.utils.Address
 import com.streamr.client.utils.EncryptionUtil
 import com.streamr.client.utils.GroupKey
 import com.streamr.client.utils.GroupKeyStore
 import com.streamr.client.utils.KeyExchangeUtil
 import com.streamr.client.utils.OrderedMsgChain
+import java.util.concurrent.CountDownLatch
 import spock.lang.Specification
 
 /**
@@ -495,6 +497,77 @@ class BasicSubscriptionSpec extends Specification {
         groupKeyRequestCount == 1
     }
 
+    void "decrypts a large unlocked backlog and handles it in order for each msgChain"() {
+        GroupKey groupKey = GroupKey.generate()
+        List<StreamMessage> messages = []
+        for (int i = 1; i <= 300; i++) {
+            for (String msgChainId : ["chain1", "chain2"]) {
+                final MessageId messageId = new MessageId.Builder()
+                        .withStreamId("streamId")
+                        .withTimestamp(i)
+                        .withPublisherId(TestingAddresses.PUBLISHER_ID)
+                        .withMsgChainId(msgChainId)
+                        .createMessageId()
+                messages.add(EncryptionUtil.encryptStreamMessage(new StreamMessage.Builder()
+                        .withMessageId(messageId)
+                        .withPreviousMessageRef(i == 1 ? null : new MessageRef(i - 1, 0))
+                        .withContent(TestingContent.fromJsonMap([n: i]))
+                        .createStreamMessage(), groupKey))
+            }
+        }
+
+        when:
+        messages.each { sub.handleRealTimeMessage(it) }
+        sub.onNewKeysAdded(TestingAddresses.PUBLISHER_ID, [groupKey])
+
+        then:
+        1 * keyStore.get("streamId", groupKey.getGroupKeyId()) >> null // key not found for the first message, the rest are queued
+        600 * keyStore.get("streamId", groupKey.getGroupKeyId()) >> groupKey
+        received.size() == 600
+        ["chain1", "chain2"].every { msgChainId ->
+            received.findAll { it.getMsgChainId() == msgChainId }*.getParsedContent() == (1..300).collect { [n: it] }
+        }
+    }
+
+    void "does not hand unlocked messages to the handler while it is handling a received message"() {
+        GroupKey groupKey = GroupKey.generate()
+        StreamMessage encrypted = EncryptionUtil.encryptStreamMessage(TestingStreamMessages.message(1), groupKey)
+        StreamMessage plain = TestingStreamMessages.builder(2, 0)
+                .withPreviousMessageRef(new MessageRef(1, 0))
+                .createStreamMessage()
+        keyStore.get("streamId", groupKey.getGroupKeyId()) >>> [null, groupKey]
+        List<StreamMessage> handled = Collections.synchronizedList([])
+        CountDownLatch handlingPlain = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        MessageHandler handler = new MessageHandler() {
+            @Override
+            void onMessage(Subscription s, StreamMessage message) {
+                if (message == plain) {
+                    handlingPlain.countDown()
+                    release.await()
+                }
+                handled.add(message)
+            }
+        }
+        sub = createSub(handler)
+        sub.handleRealTimeMessage(encrypted)
+
+        when:
+        Thread receiving = Thread.start { sub.handleRealTimeMessage(plain) }
+        handlingPlain.await()
+        // The keys arrive on another connection's thread
+        Thread keyResponse = Thread.start { sub.onNewKeysAdded(TestingAddresses.PUBLISHER_ID, [groupKey]) }
+        Thread.sleep(200)
+        List<StreamMessage> handledBeforeRelease = new ArrayList<>(handled)
+        release.countDown()
+        receiving.join()
+        keyResponse.join()
+
+        then:
+        handledBeforeRelease.isEmpty()
+        handled*.getTimestamp() == [2L, 1L]
+    }
+
     void "queues messages when not able to decrypt and handles them once the key is updated (multiple publishers)"() {
         final MessageId messageId3 = new MessageId.Builder()
                 .withStreamId("streamId")
@@ -127,6 +127,88 @@ class EncryptionUtilSpec extends Specification {
         streamMessage.parsedContent == plaintextContent
         streamMessage.encryptionType == StreamMessage.EncryptionType.NONE
     }
+    void "encrypt() returns the iv and ciphertext as lower case hex"() {
+        when:
+        String ciphertext = EncryptionUtil.encrypt(plaintextBytes, key)
+
+        then:
+        ciphertext ==~ /[0-9a-f]+/
+        ciphertext.length() == 2 * (16 + plaintextBytes.length)
+    }
+    void "encryptStreamMessage, then decryptStreamMessage() equals original message with a large payload"() {
+        String payload = "{\"data\":\"" + ("x" * 200000) + "\"}"
+        StreamMessage original = new StreamMessage.Builder(streamMessage)
+                .withContent(StreamMessage.Content.Factory.withJsonAsPayload(payload))
+                .createStreamMessage()
+
+        when:
+        StreamMessage encrypted = EncryptionUtil.encryptStreamMessage(original, key)
+        StreamMessage decrypted = EncryptionUtil.decryptStreamMessage(encrypted, key)
+
+        then:
+        encrypted.serializedContentSize == 2 * (16 + payload.length())
+        decrypted.serializedContent == payload
+    }
+    void "aes decryption accepts upper case hex"() {
+        when:
+        String ciphertext = EncryptionUtil.encrypt(plaintextBytes, key).toUpperCase()
+
+        then:
+        EncryptionUtil.decrypt(ciphertext, key) == plaintextBytes
+    }
+    void "aes decryption rejects ciphertext that is not hex"() {
+        String ciphertext = EncryptionUtil.encrypt(plaintextBytes, key)
+
+        when:
+        EncryptionUtil.decrypt(ciphertext.substring(0, 40) + "zz" + ciphertext.substring(42), key)
+        then:
+        thrown(IllegalArgumentException)
+
+        when:
+        EncryptionUtil.decrypt(ciphertext.substring(1), key)
+        then:
+        thrown(IllegalArgumentException)
+    }
+    void "decryptStreamMessage() works when messages alternate between group keys"() {
+        GroupKey otherKey = GroupKey.generate()
+        List<StreamMessage> encrypted = (1..20).collect {
+            EncryptionUtil.encryptStreamMessage(streamMessage, it % 2 == 0 ? key : otherKey)
+        }
+
+        when:
+        List<StreamMessage> decrypted = encrypted.withIndex().collect { msg, i ->
+            EncryptionUtil.decryptStreamMessage(msg, i % 2 == 1 ? key : otherKey)
+        }
+
+        then:
+        decrypted.every { it.serializedContent == serializedPlaintextContent }
+    }
+    void "decryptStreamMessage() works with equal keys and with other keys of the same id"() {
+        GroupKey copy = new GroupKey(key.groupKeyId, key.groupKeyHex)
+        GroupKey sameId = GroupKey.generate(key.groupKeyId)
+        StreamMessage encrypted = EncryptionUtil.encryptStreamMessage(streamMessage, key)
+        StreamMessage encryptedWithSameId = EncryptionUtil.encryptStreamMessage(streamMessage, sameId)
+
+        expect:
+        EncryptionUtil.decryptStreamMessage(encrypted, key).serializedContent == serializedPlaintextContent
+        EncryptionUtil.decryptStreamMessage(encrypted, copy).serializedContent == serializedPlaintextContent
+        EncryptionUtil.decryptStreamMessage(encryptedWithSameId, sameId).serializedContent == serializedPlaintextContent
+    }
+    void "decryptStreamMessages() decrypts a batch in order"() {
+        List<StreamMessage> originals = (1..10).collect {
+            new StreamMessage.Builder(streamMessage)
+                    .withContent(StreamMessage.Content.Factory.withJsonAsPayload("{\"i\":" + it + "}"))
+                    .createStreamMessage()
+        }
+        List<StreamMessage> encrypted = originals.collect { EncryptionUtil.encryptStreamMessage(it, key) }
+
+        when:
+        List<StreamMessage> decrypted = EncryptionUtil.decryptStreamMessages(encrypted, key)
+
+        then:
+        decrypted*.serializedContent == originals*.serializedContent
+        decrypted.every { it.encryptionType == StreamMessage.EncryptionType.NONE }
+    }
     void "encryptGroupKey() encrypts the GroupKey"() {
         GroupKey keyToEncrypt = GroupKey.generate()
         GroupKey keyToEncryptWith = key
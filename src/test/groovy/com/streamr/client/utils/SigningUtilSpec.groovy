@@ -128,6 +128,43 @@ class SigningUtilSpec extends Specification {
         SigningUtil.hasValidSignature(msg)
     }
 
+    void "returns true for correct signature without a recovery id"() {
+        MessageId ownMsgId = new MessageId.Builder(msgId)
+                .withPublisherId(address)
+                .createMessageId()
+        StreamMessage msg = signingUtil.signStreamMessage(new StreamMessage.Builder()
+                .withMessageId(ownMsgId)
+                .withPreviousMessageRef(null)
+                .withContent(TestingContent.fromJsonMap([foo: 'bar']))
+                .createStreamMessage())
+        String signature = msg.getSignature()
+        msg = new StreamMessage.Builder(msg)
+                .withSignature(signature.substring(0, signature.length() - 2))
+                .createStreamMessage()
+
+        expect:
+        SigningUtil.hasValidSignature(msg)
+    }
+
+    void "returns false if the recovery id does not match the signature"() {
+        MessageId ownMsgId = new MessageId.Builder(msgId)
+                .withPublisherId(address)
+                .createMessageId()
+        StreamMessage msg = signingUtil.signStreamMessage(new StreamMessage.Builder()
+                .withMessageId(ownMsgId)
+                .withPreviousMessageRef(null)
+                .withContent(TestingContent.fromJsonMap([foo: 'bar']))
+                .createStreamMessage())
+        String signature = msg.getSignature()
+        String flippedV = signature.endsWith("1b") ? "1c" : "1b"
+        msg = new StreamMessage.Builder(msg)
+                .withSignature(signature.substring(0, signature.length() - 2) + flippedV)
+                .createStreamMessage()
+
+        expect:
+        !SigningUtil.hasValidSignature(msg)
+    }
+
     void "returns true for correct signature of publisher address has upper and lower case letters"() {
         Address address1 = new Address("0x752C8dCAC0788759aCB1B4BB7A9103596BEe3e6c")
         MessageId msgId = new MessageId.Builder()
@@ -93,4 +93,34 @@ class SubscriptionsSpec extends Specification {
 		called == [sub1, sub2]
 	}
 
+	void "forEach() allows removing subscriptions during iteration"() {
+		Subscription sub1 = createSub("stream1", 5)
+		Subscription sub2 = createSub("stream2", 2)
+		subs.add(sub1)
+		subs.add(sub2)
+		Consumer<Subscription> f = new Consumer<Subscription>() {
+			@Override
+			void accept(Subscription subscription) {
+				subs.remove(subscription)
+			}
+		}
+		when:
+		subs.forEach(f)
+		subs.get("stream1", 5)
+		then:
+		thrown(SubscriptionNotFoundException)
+	}
+
+	void "remove() does not remove another subscription to the same stream-partition"() {
+		Subscription sub = createSub()
+		Subscription other = createSub()
+		subs.add(sub)
+
+		when:
+		subs.remove(other)
+
+		then:
+		thrown(SubscriptionNotFoundException)
+		subs.get(sub.getStreamId(), sub.getPartition()).is(sub)
+	}
 }
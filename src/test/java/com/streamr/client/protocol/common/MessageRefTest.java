@@ -1,5 +1,7 @@
 package com.streamr.client.protocol.common;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import nl.jqno.equalsverifier.EqualsVerifier;
 import org.junit.jupiter.api.Test;
 
@@ -8,4 +10,13 @@ class MessageRefTest {
   void equalsContract() {
     EqualsVerifier.forClass(MessageRef.class).verify();
   }
+
+  @Test
+  void compareToHandlesSequenceNumbersFarApart() {
+    final MessageRef first = new MessageRef(1, 0);
+    final MessageRef second = new MessageRef(1, 1L << 32);
+
+    assertTrue(first.compareTo(second) < 0);
+    assertTrue(second.compareTo(first) > 0);
+  }
 }
@@ -6,6 +6,9 @@ import org.junit.jupiter.api.Test;
 class BroadcastMessageTest {
   @Test
   void equalsContract() {
-    EqualsVerifier.forClass(BroadcastMessage.class).usingGetClass().verify();
+    EqualsVerifier.forClass(BroadcastMessage.class)
+        .usingGetClass()
+        .withIgnoredFields("json")
+        .verify();
   }
 }
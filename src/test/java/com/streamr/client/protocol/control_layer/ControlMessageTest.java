@@ -0,0 +1,40 @@
+package com.streamr.client.protocol.control_layer;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.stream.Stream;
+import nl.jqno.equalsverifier.EqualsVerifier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class ControlMessageTest {
+  static Stream<Class<? extends ControlMessage>> messageClasses() {
+    return Stream.of(
+        ErrorResponse.class,
+        PublishRequest.class,
+        ResendFromRequest.class,
+        ResendLastRequest.class,
+        ResendRangeRequest.class,
+        ResendResponseNoResend.class,
+        ResendResponseResending.class,
+        ResendResponseResent.class,
+        SubscribeRequest.class,
+        SubscribeResponse.class,
+        UnicastMessage.class,
+        UnsubscribeRequest.class,
+        UnsubscribeResponse.class);
+  }
+
+  @ParameterizedTest
+  @MethodSource("messageClasses")
+  void equalsContract(final Class<? extends ControlMessage> messageClass) {
+    EqualsVerifier.forClass(messageClass).usingGetClass().withIgnoredFields("json").verify();
+  }
+
+  @Test
+  void toJsonIsCached() {
+    final ControlMessage message = new SubscribeRequest("requestId", "streamId", 0, "token");
+    assertSame(message.toJson(), message.toJson());
+  }
+}
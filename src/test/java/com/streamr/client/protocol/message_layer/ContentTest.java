@@ -1,5 +1,12 @@
 package com.streamr.client.protocol.message_layer;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import nl.jqno.equalsverifier.EqualsVerifier;
 import org.junit.jupiter.api.Test;
 
@@ -7,7 +14,43 @@ class ContentTest {
   @Test
   void equalsContract() {
     EqualsVerifier.forClass(StreamMessage.Content.class)
-        .withIgnoredFields("adapter", "cache")
+        .withIgnoredFields("bytes", "serialized", "cache")
         .verify();
   }
+
+  @Test
+  void contentBackedByFrameSliceEqualsContentBackedByArray() {
+    final byte[] frame = "xx{\"hello\":\"world\"}yy".getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer slice = ByteBuffer.wrap(frame, 2, frame.length - 4);
+    final StreamMessage.Content fromSlice = StreamMessage.Content.Factory.withJsonAsPayload(slice);
+    final StreamMessage.Content fromString =
+        StreamMessage.Content.Factory.withJsonAsPayload("{\"hello\":\"world\"}");
+
+    assertEquals(fromString, fromSlice);
+    assertEquals(fromString.hashCode(), fromSlice.hashCode());
+    assertEquals("{\"hello\":\"world\"}", fromSlice.toString());
+    assertArrayEquals(
+        "{\"hello\":\"world\"}".getBytes(StandardCharsets.UTF_8), fromSlice.toBytes());
+    assertEquals(2, slice.position());
+  }
+
+  @Test
+  void decodedFormsAreCached() {
+    final StreamMessage.Content content =
+        StreamMessage.Content.Factory.withJsonAsPayload("{\"hello\":\"world\"}");
+
+    assertSame(content.toString(), content.toString());
+    assertSame(content.toBytes(), content.toBytes());
+    assertSame(content.toMap(), content.toMap());
+    assertEquals("world", content.toMap().get("hello"));
+  }
+
+  @Test
+  void parsedMapCannotBeModified() {
+    final StreamMessage.Content content =
+        StreamMessage.Content.Factory.withJsonAsPayload("{\"hello\":\"world\"}");
+
+    assertThrows(UnsupportedOperationException.class, () -> content.toMap().put("hello", "you"));
+    assertEquals("world", content.toMap().get("hello"));
+  }
 }
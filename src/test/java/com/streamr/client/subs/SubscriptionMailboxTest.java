@@ -0,0 +1,203 @@
+package com.streamr.client.subs;
+
+import static com.streamr.client.testing.TestingStreamMessages.message;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.streamr.client.MessageHandler;
+import com.streamr.client.options.BackpressurePolicy;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SubscriptionMailboxTest {
+  // Runs the submitted tasks only when asked to
+  private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+  private final List<Object> calls = Collections.synchronizedList(new ArrayList<>());
+
+  @BeforeEach
+  void reset() {
+    tasks.clear();
+    calls.clear();
+  }
+
+  private final MessageHandler handler =
+      new MessageHandler() {
+        @Override
+        public void onMessage(Subscription sub, StreamMessage message) {
+          calls.add(message.getTimestamp());
+        }
+
+        @Override
+        public void done(Subscription sub) {
+          calls.add("done");
+        }
+      };
+
+  private SubscriptionMailbox mailbox(final int capacity, final BackpressurePolicy policy) {
+    return new SubscriptionMailbox(handler, tasks::add, capacity, policy);
+  }
+
+  private void runTasks() {
+    while (!tasks.isEmpty()) {
+      tasks.poll().run();
+    }
+  }
+
+  @Test
+  void callsHandlerInOrderOnTheExecutor() {
+    final SubscriptionMailbox mailbox = mailbox(10, BackpressurePolicy.BLOCK);
+    mailbox.onMessage(null, message(1));
+    mailbox.onMessage(null, message(2));
+    mailbox.done(null);
+
+    assertEquals(Collections.emptyList(), calls);
+    assertEquals(2, mailbox.getQueuedMessages());
+    assertEquals(1, tasks.size());
+
+    runTasks();
+
+    assertEquals(Arrays.asList(1L, 2L, "done"), calls);
+    assertEquals(0, mailbox.getQueuedMessages());
+    assertEquals(2, mailbox.getMaxQueuedMessages());
+  }
+
+  @Test
+  void yieldsTheExecutorAfterABatch() {
+    final SubscriptionMailbox mailbox = mailbox(1000, BackpressurePolicy.BLOCK);
+    for (int i = 0; i < SubscriptionMailbox.MAX_BATCH_SIZE + 1; i++) {
+      mailbox.onMessage(null, message(i));
+    }
+
+    tasks.poll().run();
+
+    assertEquals(SubscriptionMailbox.MAX_BATCH_SIZE, calls.size());
+    assertEquals(1, tasks.size());
+
+    runTasks();
+
+    assertEquals(SubscriptionMailbox.MAX_BATCH_SIZE + 1, calls.size());
+  }
+
+  @Test
+  void failPolicyDropsNewMessages() {
+    final SubscriptionMailbox mailbox = mailbox(2, BackpressurePolicy.FAIL);
+    for (int i = 1; i <= 4; i++) {
+      mailbox.onMessage(null, message(i));
+    }
+    mailbox.done(null);
+    runTasks();
+
+    assertEquals(Arrays.asList(1L, 2L, "done"), calls);
+    assertEquals(2, mailbox.getDroppedMessages());
+  }
+
+  @Test
+  void dropOldestPolicyDropsOldestMessages() {
+    final SubscriptionMailbox mailbox = mailbox(2, BackpressurePolicy.DROP_OLDEST);
+    mailbox.onMessage(null, message(1));
+    mailbox.done(null);
+    for (int i = 2; i <= 4; i++) {
+      mailbox.onMessage(null, message(i));
+    }
+    runTasks();
+
+    assertEquals(Arrays.asList("done", 3L, 4L), calls);
+    assertEquals(2, mailbox.getDroppedMessages());
+  }
+
+  @Test
+  void keepsCallingTheHandlerAfterItThrowsAnError() {
+    final SubscriptionMailbox mailbox =
+        new SubscriptionMailbox(
+            (sub, message) -> {
+              calls.add(message.getTimestamp());
+              if (message.getTimestamp() == 1) {
+                throw new AssertionError("failed");
+              }
+            },
+            tasks::add,
+            10,
+            BackpressurePolicy.BLOCK);
+    mailbox.onMessage(null, message(1));
+    mailbox.onMessage(null, message(2));
+
+    assertThrows(AssertionError.class, () -> tasks.poll().run());
+    runTasks();
+
+    assertEquals(Arrays.asList(1L, 2L), calls);
+    mailbox.onMessage(null, message(3));
+    assertEquals(1, tasks.size());
+  }
+
+  @Test
+  void dropsQueuedCallsWhenTheExecutorRejectsTheMailbox() {
+    final SubscriptionMailbox mailbox =
+        new SubscriptionMailbox(
+            handler,
+            task -> {
+              throw new RejectedExecutionException("shut down");
+            },
+            1,
+            BackpressurePolicy.BLOCK);
+    mailbox.onMessage(null, message(1));
+    // Doesn't block, the rejected message no longer takes up room
+    mailbox.onMessage(null, message(2));
+
+    assertEquals(0, mailbox.getQueuedMessages());
+    assertEquals(2, mailbox.getDroppedMessages());
+  }
+
+  @Test
+  void blockPolicyWaitsForRoom() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Long> received = Collections.synchronizedList(new ArrayList<>());
+    final SubscriptionMailbox mailbox =
+        new SubscriptionMailbox(
+            (sub, message) -> {
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              received.add(message.getTimestamp());
+            },
+            executor,
+            1,
+            BackpressurePolicy.BLOCK);
+    try {
+      final Thread producer =
+          new Thread(
+              () -> {
+                for (int i = 1; i <= 3; i++) {
+                  mailbox.onMessage(null, message(i));
+                }
+              });
+      producer.start();
+      producer.join(200);
+      assertTrue(producer.isAlive());
+
+      release.countDown();
+      producer.join(5000);
+      executor.shutdown();
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+
+      assertEquals(Arrays.asList(1L, 2L, 3L), received);
+      assertEquals(0, mailbox.getDroppedMessages());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.streamr.client.testing;
+
+import com.streamr.client.protocol.message_layer.MessageId;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+
+public final class TestingStreamMessages {
+  public static final String STREAM_ID = "streamId";
+  public static final String MSG_CHAIN_ID = "msgChainId";
+
+  private TestingStreamMessages() {}
+
+  /** Builder of a message from {@link TestingAddresses#PUBLISHER_ID} with empty JSON content. */
+  public static StreamMessage.Builder builder(
+      final String streamId,
+      final int streamPartition,
+      final long timestamp,
+      final long sequenceNumber) {
+    return new StreamMessage.Builder()
+        .withMessageId(
+            new MessageId.Builder()
+                .withStreamId(streamId)
+                .withStreamPartition(streamPartition)
+                .withTimestamp(timestamp)
+                .withSequenceNumber(sequenceNumber)
+                .withPublisherId(TestingAddresses.PUBLISHER_ID)
+                .withMsgChainId(MSG_CHAIN_ID)
+                .createMessageId())
+        .withContent(StreamMessage.Content.Factory.withJsonAsPayload("{}"));
+  }
+
+  public static StreamMessage.Builder builder(final long timestamp, final long sequenceNumber) {
+    return builder(STREAM_ID, 0, timestamp, sequenceNumber);
+  }
+
+  public static StreamMessage message(final long timestamp, final long sequenceNumber) {
+    return builder(timestamp, sequenceNumber).createStreamMessage();
+  }
+
+  public static StreamMessage message(final long timestamp) {
+    return message(timestamp, 0);
+  }
+}
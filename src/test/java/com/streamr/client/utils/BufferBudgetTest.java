@@ -0,0 +1,290 @@
+package com.streamr.client.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.streamr.client.options.BufferOverflowPolicy;
+import com.streamr.client.protocol.common.MessageRef;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.testing.TestingAddresses;
+import com.streamr.client.testing.TestingStreamMessages;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BufferBudgetTest {
+  private static final long TIMEOUT = 60000;
+
+  private final List<Long> received = new ArrayList<>();
+
+  @BeforeEach
+  void reset() {
+    received.clear();
+  }
+
+  private static StreamMessage message(final long timestamp, final Long previousTimestamp) {
+    return TestingStreamMessages.builder(timestamp, 0)
+        .withPreviousMessageRef(
+            previousTimestamp == null ? null : new MessageRef(previousTimestamp, 0))
+        .withGroupKeyId("groupKeyId")
+        .createStreamMessage();
+  }
+
+  // Room for two of the test messages
+  private static BufferBudget budget(final BufferOverflowPolicy policy) {
+    return new BufferBudget(2 * BufferBudget.sizeOf(message(0, null)) + 1, policy);
+  }
+
+  private static BufferBudget spillingBudget(final Path directory) {
+    return new BufferBudget(
+        2 * BufferBudget.sizeOf(message(0, null)) + 1,
+        BufferOverflowPolicy.SPILL_TO_DISK,
+        directory);
+  }
+
+  private OrderedMsgChain chain(final BufferBudget budget) {
+    return new OrderedMsgChain(
+        TestingAddresses.PUBLISHER_ID,
+        "msgChainId",
+        msg -> received.add(msg.getTimestamp()),
+        (from, to, publisherId, msgChainId) -> {},
+        null,
+        TIMEOUT,
+        TIMEOUT,
+        true,
+        budget);
+  }
+
+  @Test
+  void sizeOfCountsContentAndSignature() {
+    final StreamMessage msg = message(1, null);
+    assertEquals(BufferBudget.MESSAGE_OVERHEAD_BYTES + 2, BufferBudget.sizeOf(msg));
+
+    final StreamMessage signed =
+        new StreamMessage.Builder(msg)
+            .withSignatureType(StreamMessage.SignatureType.ETH)
+            .withSignature("0x1234")
+            .createStreamMessage();
+    assertEquals(BufferBudget.MESSAGE_OVERHEAD_BYTES + 2 + 6, BufferBudget.sizeOf(signed));
+  }
+
+  @Test
+  void reservesUntilTheLimit() {
+    final BufferBudget budget = budget(BufferOverflowPolicy.DROP);
+    final long size = BufferBudget.sizeOf(message(1, null));
+
+    assertEquals(size, budget.tryReserve(message(1, null)));
+    assertEquals(size, budget.tryReserve(message(2, null)));
+    assertEquals(-1, budget.tryReserve(message(3, null)));
+    assertEquals(2 * size, budget.getUsedBytes());
+
+    budget.release(size);
+    assertEquals(size, budget.tryReserve(message(3, null)));
+  }
+
+  @Test
+  void skipGapPolicyEmptiesTheChainWhenTheBudgetIsUsedUp() {
+    final BufferBudget budget = budget(BufferOverflowPolicy.SKIP_GAP);
+    final OrderedMsgChain chain = chain(budget);
+
+    chain.add(message(1, null));
+    chain.add(message(3, 2L));
+    chain.add(message(4, 3L));
+    assertEquals(budget.getUsedBytes(), chain.getQueuedBytes());
+    chain.add(message(6, 5L));
+
+    assertEquals(Arrays.asList(1L, 6L), received);
+    assertFalse(chain.hasGap());
+    assertEquals(0, chain.getQueuedBytes());
+    assertEquals(0, budget.getUsedBytes());
+  }
+
+  @Test
+  void dropPolicyDropsTheNewMessageWhenTheBudgetIsUsedUp() {
+    final BufferBudget budget = budget(BufferOverflowPolicy.DROP);
+    final OrderedMsgChain chain = chain(budget);
+
+    chain.add(message(1, null));
+    chain.add(message(3, 2L));
+    chain.add(message(4, 3L));
+    chain.add(message(5, 4L));
+    chain.add(message(2, 1L));
+
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L), received);
+    assertEquals(0, budget.getUsedBytes());
+    chain.clear();
+  }
+
+  @Test
+  void droppedMessageIsRequestedAgainEvenIfNothingIsQueued() throws Exception {
+    final BufferBudget budget = budget(BufferOverflowPolicy.DROP);
+    final OrderedMsgChain other = chain(budget);
+    other.add(message(1, null));
+    other.add(message(3, 2L));
+    other.add(message(4, 3L));
+    final List<MessageRef> requested = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch gapFillRequested = new CountDownLatch(1);
+    final OrderedMsgChain chain =
+        new OrderedMsgChain(
+            TestingAddresses.PUBLISHER_ID,
+            "msgChainId",
+            msg -> received.add(msg.getTimestamp()),
+            (from, to, publisherId, msgChainId) -> {
+              requested.add(from);
+              requested.add(to);
+              gapFillRequested.countDown();
+            },
+            null,
+            10,
+            TIMEOUT,
+            true,
+            budget);
+
+    chain.add(message(1, null));
+    chain.add(message(3, 2L));
+    assertTrue(gapFillRequested.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(new MessageRef(1, 1), new MessageRef(3, 0)), requested);
+
+    // The budget frees up before the gap fill arrives
+    other.clear();
+    chain.add(message(2, 1L));
+    chain.add(message(3, 2L));
+
+    assertEquals(Arrays.asList(1L, 2L, 3L), received);
+    assertFalse(chain.hasGap());
+  }
+
+  @Test
+  void clearingTheChainReleasesItsBytes() {
+    final BufferBudget budget = budget(BufferOverflowPolicy.DROP);
+    final OrderedMsgChain chain = chain(budget);
+
+    chain.add(message(1, null));
+    chain.add(message(3, 2L));
+    assertTrue(budget.getUsedBytes() > 0);
+
+    chain.clear();
+
+    assertFalse(chain.hasGap());
+    assertEquals(0, budget.getUsedBytes());
+  }
+
+  @Test
+  void decryptionQueuesRejectMessagesWhenTheBudgetIsUsedUp() {
+    final BufferBudget budget = budget(BufferOverflowPolicy.DROP);
+    final DecryptionQueues queues = new DecryptionQueues("streamId", 0);
+    queues.setBufferBudget(budget);
+
+    assertTrue(queues.add(message(1, null)));
+    assertTrue(queues.add(message(2, 1L)));
+    assertFalse(queues.add(message(3, 2L)));
+
+    final Collection<StreamMessage> unlocked =
+        queues.drainUnlockedMessages(
+            TestingAddresses.PUBLISHER_ID, Collections.singleton("groupKeyId"));
+    assertEquals(2, unlocked.size());
+    assertEquals(0, budget.getUsedBytes());
+
+    queues.add(message(3, 2L));
+    queues.clear();
+    assertTrue(queues.isEmpty());
+    assertEquals(0, budget.getUsedBytes());
+  }
+
+  @Test
+  void spillPolicyReadsSpilledMessagesBackInOrder(@TempDir final Path directory) {
+    final BufferBudget budget = spillingBudget(directory);
+    final OrderedMsgChain chain = chain(budget);
+
+    chain.add(message(1, null));
+    for (long timestamp = 8; timestamp >= 3; timestamp--) {
+      chain.add(message(timestamp, timestamp - 1));
+    }
+    assertEquals(4, chain.getSpilledMessages());
+
+    chain.add(message(2, 1L));
+
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L), received);
+    assertEquals(0, chain.getSpilledMessages());
+    assertEquals(0, budget.getUsedBytes());
+    assertFalse(chain.hasGap());
+  }
+
+  @Test
+  void spillPolicyMergesSpilledAndLaterQueuedMessages(@TempDir final Path directory) {
+    final BufferBudget budget = spillingBudget(directory);
+    final OrderedMsgChain chain = chain(budget);
+    // Held by another buffer for now
+    final long held = budget.tryReserve(message(0, null));
+
+    chain.add(message(1, null));
+    chain.add(message(6, 5L));
+    chain.add(message(5, 4L));
+    chain.add(message(4, 3L));
+    budget.release(held);
+    // Fits in memory again, behind the spilled messages
+    chain.add(message(3, 2L));
+    assertEquals(2, chain.getSpilledMessages());
+
+    chain.add(message(2, 1L));
+
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), received);
+    assertEquals(0, budget.getUsedBytes());
+  }
+
+  @Test
+  void closingDeletesTheSpillFileUntilMessagesAreSpilledAgain(@TempDir final Path directory) {
+    final BufferBudget budget = spillingBudget(directory);
+    final OrderedMsgChain chain = chain(budget);
+    chain.add(message(1, null));
+    for (long timestamp = 6; timestamp >= 3; timestamp--) {
+      chain.add(message(timestamp, timestamp - 1));
+    }
+    assertEquals(2, chain.getSpilledMessages());
+
+    chain.clear();
+    budget.close();
+    assertEquals(0, budget.getSpillFile().getMappedBytes());
+
+    chain.add(message(10, null));
+    for (long timestamp = 15; timestamp >= 12; timestamp--) {
+      chain.add(message(timestamp, timestamp - 1));
+    }
+    chain.add(message(11, 10L));
+    assertEquals(Arrays.asList(1L, 10L, 11L, 12L, 13L, 14L, 15L), received);
+  }
+
+  @Test
+  void decryptionQueuesSpillInOrder(@TempDir final Path directory) {
+    final BufferBudget budget = spillingBudget(directory);
+    final DecryptionQueues queues = new DecryptionQueues("streamId", 0);
+    queues.setBufferBudget(budget);
+
+    for (long timestamp = 1; timestamp <= 5; timestamp++) {
+      assertTrue(queues.add(message(timestamp, null)));
+    }
+
+    final List<Long> drained = new ArrayList<>();
+    List<StreamMessage> batch;
+    while (!(batch =
+            queues.drainUnlockedMessages(
+                TestingAddresses.PUBLISHER_ID, Collections.singleton("groupKeyId"), 2))
+        .isEmpty()) {
+      assertTrue(batch.size() <= 2);
+      batch.forEach(msg -> drained.add(msg.getTimestamp()));
+    }
+
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), drained);
+    assertTrue(queues.isEmpty());
+    assertEquals(0, budget.getUsedBytes());
+  }
+}
@@ -0,0 +1,194 @@
+package com.streamr.client.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.streamr.client.exceptions.KeyAlreadyExistsException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentGroupKeyStoreTest {
+  private static final String STREAM_ID = "streamId";
+
+  private MutableClock clock;
+
+  private static final class MutableClock extends Clock {
+    private Instant now = Instant.ofEpochMilli(1_000_000);
+
+    void advance(final Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(final ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+
+  @BeforeEach
+  void setup() {
+    clock = new MutableClock();
+  }
+
+  @Test
+  void storesKeysAndTracksTheCurrentKey() {
+    final ConcurrentGroupKeyStore store = new ConcurrentGroupKeyStore();
+    final GroupKey key1 = GroupKey.generate();
+    final GroupKey key2 = GroupKey.generate();
+
+    store.add(STREAM_ID, key1);
+    store.add(STREAM_ID, key2);
+
+    assertSame(key1, store.get(STREAM_ID, key1.getGroupKeyId()));
+    assertSame(key2, store.get(STREAM_ID, key2.getGroupKeyId()));
+    assertNull(store.get("otherStream", key1.getGroupKeyId()));
+    assertTrue(store.contains(key1.getGroupKeyId()));
+    assertSame(key2, store.getCurrentKey(STREAM_ID));
+    assertThrows(KeyAlreadyExistsException.class, () -> store.add("otherStream", key1));
+  }
+
+  @Test
+  void removesTheLeastRecentlyUsedKeysOverTheLimit() {
+    final ConcurrentGroupKeyStore store = new ConcurrentGroupKeyStore(3, null, clock);
+    final List<GroupKey> keys = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      keys.add(GroupKey.generate());
+      store.add(STREAM_ID, keys.get(i));
+      clock.advance(Duration.ofSeconds(10));
+    }
+    store.get(STREAM_ID, keys.get(0).getGroupKeyId());
+
+    final GroupKey key4 = GroupKey.generate();
+    store.add(STREAM_ID, key4);
+
+    assertEquals(3, store.size(STREAM_ID));
+    assertSame(keys.get(0), store.get(STREAM_ID, keys.get(0).getGroupKeyId()));
+    assertNull(store.get(STREAM_ID, keys.get(1).getGroupKeyId()));
+    assertFalse(store.contains(keys.get(1).getGroupKeyId()));
+    assertSame(key4, store.getCurrentKey(STREAM_ID));
+  }
+
+  @Test
+  void keepsAllKeysByDefault() {
+    final ConcurrentGroupKeyStore store = new ConcurrentGroupKeyStore();
+    final List<GroupKey> keys = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      keys.add(GroupKey.generate());
+      store.add(STREAM_ID, keys.get(i));
+    }
+
+    assertEquals(2000, store.size(STREAM_ID));
+    assertSame(keys.get(0), store.get(STREAM_ID, keys.get(0).getGroupKeyId()));
+  }
+
+  @Test
+  void removesKeysNotUsedWithinTheTtlExceptTheCurrentKey() {
+    final ConcurrentGroupKeyStore store =
+        new ConcurrentGroupKeyStore(100, Duration.ofMinutes(1), clock);
+    final GroupKey key1 = GroupKey.generate();
+    final GroupKey key2 = GroupKey.generate();
+    store.add(STREAM_ID, key1);
+    store.add(STREAM_ID, key2);
+    clock.advance(Duration.ofMinutes(2));
+
+    final GroupKey key3 = GroupKey.generate();
+    store.add(STREAM_ID, key3);
+
+    assertNull(store.get(STREAM_ID, key1.getGroupKeyId()));
+    assertSame(key2, store.get(STREAM_ID, key2.getGroupKeyId()));
+    assertSame(key3, store.get(STREAM_ID, key3.getGroupKeyId()));
+    assertEquals(2, store.size(STREAM_ID));
+  }
+
+  @Test
+  void rejectsInvalidLimits() {
+    assertThrows(IllegalArgumentException.class, () -> new ConcurrentGroupKeyStore(0, null));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new ConcurrentGroupKeyStore(1, Duration.ofSeconds(-1)));
+  }
+
+  @Test
+  void keysBecomeCurrentBeforeTheStreamIsUnlocked() throws Exception {
+    final List<GroupKey> added = Collections.synchronizedList(new ArrayList<>());
+    final ConcurrentGroupKeyStore store =
+        new ConcurrentGroupKeyStore() {
+          @Override
+          protected void keyAdded(final String streamId, final GroupKey key) {
+            assertSame(key, getCurrentKey(streamId));
+            added.add(key);
+          }
+        };
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                for (int i = 0; i < 100; i++) {
+                  store.add(STREAM_ID, GroupKey.generate());
+                }
+              }));
+    }
+    for (final Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    assertEquals(800, added.size());
+    assertSame(added.get(added.size() - 1), store.getCurrentKey(STREAM_ID));
+  }
+
+  @Test
+  void keysAddedFromSeveralThreadsAreAllKept() throws Exception {
+    final ConcurrentGroupKeyStore store = new ConcurrentGroupKeyStore();
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    final List<Future<List<GroupKey>>> futures = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      final String streamId = "stream" + (t % 4);
+      futures.add(
+          executor.submit(
+              () -> {
+                final List<GroupKey> added = new ArrayList<>();
+                for (int i = 0; i < 100; i++) {
+                  final GroupKey key = GroupKey.generate();
+                  store.add(streamId, key);
+                  added.add(key);
+                  assertSame(key, store.get(streamId, key.getGroupKeyId()));
+                }
+                return added;
+              }));
+    }
+    for (int t = 0; t < futures.size(); t++) {
+      for (final GroupKey key : futures.get(t).get()) {
+        assertSame(key, store.get("stream" + (t % 4), key.getGroupKeyId()));
+      }
+    }
+    executor.shutdown();
+    assertEquals(200, store.size("stream0"));
+  }
+}
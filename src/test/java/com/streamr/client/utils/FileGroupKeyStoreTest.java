@@ -0,0 +1,156 @@
+package com.streamr.client.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileGroupKeyStoreTest {
+  private static final String STREAM_ID = "streamId";
+
+  @Test
+  void keysSurviveReopening(@TempDir final Path directory) throws IOException {
+    final Path file = directory.resolve("keys");
+    final GroupKey key1 = GroupKey.generate();
+    final GroupKey key2 = GroupKey.generate();
+    final GroupKey otherStreamKey = GroupKey.generate();
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file)) {
+      store.add(STREAM_ID, key1);
+      store.add(STREAM_ID, key2);
+      store.add("otherStream", otherStreamKey);
+    }
+
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file)) {
+      assertEquals(key1, store.get(STREAM_ID, key1.getGroupKeyId()));
+      assertEquals(key2, store.get(STREAM_ID, key2.getGroupKeyId()));
+      assertEquals(otherStreamKey, store.get("otherStream", otherStreamKey.getGroupKeyId()));
+      assertEquals(key2, store.getCurrentKey(STREAM_ID));
+      assertTrue(store.contains(key1.getGroupKeyId()));
+
+      final GroupKey key3 = GroupKey.generate();
+      store.add(STREAM_ID, key3);
+      assertEquals(key3, store.getCurrentKey(STREAM_ID));
+    }
+
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file)) {
+      assertEquals(3, store.size(STREAM_ID));
+    }
+  }
+
+  @Test
+  void canBeClosedWhileLoading(@TempDir final Path directory) throws IOException {
+    final Path file = directory.resolve("keys");
+    final GroupKey key = GroupKey.generate();
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file)) {
+      store.add(STREAM_ID, key);
+    }
+
+    new FileGroupKeyStore(file).close();
+
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file)) {
+      assertEquals(key, store.getCurrentKey(STREAM_ID));
+    }
+  }
+
+  @Test
+  void encryptsKeysWithTheMasterKey(@TempDir final Path directory) throws IOException {
+    final Path file = directory.resolve("keys");
+    final GroupKey masterKey = GroupKey.generate();
+    final GroupKey key = GroupKey.generate();
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file, masterKey)) {
+      store.add(STREAM_ID, key);
+    }
+
+    final String contents = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+    assertFalse(contents.contains(key.getGroupKeyHex()));
+
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file, masterKey)) {
+      assertEquals(key, store.get(STREAM_ID, key.getGroupKeyId()));
+    }
+    assertThrows(
+        IllegalArgumentException.class, () -> new FileGroupKeyStore(file, GroupKey.generate()));
+    assertThrows(IllegalArgumentException.class, () -> new FileGroupKeyStore(file));
+  }
+
+  @Test
+  void rejectsFilesThatAreNotKeyStores(@TempDir final Path directory) throws IOException {
+    final Path file = directory.resolve("keys");
+    Files.write(file, "not a key store".getBytes(StandardCharsets.UTF_8));
+
+    assertThrows(IllegalArgumentException.class, () -> new FileGroupKeyStore(file));
+  }
+
+  @Test
+  void dropsAnIncompleteRecordAtTheEnd(@TempDir final Path directory) throws IOException {
+    final Path file = directory.resolve("keys");
+    final GroupKey key1 = GroupKey.generate();
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file)) {
+      store.add(STREAM_ID, key1);
+    }
+    // A record cut short by a crash
+    Files.write(file, new byte[] {0, 8, 's', 't'}, StandardOpenOption.APPEND);
+
+    final GroupKey key2 = GroupKey.generate();
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file)) {
+      assertEquals(key1, store.get(STREAM_ID, key1.getGroupKeyId()));
+      store.add(STREAM_ID, key2);
+    }
+
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file)) {
+      assertEquals(key1, store.get(STREAM_ID, key1.getGroupKeyId()));
+      assertEquals(key2, store.getCurrentKey(STREAM_ID));
+    }
+  }
+
+  @Test
+  void rewritesTheFileWithoutRemovedKeys(@TempDir final Path directory) throws IOException {
+    final Path file = directory.resolve("keys");
+    final List<GroupKey> keys = new ArrayList<>();
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file, null, 2, null)) {
+      for (int i = 0; i < 5; i++) {
+        keys.add(GroupKey.generate());
+        store.add(STREAM_ID, keys.get(i));
+      }
+      assertEquals(2, store.size(STREAM_ID));
+    }
+    final long sizeBefore = Files.size(file);
+
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file, null, 2, null)) {
+      assertEquals(2, store.size(STREAM_ID));
+      assertNull(store.get(STREAM_ID, keys.get(0).getGroupKeyId()));
+      assertEquals(keys.get(3), store.get(STREAM_ID, keys.get(3).getGroupKeyId()));
+      assertEquals(keys.get(4), store.getCurrentKey(STREAM_ID));
+    }
+    assertTrue(Files.size(file) < sizeBefore);
+  }
+
+  @Test
+  void onlyTheOwnerCanAccessTheFile(@TempDir final Path directory) throws IOException {
+    assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+    final Path file = directory.resolve("keys");
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file, null, 1, null)) {
+      store.add(STREAM_ID, GroupKey.generate());
+      store.add(STREAM_ID, GroupKey.generate());
+    }
+    assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+
+    // Loading rewrites the file without the removed key
+    try (FileGroupKeyStore store = new FileGroupKeyStore(file, null, 1, null)) {
+      assertEquals(1, store.size(STREAM_ID));
+    }
+    assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+  }
+}
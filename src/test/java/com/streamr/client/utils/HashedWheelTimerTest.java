@@ -0,0 +1,201 @@
+package com.streamr.client.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class HashedWheelTimerTest {
+  private HashedWheelTimer timer;
+
+  @BeforeEach
+  void createTimer() {
+    // Small wheel, so that long delays take several rounds
+    timer = new HashedWheelTimer("test-timer", 5, 4);
+  }
+
+  @AfterEach
+  void stopTimer() {
+    timer.stop();
+  }
+
+  @Test
+  void runsTaskAfterDelay() throws Exception {
+    final CountDownLatch ran = new CountDownLatch(1);
+    final long start = System.nanoTime();
+    final HashedWheelTimer.Timeout timeout = timer.schedule(ran::countDown, 100);
+
+    assertTrue(ran.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    assertTrue(timeout.isExpired());
+  }
+
+  @Test
+  void cancelledTaskDoesNotRun() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    final HashedWheelTimer.Timeout timeout = timer.schedule(runs::incrementAndGet, 50);
+    timeout.cancel();
+    final CountDownLatch later = new CountDownLatch(1);
+    timer.schedule(later::countDown, 100);
+
+    assertTrue(later.await(5, TimeUnit.SECONDS));
+    assertEquals(0, runs.get());
+    assertTrue(timeout.isCancelled());
+    assertFalse(timeout.isExpired());
+  }
+
+  @Test
+  void runsPeriodicTaskUntilCancelled() throws Exception {
+    final CountDownLatch threeRuns = new CountDownLatch(3);
+    final AtomicInteger runs = new AtomicInteger();
+    final HashedWheelTimer.Timeout timeout =
+        timer.schedule(
+            () -> {
+              runs.incrementAndGet();
+              threeRuns.countDown();
+            },
+            0,
+            20);
+
+    assertTrue(threeRuns.await(5, TimeUnit.SECONDS));
+    timeout.cancel();
+    final int runsWhenCancelled = runs.get();
+    Thread.sleep(100);
+    // A run may have been in progress while cancelling
+    assertTrue(runs.get() <= runsWhenCancelled + 1);
+  }
+
+  @Test
+  void runsManyTasksOnOneThread() throws Exception {
+    final int count = 10000;
+    final CountDownLatch ran = new CountDownLatch(count);
+    final HashedWheelTimer.Timeout[] timeouts = new HashedWheelTimer.Timeout[count * 2];
+    for (int i = 0; i < count; i++) {
+      timeouts[2 * i] = timer.schedule(ran::countDown, i % 100);
+      timeouts[2 * i + 1] =
+          timer.schedule(
+              () -> {
+                throw new IllegalStateException("cancelled task ran");
+              },
+              i % 100);
+      timeouts[2 * i + 1].cancel();
+    }
+
+    assertTrue(ran.await(5, TimeUnit.SECONDS));
+    for (int i = 0; i < count; i++) {
+      assertTrue(timeouts[2 * i].isExpired());
+      assertTrue(timeouts[2 * i + 1].isCancelled());
+    }
+  }
+
+  @Test
+  void keepsRunningAfterTaskFails() throws Exception {
+    final CountDownLatch ran = new CountDownLatch(1);
+    timer.schedule(
+        () -> {
+          throw new RuntimeException("test");
+        },
+        0);
+    timer.schedule(ran::countDown, 20);
+
+    assertTrue(ran.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void keepsRunningAfterTaskThrowsAnError() throws Exception {
+    final CountDownLatch ran = new CountDownLatch(1);
+    timer.schedule(
+        () -> {
+          throw new AssertionError("test");
+        },
+        0);
+    timer.schedule(ran::countDown, 20);
+
+    assertTrue(ran.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void passesTasksScheduledWithAnExecutorToIt() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch ran = new CountDownLatch(1);
+    try {
+      final HashedWheelTimer.Timeout timeout =
+          timer.schedule(
+              () -> {
+                blocked.countDown();
+                try {
+                  release.await();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              },
+              0,
+              1000,
+              executor);
+      assertTrue(blocked.await(5, TimeUnit.SECONDS));
+      timeout.cancel();
+      // The timer thread is free while the task blocks
+      timer.schedule(ran::countDown, 20);
+
+      assertTrue(ran.await(5, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void skipsPeriodicRunsWhileThePreviousRunIsBlocked() throws Exception {
+    final ExecutorService executor = Executors.newCachedThreadPool();
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger runs = new AtomicInteger();
+    try {
+      final HashedWheelTimer.Timeout timeout =
+          timer.schedule(
+              () -> {
+                runs.incrementAndGet();
+                blocked.countDown();
+                try {
+                  release.await();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              },
+              0,
+              10,
+              executor);
+      assertTrue(blocked.await(5, TimeUnit.SECONDS));
+      // Many periods pass while the first run blocks
+      Thread.sleep(200);
+      assertEquals(1, runs.get());
+
+      release.countDown();
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (runs.get() < 2 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      timeout.cancel();
+      assertTrue(runs.get() >= 2);
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void rejectsNonPositivePeriod() {
+    assertThrows(IllegalArgumentException.class, () -> timer.schedule(() -> {}, 0, 0));
+  }
+}
@@ -0,0 +1,70 @@
+package com.streamr.client.utils;
+
+import static com.streamr.client.testing.TestingStreamMessages.message;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class MessageRefHeapTest {
+  private final MessageRefHeap<StreamMessage> heap = new MessageRefHeap<>();
+
+  private void offer(final StreamMessage msg) {
+    heap.offer(msg.getTimestamp(), msg.getSequenceNumber(), msg);
+  }
+
+  @Test
+  void pollsMessagesInMessageRefOrder() {
+    final List<StreamMessage> messages = new ArrayList<>();
+    for (int timestamp = 0; timestamp < 100; timestamp++) {
+      for (int sequenceNumber = 0; sequenceNumber < 5; sequenceNumber++) {
+        messages.add(message(timestamp, sequenceNumber));
+      }
+    }
+    final List<StreamMessage> shuffled = new ArrayList<>(messages);
+    Collections.shuffle(shuffled, new Random(1));
+    shuffled.forEach(this::offer);
+
+    assertEquals(messages.size(), heap.size());
+    assertEquals(messages.get(messages.size() - 1), heap.peekLast());
+    final List<StreamMessage> polled = new ArrayList<>();
+    while (!heap.isEmpty()) {
+      final StreamMessage head = heap.peek();
+      assertEquals(head.getTimestamp(), heap.peekTimestamp());
+      assertEquals(head.getSequenceNumber(), heap.peekSequenceNumber());
+      assertEquals(head, heap.poll());
+      polled.add(head);
+    }
+    assertEquals(messages, polled);
+  }
+
+  @Test
+  void ordersSequenceNumbersFarApart() {
+    // A difference that overflows an int must not flip the order
+    offer(message(1, Long.MAX_VALUE));
+    offer(message(1, 0));
+    offer(message(0, Long.MAX_VALUE));
+
+    assertEquals(message(0, Long.MAX_VALUE), heap.poll());
+    assertEquals(message(1, 0), heap.poll());
+    assertEquals(message(1, Long.MAX_VALUE), heap.poll());
+  }
+
+  @Test
+  void isEmptyAfterClear() {
+    offer(message(1, 0));
+    offer(message(2, 0));
+    heap.clear();
+
+    assertTrue(heap.isEmpty());
+    assertNull(heap.peek());
+    assertNull(heap.poll());
+    assertNull(heap.peekLast());
+  }
+}
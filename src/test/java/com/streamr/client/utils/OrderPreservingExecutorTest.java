@@ -0,0 +1,156 @@
+package com.streamr.client.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OrderPreservingExecutorTest {
+  private final List<Object> completed = Collections.synchronizedList(new ArrayList<>());
+
+  @BeforeEach
+  void reset() {
+    completed.clear();
+  }
+
+  private static void sleepRandomly() {
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Test
+  void completesTasksInSubmissionOrder() throws Exception {
+    final OrderPreservingExecutor executor = new OrderPreservingExecutor("test", 4, 100);
+    final List<Integer> expected = new ArrayList<>();
+    final CountDownLatch done = new CountDownLatch(1);
+    for (int i = 0; i < 500; i++) {
+      final int n = i;
+      expected.add(n);
+      executor.execute(
+          () -> {
+            sleepRandomly();
+            return n;
+          },
+          (result, error) -> completed.add(result));
+    }
+    executor.execute(null, (result, error) -> done.countDown());
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(expected, completed);
+  }
+
+  @Test
+  void passesExceptionsToCompletionHandlerInOrder() throws Exception {
+    final OrderPreservingExecutor executor = new OrderPreservingExecutor("test", 2, 10);
+    final IllegalStateException failure = new IllegalStateException("failed");
+    final CountDownLatch done = new CountDownLatch(1);
+    executor.execute(
+        () -> {
+          sleepRandomly();
+          throw failure;
+        },
+        (result, error) -> {
+          assertNull(result);
+          completed.add(error);
+        });
+    executor.execute(() -> "second", (result, error) -> completed.add(result));
+    executor.execute(null, (result, error) -> done.countDown());
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(failure, "second"), completed);
+  }
+
+  @Test
+  void completesTheTasksAfterOneThatThrowsAnError() throws Exception {
+    final OrderPreservingExecutor executor = new OrderPreservingExecutor("test", 2, 10);
+    final AssertionError failure = new AssertionError("failed");
+    final CountDownLatch done = new CountDownLatch(1);
+    executor.execute(
+        () -> {
+          throw failure;
+        },
+        (result, error) -> completed.add(error));
+    executor.execute(() -> "second", (result, error) -> completed.add(result));
+    executor.execute(null, (result, error) -> done.countDown());
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(failure, "second"), completed);
+  }
+
+  @Test
+  void blocksWhenMaxInFlightReached() throws Exception {
+    final OrderPreservingExecutor executor = new OrderPreservingExecutor("test", 1, 1);
+    final CountDownLatch release = new CountDownLatch(1);
+    executor.execute(
+        () -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          return 1;
+        },
+        (result, error) -> completed.add(result));
+    final CompletableFuture<Void> second =
+        CompletableFuture.runAsync(
+            () -> executor.execute(() -> 2, (result, error) -> completed.add(result)));
+    Thread.sleep(200);
+    assertFalse(second.isDone());
+
+    release.countDown();
+    second.get(5, TimeUnit.SECONDS);
+    final CountDownLatch done = new CountDownLatch(1);
+    executor.execute(null, (result, error) -> done.countDown());
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(1, 2), completed);
+  }
+
+  @Test
+  void laneIsNotHeldBackByAnotherLane() throws Exception {
+    final OrderPreservingExecutor executor = new OrderPreservingExecutor("test", 2, 10);
+    final OrderPreservingExecutor.Lane blocked = executor.newLane();
+    final OrderPreservingExecutor.Lane other = executor.newLane();
+    final CountDownLatch release = new CountDownLatch(1);
+    blocked.execute(
+        () -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          return "blocked";
+        },
+        (result, error) -> completed.add(result));
+    final CountDownLatch done = new CountDownLatch(2);
+    other.execute(
+        () -> "first",
+        (result, error) -> {
+          completed.add(result);
+          done.countDown();
+        });
+    other.execute(
+        () -> "second",
+        (result, error) -> {
+          completed.add(result);
+          done.countDown();
+        });
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("first", "second"), completed);
+    release.countDown();
+  }
+}
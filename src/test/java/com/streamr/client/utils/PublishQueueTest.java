@@ -0,0 +1,265 @@
+package com.streamr.client.utils;
+
+import static com.streamr.client.testing.TestingStreamMessages.message;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.streamr.client.exceptions.PublishQueueFullException;
+import com.streamr.client.options.BackpressurePolicy;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PublishQueueTest {
+  private final AtomicBoolean connected = new AtomicBoolean(true);
+  private final List<StreamMessage> sent = Collections.synchronizedList(new ArrayList<>());
+
+  @BeforeEach
+  void reset() {
+    connected.set(true);
+    sent.clear();
+  }
+
+  private PublishQueue queue(final int capacity, final BackpressurePolicy policy) {
+    return new PublishQueue(capacity, policy, connected::get, sent::add);
+  }
+
+  private static void await(final CompletableFuture<StreamMessage> future) throws Exception {
+    future.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void sendsMessagesInOrder() throws Exception {
+    final PublishQueue queue = queue(10, BackpressurePolicy.BLOCK);
+    final List<StreamMessage> messages = new ArrayList<>();
+    CompletableFuture<StreamMessage> last = null;
+    for (int i = 0; i < 1000; i++) {
+      final StreamMessage msg = message(i);
+      messages.add(msg);
+      last = queue.add(msg);
+    }
+    await(last);
+    assertEquals(messages, sent);
+  }
+
+  @Test
+  void buffersWhileDisconnected() throws Exception {
+    connected.set(false);
+    final PublishQueue queue = queue(10, BackpressurePolicy.BLOCK);
+    queue.add(message(1));
+    final CompletableFuture<StreamMessage> last = queue.add(message(2));
+    Thread.sleep(200);
+    assertEquals(Collections.emptyList(), sent);
+    assertEquals(2, queue.size());
+
+    connected.set(true);
+    queue.onConnected();
+    await(last);
+    assertEquals(Arrays.asList(message(1), message(2)), sent);
+  }
+
+  @Test
+  void failPolicyRejectsMessagesWhenFull() {
+    connected.set(false);
+    final PublishQueue queue = queue(2, BackpressurePolicy.FAIL);
+    queue.add(message(1));
+    queue.add(message(2));
+    final CompletableFuture<StreamMessage> rejected = queue.add(message(3));
+
+    final CompletionException e = assertThrows(CompletionException.class, rejected::join);
+    assertTrue(e.getCause() instanceof PublishQueueFullException);
+    assertEquals(2, queue.size());
+  }
+
+  @Test
+  void dropOldestPolicyDropsOldestMessageWhenFull() throws Exception {
+    connected.set(false);
+    final PublishQueue queue = queue(2, BackpressurePolicy.DROP_OLDEST);
+    final CompletableFuture<StreamMessage> dropped = queue.add(message(1));
+    queue.add(message(2));
+    final CompletableFuture<StreamMessage> last = queue.add(message(3));
+
+    final CompletionException e = assertThrows(CompletionException.class, dropped::join);
+    assertTrue(e.getCause() instanceof PublishQueueFullException);
+
+    connected.set(true);
+    queue.onConnected();
+    await(last);
+    assertEquals(Arrays.asList(message(2), message(3)), sent);
+  }
+
+  @Test
+  void blockPolicyWaitsForRoom() throws Exception {
+    connected.set(false);
+    final PublishQueue queue = queue(1, BackpressurePolicy.BLOCK);
+    queue.add(message(1));
+    final CompletableFuture<CompletableFuture<StreamMessage>> blocked =
+        CompletableFuture.supplyAsync(() -> queue.add(message(2)));
+    Thread.sleep(200);
+    assertFalse(blocked.isDone());
+
+    connected.set(true);
+    queue.onConnected();
+    await(blocked.get(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(message(1), message(2)), sent);
+  }
+
+  @Test
+  void reservedPlaceIsNotTakenByOtherMessages() throws Exception {
+    connected.set(false);
+    final PublishQueue queue = queue(2, BackpressurePolicy.BLOCK);
+    queue.add(message(1));
+    final PublishQueue.Reservation reservation = queue.reserve();
+    final CompletableFuture<CompletableFuture<StreamMessage>> blocked =
+        CompletableFuture.supplyAsync(() -> queue.add(message(3)));
+    Thread.sleep(200);
+    assertFalse(blocked.isDone());
+
+    final CompletableFuture<StreamMessage> reserved = reservation.add(message(2));
+    connected.set(true);
+    queue.onConnected();
+    await(reserved);
+    await(blocked.get(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(message(1), message(2), message(3)), sent);
+  }
+
+  @Test
+  void cancellingReservationMakesRoom() throws Exception {
+    connected.set(false);
+    final PublishQueue queue = queue(1, BackpressurePolicy.BLOCK);
+    final PublishQueue.Reservation reservation = queue.reserve();
+    final CompletableFuture<CompletableFuture<StreamMessage>> blocked =
+        CompletableFuture.supplyAsync(() -> queue.add(message(1)));
+    Thread.sleep(200);
+    assertFalse(blocked.isDone());
+
+    reservation.cancel();
+    blocked.get(5, TimeUnit.SECONDS);
+    assertEquals(1, queue.size());
+    assertThrows(IllegalStateException.class, () -> reservation.add(message(2)));
+  }
+
+  @Test
+  void retriesMessageWhenConnectionDropsDuringSend() throws Exception {
+    final AtomicInteger attempts = new AtomicInteger();
+    final PublishQueue queue =
+        new PublishQueue(
+            10,
+            BackpressurePolicy.BLOCK,
+            connected::get,
+            msg -> {
+              if (attempts.incrementAndGet() == 1) {
+                connected.set(false);
+                throw new IllegalStateException("not connected");
+              }
+              sent.add(msg);
+            });
+    final CompletableFuture<StreamMessage> future = queue.add(message(1));
+    Thread.sleep(200);
+    assertEquals(Collections.emptyList(), sent);
+
+    connected.set(true);
+    queue.onConnected();
+    await(future);
+    assertEquals(Collections.singletonList(message(1)), sent);
+    assertEquals(2, attempts.get());
+  }
+
+  @Test
+  void failsMessageWhenSendFailsWhileConnected() {
+    final IllegalArgumentException error = new IllegalArgumentException("invalid");
+    final PublishQueue queue =
+        new PublishQueue(
+            10,
+            BackpressurePolicy.BLOCK,
+            connected::get,
+            msg -> {
+              throw error;
+            });
+
+    final CompletionException e =
+        assertThrows(CompletionException.class, () -> queue.add(message(1)).join());
+    assertEquals(error, e.getCause());
+  }
+
+  @Test
+  void closeFailsUnsentMessages() throws Exception {
+    connected.set(false);
+    final PublishQueue queue = queue(10, BackpressurePolicy.BLOCK);
+    final CompletableFuture<StreamMessage> first = queue.add(message(1));
+    final CompletableFuture<StreamMessage> second = queue.add(message(2));
+
+    queue.close();
+
+    assertTrue(
+        assertThrows(CompletionException.class, first::join).getCause()
+            instanceof IllegalStateException);
+    assertTrue(
+        assertThrows(CompletionException.class, second::join).getCause()
+            instanceof IllegalStateException);
+    assertEquals(0, queue.size());
+
+    connected.set(true);
+    await(queue.add(message(3)));
+    assertEquals(Collections.singletonList(message(3)), sent);
+  }
+
+  @Test
+  void closeFailsMessagesWaitingForRoom() throws Exception {
+    connected.set(false);
+    final PublishQueue queue = queue(1, BackpressurePolicy.BLOCK);
+    queue.add(message(1));
+    final CompletableFuture<CompletableFuture<StreamMessage>> blocked =
+        CompletableFuture.supplyAsync(() -> queue.add(message(2)));
+    Thread.sleep(200);
+    assertFalse(blocked.isDone());
+
+    queue.close();
+
+    final CompletableFuture<StreamMessage> failed = blocked.get(5, TimeUnit.SECONDS);
+    final ExecutionException e =
+        assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof IllegalStateException);
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  void closeFailsMessagesWaitingToBeRetried() throws Exception {
+    final PublishQueue queue =
+        new PublishQueue(
+            10,
+            BackpressurePolicy.BLOCK,
+            connected::get,
+            msg -> {
+              connected.set(false);
+              throw new IllegalStateException("not connected");
+            });
+    connected.set(false);
+    final CompletableFuture<StreamMessage> first = queue.add(message(1));
+    final CompletableFuture<StreamMessage> second = queue.add(message(2));
+    connected.set(true);
+    queue.onConnected();
+    Thread.sleep(200);
+    assertEquals(0, queue.size());
+    assertFalse(first.isDone());
+
+    queue.close();
+
+    final ExecutionException e =
+        assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof IllegalStateException);
+    assertThrows(CompletionException.class, second::join);
+  }
+}
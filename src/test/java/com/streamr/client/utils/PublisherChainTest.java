@@ -0,0 +1,29 @@
+package com.streamr.client.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.streamr.client.testing.TestingAddresses;
+import org.junit.jupiter.api.Test;
+
+class PublisherChainTest {
+  @Test
+  void internsInstances() {
+    final PublisherChain chain = PublisherChain.of(TestingAddresses.PUBLISHER_ID, "msgChainId");
+
+    assertSame(chain, PublisherChain.of(TestingAddresses.PUBLISHER_ID, "msgChainId"));
+    assertSame(
+        chain,
+        PublisherChain.of(
+            new Address(TestingAddresses.PUBLISHER_ID.toString().toUpperCase()), "msgChainId"));
+    assertEquals(new PublisherChain(TestingAddresses.PUBLISHER_ID, "msgChainId"), chain);
+  }
+
+  @Test
+  void distinguishesChainsOfDifferentPublishers() {
+    assertNotEquals(
+        PublisherChain.of(TestingAddresses.createPublisherId(1), "msgChainId"),
+        PublisherChain.of(TestingAddresses.createPublisherId(2), "msgChainId"));
+  }
+}
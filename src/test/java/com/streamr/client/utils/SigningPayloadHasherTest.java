@@ -0,0 +1,99 @@
+package com.streamr.client.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import com.streamr.client.protocol.common.MessageRef;
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.testing.TestingAddresses;
+import com.streamr.client.testing.TestingStreamMessages;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.web3j.crypto.Sign;
+
+class SigningPayloadHasherTest {
+  private final SigningPayloadHasher hasher = new SigningPayloadHasher();
+
+  private static StreamMessage message(
+      final String streamId, final long timestamp, final String content) {
+    return TestingStreamMessages.builder(streamId, 3, timestamp, 7)
+        .withPreviousMessageRef(new MessageRef(timestamp - 1, 99))
+        .withContent(StreamMessage.Content.Factory.withJsonAsPayload(content))
+        .createStreamMessage();
+  }
+
+  private static byte[] expectedHash(final String payload) {
+    return Sign.getEthereumMessageHash(payload.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @ParameterizedTest
+  @ValueSource(longs = {0L, 9L, 10L, 425235315L, -5L, Long.MAX_VALUE, Long.MIN_VALUE + 1})
+  void hashesNumbersLikeTheirDecimalStrings(final long timestamp) {
+    final StreamMessage msg = message("streamId", timestamp, "{}");
+    final String payload =
+        "streamId3"
+            + timestamp
+            + "7"
+            + TestingAddresses.PUBLISHER_ID
+            + "msgChainId"
+            + (timestamp - 1)
+            + "99{}";
+
+    assertArrayEquals(expectedHash(payload), hasher.hash(msg, StreamMessage.SignatureType.ETH));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"{\"a\":\"ä\"}", "{\"a\":\"€\"}", "{\"a\":\"😀\"}"})
+  void hashesNonAsciiContentAndStreamIds(final String content) {
+    final String streamId = "stream" + content;
+    final StreamMessage msg = message(streamId, 100, content);
+    final String payload =
+        streamId + "31007" + TestingAddresses.PUBLISHER_ID + "msgChainId" + "9999" + content;
+
+    assertArrayEquals(expectedHash(payload), hasher.hash(msg, StreamMessage.SignatureType.ETH));
+  }
+
+  @Test
+  void encodesUnpairedSurrogatesInFieldsLikeStringGetBytes() {
+    final String streamId = "stream\ud83d";
+    final StreamMessage msg = message(streamId, 100, "{}");
+    final String payload =
+        streamId + "31007" + TestingAddresses.PUBLISHER_ID + "msgChainId" + "9999{}";
+
+    assertArrayEquals(expectedHash(payload), hasher.hash(msg, StreamMessage.SignatureType.ETH));
+  }
+
+  @Test
+  void hashesNewGroupKey() {
+    final StreamMessage msg =
+        new StreamMessage.Builder(message("streamId", 100, "{}"))
+            .withNewGroupKey(new EncryptedGroupKey("groupKeyId", "keyHex"))
+            .createStreamMessage();
+    final String payload =
+        "streamId31007"
+            + TestingAddresses.PUBLISHER_ID
+            + "msgChainId9999{}"
+            + msg.getNewGroupKey().serialize();
+
+    assertArrayEquals(expectedHash(payload), hasher.hash(msg, StreamMessage.SignatureType.ETH));
+  }
+
+  @Test
+  void hashesLegacyPayload() {
+    final StreamMessage msg = message("streamId", 100, "{\"a\":1}");
+    final String payload = "streamId3100" + TestingAddresses.PUBLISHER_ID + "{\"a\":1}";
+
+    assertArrayEquals(
+        expectedHash(payload), hasher.hash(msg, StreamMessage.SignatureType.ETH_LEGACY));
+  }
+
+  @Test
+  void canBeReused() {
+    final StreamMessage msg = message("streamId", 100, "{}");
+
+    assertArrayEquals(
+        hasher.hash(msg, StreamMessage.SignatureType.ETH),
+        hasher.hash(msg, StreamMessage.SignatureType.ETH));
+  }
+}
@@ -0,0 +1,87 @@
+package com.streamr.client.utils;
+
+import static com.streamr.client.testing.TestingStreamMessages.message;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SigningPipelineTest {
+  private final List<StreamMessage> passedOn = Collections.synchronizedList(new ArrayList<>());
+
+  @BeforeEach
+  void reset() {
+    passedOn.clear();
+  }
+
+  private static StreamMessage signed(final StreamMessage msg) {
+    return new StreamMessage.Builder(msg)
+        .withSignatureType(StreamMessage.SignatureType.ETH)
+        .withSignature("signature-" + msg.getSequenceNumber())
+        .createStreamMessage();
+  }
+
+  private CompletableFuture<StreamMessage> passOn(final StreamMessage msg) {
+    passedOn.add(msg);
+    return CompletableFuture.completedFuture(msg);
+  }
+
+  @Test
+  void passesMessagesOnInSubmissionOrder() throws Exception {
+    final SigningPipeline pipeline =
+        new SigningPipeline(
+            msg -> {
+              try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+              return signed(msg);
+            },
+            4,
+            50);
+    final List<StreamMessage> expected = new ArrayList<>();
+    CompletableFuture<StreamMessage> last = null;
+    for (int i = 0; i < 500; i++) {
+      expected.add(signed(message(1000, i)));
+      last = pipeline.submit(message(1000, i), this::passOn);
+    }
+
+    assertEquals(signed(message(1000, 499)), last.get(5, TimeUnit.SECONDS));
+    assertEquals(expected, passedOn);
+  }
+
+  @Test
+  void failedSigningCompletesFutureExceptionallyAndKeepsOrder() throws Exception {
+    final IllegalStateException error = new IllegalStateException("signing failed");
+    final SigningPipeline pipeline =
+        new SigningPipeline(
+            msg -> {
+              if (msg.getSequenceNumber() == 1) {
+                throw error;
+              }
+              return signed(msg);
+            },
+            4,
+            10);
+    pipeline.submit(message(1000, 0), this::passOn);
+    final CompletableFuture<StreamMessage> failed = pipeline.submit(message(1000, 1), this::passOn);
+    final CompletableFuture<StreamMessage> last = pipeline.submit(message(1000, 2), this::passOn);
+
+    last.get(5, TimeUnit.SECONDS);
+    final ExecutionException e =
+        assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+    assertEquals(error, e.getCause());
+    assertEquals(Arrays.asList(signed(message(1000, 0)), signed(message(1000, 2))), passedOn);
+  }
+}
@@ -0,0 +1,114 @@
+package com.streamr.client.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.streamr.client.protocol.message_layer.StreamMessage;
+import com.streamr.client.testing.TestingStreamMessages;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpillFileTest {
+  private static StreamMessage message(final long timestamp, final String payload) {
+    return TestingStreamMessages.builder(timestamp, 0)
+        .withContent(StreamMessage.Content.Factory.withJsonAsPayload(payload))
+        .createStreamMessage();
+  }
+
+  @Test
+  void readsBackAppendedMessages(@TempDir final Path directory) {
+    final SpillFile spill = new SpillFile(directory, 1024, Long.MAX_VALUE);
+    final List<StreamMessage> messages = new ArrayList<>();
+    final List<Long> positions = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      final StreamMessage msg = message(i, "{\"i\":" + i + "}");
+      messages.add(msg);
+      positions.add(spill.append(msg));
+    }
+
+    for (int i = messages.size() - 1; i >= 0; i--) {
+      assertEquals(messages.get(i), spill.read(positions.get(i)));
+    }
+    spill.close();
+  }
+
+  @Test
+  void closesSegmentsOnceTheirMessagesAreFreed(@TempDir final Path directory) {
+    final SpillFile spill = new SpillFile(directory, 1024, Long.MAX_VALUE);
+    final List<Long> positions = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      positions.add(spill.append(message(i, "{}")));
+    }
+    assertTrue(spill.getSegmentCount() > 1);
+
+    positions.forEach(spill::free);
+
+    // The segment being written to is kept
+    assertEquals(1, spill.getSegmentCount());
+    assertThrows(IllegalArgumentException.class, () -> spill.read(positions.get(0)));
+
+    spill.close();
+    assertEquals(0, spill.getSegmentCount());
+  }
+
+  @Test
+  void fitsMessagesLargerThanASegment(@TempDir final Path directory) {
+    final SpillFile spill = new SpillFile(directory, 64, Long.MAX_VALUE);
+    final StringBuilder payload = new StringBuilder("{\"data\":\"");
+    for (int i = 0; i < 1000; i++) {
+      payload.append('x');
+    }
+    final StreamMessage msg = message(1, payload.append("\"}").toString());
+
+    assertEquals(msg, spill.read(spill.append(msg)));
+    spill.close();
+  }
+
+  @Test
+  void failsToAppendBeyondTheLimit(@TempDir final Path directory) {
+    final SpillFile spill = new SpillFile(directory, 1024, 2048);
+    final List<Long> positions = new ArrayList<>();
+    final UncheckedIOException e =
+        assertThrows(
+            UncheckedIOException.class,
+            () -> {
+              for (int i = 0; i < 1000; i++) {
+                positions.add(spill.append(message(i, "{}")));
+              }
+            });
+    assertTrue(e.getMessage().contains("2048"));
+    assertEquals(2048, spill.getMappedBytes());
+
+    positions.forEach(spill::free);
+    assertEquals(0, spill.getMappedBytes());
+    spill.append(message(0, "{}"));
+    spill.close();
+  }
+
+  @Test
+  void canBeAppendedToAfterClosing(@TempDir final Path directory) throws IOException {
+    final SpillFile spill = new SpillFile(directory, 1024, Long.MAX_VALUE);
+    final long before = spill.append(message(1, "{}"));
+    spill.close();
+    assertEquals(0, spill.getMappedBytes());
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(0, files.count());
+    }
+
+    // Positions from before closing don't refer to the new segments
+    final StreamMessage msg = message(2, "{}");
+    final long after = spill.append(msg);
+    spill.free(before);
+    assertEquals(msg, spill.read(after));
+    assertThrows(IllegalArgumentException.class, () -> spill.read(before));
+    spill.close();
+  }
+}
@@ -0,0 +1,39 @@
+package com.streamr.client.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class StreamPartitionTest {
+  @Test
+  void internsInstances() {
+    final StreamPartition streamPartition = StreamPartition.of("stream", 3);
+
+    assertSame(streamPartition, StreamPartition.of("stream", 3));
+    assertSame(StreamPartition.of("stream", 0), StreamPartition.of("stream", 0));
+    assertEquals(new StreamPartition("stream", 3), streamPartition);
+    assertEquals(new StreamPartition("stream", 3).hashCode(), streamPartition.hashCode());
+  }
+
+  @Test
+  void distinguishesStreamIdsThatConcatenateTheSame() {
+    assertNotEquals(StreamPartition.of("s1", 1), StreamPartition.of("s", 11));
+  }
+
+  @Test
+  void supportsNegativePartitions() {
+    assertEquals(-1, StreamPartition.of("stream", -1).getPartition());
+  }
+
+  @Test
+  void doesNotInternLargePartitions() {
+    assertEquals(
+        Integer.MAX_VALUE, StreamPartition.of("stream", Integer.MAX_VALUE).getPartition());
+    assertEquals(1 << 30, StreamPartition.of("stream", 1 << 30).getPartition());
+    assertEquals(
+        StreamPartition.of("stream", StreamPartition.MAX_INTERNED_PARTITIONS),
+        new StreamPartition("stream", StreamPartition.MAX_INTERNED_PARTITIONS));
+  }
+}